@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.spi;
+
+import javax.el.ELContext;
+import javax.el.ELException;
+import javax.el.ELResolver;
+import javax.el.PropertyNotFoundException;
+
+/**
+ * Reusable accessor reading one property from bases of one class. Accessors are handed out by a
+ * {@link PropertyAccessorProvider} and may be cached by the caller, so an implementation must not
+ * keep state specific to a single base or evaluation.
+ */
+public interface PropertyAccessor {
+	/**
+	 * Read the property from the given base.
+	 * 
+	 * @param context
+	 *            The context of this evaluation.
+	 * @param base
+	 *            The base object, whose class is the class this accessor has been provided for.
+	 * @return the property value, exactly as the providing resolver's
+	 *         {@link ELResolver#getValue(ELContext, Object, Object)} would have answered it.
+	 * @throws PropertyNotFoundException
+	 *             if the property does not exist or is not readable.
+	 * @throws ELException
+	 *             if an exception was thrown while reading the property.
+	 */
+	public Object getValue(ELContext context, Object base);
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.spi;
+
+import javax.el.ELContext;
+import javax.el.ELResolver;
+
+/**
+ * Optional interface implemented by resolvers which can hand out a {@link PropertyAccessor} for a
+ * (base class, property) pair. Callers such as property nodes in an expression tree may remember
+ * the accessor and reuse it for later evaluations on a base of the same class and an equal
+ * property, skipping the resolver chain and the resolver's own lookups.
+ * 
+ * An accessor may only be provided if the resolver's answer depends on nothing but the base class
+ * and the property. In particular, a resolver that overrides
+ * {@link ELResolver#getValue(ELContext, Object, Object)} of a providing superclass must not
+ * inherit its accessors (see {@link PropertyAccessors#isGetValueDeclaredBy(ELResolver, Class)}).
+ * 
+ * Accessors are shared between resolvers by their {@link #getPropertyAccessorKey() key}: callers
+ * may reuse an accessor provided by one resolver for another resolver answering an equal key, e.g.
+ * for the resolvers of different contexts.
+ */
+public interface PropertyAccessorProvider {
+	/**
+	 * Answered by a provider if it never resolves the given property on bases of the given class.
+	 */
+	public static final PropertyAccessor UNRESOLVED = new PropertyAccessor() {
+		public Object getValue(ELContext context, Object base) {
+			throw new IllegalStateException("unresolved");
+		}
+	};
+
+	/**
+	 * Get an accessor for the given property on bases of the class of the given base.
+	 * 
+	 * @param context
+	 *            The context of this evaluation.
+	 * @param base
+	 *            The base object, not <code>null</code>.
+	 * @param property
+	 *            The property to be accessed.
+	 * @return an accessor behaving like {@link ELResolver#getValue(ELContext, Object, Object)}
+	 *         followed by a successful resolution, {@link #UNRESOLVED} if this resolver never
+	 *         resolves the property on bases of that class, or <code>null</code> if no accessor can
+	 *         be provided.
+	 */
+	public PropertyAccessor getPropertyAccessor(ELContext context, Object base, Object property);
+
+	/**
+	 * Get a key identifying the accessors provided by this resolver. Resolvers answering equal keys
+	 * must provide equivalent accessors for each (base class, property) pair. Callers may hold the
+	 * key strongly, so it should not refer to anything but classes of resolvers.
+	 * 
+	 * @return accessor key or <code>null</code> if accessors provided by this resolver must not be
+	 *         used for other resolvers
+	 */
+	public Object getPropertyAccessorKey();
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.spi;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.el.ELContext;
+import javax.el.ELResolver;
+
+/**
+ * Utility methods for {@link PropertyAccessorProvider} implementations.
+ */
+public final class PropertyAccessors {
+	/**
+	 * Maps resolver classes to the class declaring their getValue() method. Both are held weakly,
+	 * keys of collected classes are expunged when new classes are added.
+	 */
+	private static final ConcurrentHashMap<Object, WeakReference<Class<?>>> DECLARING = new ConcurrentHashMap<Object, WeakReference<Class<?>>>();
+	private static final ReferenceQueue<Class<?>> COLLECTED = new ReferenceQueue<Class<?>>();
+
+	private PropertyAccessors() {
+	}
+
+	/**
+	 * Answer <code>true</code> if the given resolver's
+	 * {@link ELResolver#getValue(ELContext, Object, Object)} method is the one declared by the given
+	 * class, i.e. it has not been overridden by a subclass. Providers use this to make sure the
+	 * accessors they provide are equivalent to getValue(). The answer is remembered per resolver
+	 * class.
+	 */
+	public static boolean isGetValueDeclaredBy(ELResolver resolver, Class<?> type) {
+		Class<?> resolverType = resolver.getClass();
+		if (resolverType == type) {
+			return true;
+		}
+		WeakReference<Class<?>> reference = DECLARING.get(new LookupKey(resolverType));
+		Class<?> declaringType = reference == null ? null : reference.get();
+		if (declaringType == null) {
+			declaringType = getValueDeclaringClass(resolverType);
+			for (Object key = COLLECTED.poll(); key != null; key = COLLECTED.poll()) {
+				DECLARING.remove(key);
+			}
+			DECLARING.put(new WeakKey(resolverType, COLLECTED), new WeakReference<Class<?>>(declaringType));
+		}
+		return declaringType == type;
+	}
+
+	private static Class<?> getValueDeclaringClass(Class<?> type) {
+		try {
+			return type.getMethod("getValue", ELContext.class, Object.class, Object.class).getDeclaringClass();
+		} catch (NoSuchMethodException e) {
+			return ELResolver.class; // cannot happen, getValue() is declared abstract there
+		}
+	}
+
+	/**
+	 * Key referencing its class weakly. Keys compare their classes by identity.
+	 */
+	private static final class WeakKey extends WeakReference<Class<?>> {
+		private final int hash;
+
+		WeakKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+			super(type, queue);
+			this.hash = System.identityHashCode(type);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			Class<?> type = get();
+			return type != null && obj instanceof WeakKey && ((WeakKey) obj).get() == type;
+		}
+	}
+
+	/**
+	 * Key used to lookup the map without creating a reference.
+	 */
+	private static final class LookupKey {
+		private final Class<?> type;
+
+		LookupKey(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(type);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof WeakKey && ((WeakKey) obj).get() == type;
+		}
+	}
+}
@@ -19,6 +19,10 @@ import java.beans.FeatureDescriptor;
 import java.lang.reflect.Array;
 import java.util.Iterator;
 
+import de.odysseus.el.spi.PropertyAccessor;
+import de.odysseus.el.spi.PropertyAccessorProvider;
+import de.odysseus.el.spi.PropertyAccessors;
+
 /**
  * Defines property resolution behavior on arrays. This resolver handles base objects that are Java
  * language arrays. It accepts any object as a property and coerces that object into an integer
@@ -29,7 +33,7 @@ import java.util.Iterator;
  * s, to define rich semantics for evaluating an expression. See the javadocs for {@link ELResolver}
  * for details.
  */
-public class ArrayELResolver extends ELResolver {
+public class ArrayELResolver extends ELResolver implements PropertyAccessorProvider {
 	private final boolean readOnly;
 
 	/**
@@ -166,6 +170,45 @@ public class ArrayELResolver extends ELResolver {
 		return result;
 	}
 
+	/**
+	 * If the base object is a Java language array, answers an accessor reading the element at the
+	 * index given by property, behaving like {@link #getValue(ELContext, Object, Object)}.
+	 * Otherwise, answers {@link PropertyAccessorProvider#UNRESOLVED}. Answers <code>null</code> if
+	 * getValue() has been overridden by a subclass.
+	 * 
+	 * @param context
+	 *            The context of this evaluation.
+	 * @param base
+	 *            The array to analyze.
+	 * @param property
+	 *            The index of the element, will be coerced into an integer.
+	 * @return an accessor, {@link PropertyAccessorProvider#UNRESOLVED} or <code>null</code>
+	 * @throws IllegalArgumentException
+	 *             if base is an array and the property cannot be coerced into an integer.
+	 */
+	public PropertyAccessor getPropertyAccessor(ELContext context, Object base, Object property) {
+		if (!PropertyAccessors.isGetValueDeclaredBy(this, ArrayELResolver.class)) {
+			return null;
+		}
+		if (!isResolvable(base)) {
+			return UNRESOLVED;
+		}
+		final int index = toIndex(null, property);
+		return new PropertyAccessor() {
+			public Object getValue(ELContext context, Object base) {
+				return index < 0 || index >= Array.getLength(base) ? null : Array.get(base, index);
+			}
+		};
+	}
+
+	/**
+	 * Answers the class of this resolver, or <code>null</code> if getValue() has been overridden by
+	 * a subclass.
+	 */
+	public Object getPropertyAccessorKey() {
+		return PropertyAccessors.isGetValueDeclaredBy(this, ArrayELResolver.class) ? getClass() : null;
+	}
+
 	/**
 	 * If the base object is a Java language array, returns whether a call to
 	 * {@link #setValue(ELContext, Object, Object, Object)} will always fail. If the base is a Java
@@ -19,6 +19,7 @@ import java.beans.FeatureDescriptor;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -33,10 +34,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.el.BeanELResolver.MethodDispatcher.Predicates.JuelCoercePredicat;
 
+import de.odysseus.el.spi.PropertyAccessor;
+import de.odysseus.el.spi.PropertyAccessorProvider;
+import de.odysseus.el.spi.PropertyAccessors;
+
 /**
  * Defines property resolution behavior on objects using the JavaBeans component architecture. This
  * resolver handles base objects of any type, as long as the base is not null. It accepts any object
@@ -53,19 +57,37 @@ import javax.el.BeanELResolver.MethodDispatcher.Predicates.JuelCoercePredicat;
  * @see CompositeELResolver
  * @see ELResolver
  */
-public class BeanELResolver extends ELResolver {
+public class BeanELResolver extends ELResolver implements PropertyAccessorProvider {
 	protected static final class BeanProperties {
-		private final Map<String, BeanProperty> map = new HashMap<String, BeanProperty>();
+		private final Map<String, BeanProperty> map;
 
 		public BeanProperties(Class<?> baseClass) {
-			PropertyDescriptor[] descriptors;
-			try {
-				descriptors = Introspector.getBeanInfo(baseClass).getPropertyDescriptors();
-			} catch (IntrospectionException e) {
-				throw new ELException(e);
-			}
-			for (PropertyDescriptor descriptor : descriptors) {
-				map.put(descriptor.getName(), new BeanProperty(descriptor));
+			this(baseClass, false);
+		}
+
+		/**
+		 * Create bean properties for the given class.
+		 * 
+		 * @param baseClass
+		 *            The bean class.
+		 * @param lightweight
+		 *            <code>true</code> to discover properties with {@link BeanIntrospector},
+		 *            <code>false</code> to use {@link Introspector}.
+		 */
+		BeanProperties(Class<?> baseClass, boolean lightweight) {
+			if (lightweight) {
+				map = BeanIntrospector.getBeanProperties(baseClass);
+			} else {
+				PropertyDescriptor[] descriptors;
+				try {
+					descriptors = Introspector.getBeanInfo(baseClass).getPropertyDescriptors();
+				} catch (IntrospectionException e) {
+					throw new ELException(e);
+				}
+				map = new HashMap<String, BeanProperty>();
+				for (PropertyDescriptor descriptor : descriptors) {
+					map.put(descriptor.getName(), new BeanProperty(descriptor));
+				}
 			}
 		}
 
@@ -75,29 +97,50 @@ public class BeanELResolver extends ELResolver {
 	}
 
 	protected static final class BeanProperty {
-		private final PropertyDescriptor descriptor;
+		private static final Object[] NO_ARGS = new Object[0];
+
+		private final String name;
+		private final Class<?> type;
+		private final Method declaredReadMethod;
+		private final Method declaredWriteMethod;
 		
 		private Method readMethod;
 		private Method writedMethod;
 
+		/*
+		 * Set after the corresponding method field has been written, so that a missing accessor
+		 * is looked up only once.
+		 */
+		private volatile boolean readMethodResolved;
+		private volatile boolean writeMethodResolved;
+
 		public BeanProperty(PropertyDescriptor descriptor) {
-			this.descriptor = descriptor;
+			this(descriptor.getName(), descriptor.getPropertyType(), descriptor.getReadMethod(), descriptor.getWriteMethod());
+		}
+
+		BeanProperty(String name, Class<?> type, Method readMethod, Method writeMethod) {
+			this.name = name;
+			this.type = type;
+			this.declaredReadMethod = readMethod;
+			this.declaredWriteMethod = writeMethod;
 		}
 
 		public Class<?> getPropertyType() {
-			return descriptor.getPropertyType();
+			return type;
 		}
 
 		public Method getReadMethod() {
-			if (readMethod == null) {
-				readMethod = findAccessibleMethod(descriptor.getReadMethod());
+			if (!readMethodResolved) {
+				readMethod = findAccessibleMethod(declaredReadMethod);
+				readMethodResolved = true;
 			}
 			return readMethod;
 		}
 
 		public Method getWriteMethod() {
-			if (writedMethod == null) {
-				writedMethod = findAccessibleMethod(descriptor.getWriteMethod());
+			if (!writeMethodResolved) {
+				writedMethod = findAccessibleMethod(declaredWriteMethod);
+				writeMethodResolved = true;
 			}
 			return writedMethod;
 		}
@@ -105,6 +148,59 @@ public class BeanELResolver extends ELResolver {
 		public boolean isReadOnly() {
 			return getWriteMethod() == null;
 		}
+
+		/**
+		 * Read the property value from the given bean.
+		 * 
+		 * @param base
+		 *            The bean to read from.
+		 * @return the property value
+		 * @throws PropertyNotFoundException
+		 *             if the property is not readable.
+		 * @throws ELException
+		 *             if the read method threw an exception.
+		 */
+		public Object getValue(Object base) {
+			Method method = getReadMethod();
+			if (method == null) {
+				throw new PropertyNotFoundException("Cannot read property " + name);
+			}
+			try {
+				return method.invoke(base, NO_ARGS);
+			} catch (InvocationTargetException e) {
+				throw new ELException(e.getCause());
+			} catch (Exception e) {
+				throw new ELException(e);
+			}
+		}
+
+		/**
+		 * Write the property value to the given bean.
+		 * 
+		 * @param base
+		 *            The bean to write to.
+		 * @param value
+		 *            The value to set.
+		 * @throws PropertyNotWritableException
+		 *             if the property is not writable.
+		 * @throws ELException
+		 *             if the write method threw an exception.
+		 */
+		public void setValue(Object base, Object value) {
+			Method method = getWriteMethod();
+			if (method == null) {
+				throw new PropertyNotWritableException("Cannot write property: " + name);
+			}
+			try {
+				method.invoke(base, value);
+			} catch (InvocationTargetException e) {
+				throw new ELException("Cannot write property: " + name, e.getCause());
+			} catch (IllegalArgumentException e) {
+				throw new ELException("Cannot write property: " + name, e);
+			} catch (IllegalAccessException e) {
+				throw new PropertyNotWritableException("Cannot write property: " + name, e);
+			}
+		}
 	}
 
 	private static Method findPublicAccessibleMethod(Method method) {
@@ -153,8 +249,12 @@ public class BeanELResolver extends ELResolver {
 		return result;
 	}
 
+	private static final Object[] NO_PARAMS = new Object[0];
+
 	private final boolean readOnly;
-	private final ConcurrentHashMap<Class<?>, BeanProperties> cache;
+	private final boolean lightweight;
+	private final ClassCache<BeanProperties> cache;
+	private final ClassCache<MethodCache> methodCache;
 	
 	private ExpressionFactory defaultFactory;
 
@@ -169,8 +269,55 @@ public class BeanELResolver extends ELResolver {
 	 * Creates a new BeanELResolver whose read-only status is determined by the given parameter.
 	 */
 	public BeanELResolver(boolean readOnly) {
+		this(readOnly, false);
+	}
+
+	/**
+	 * Creates a new BeanELResolver whose read-only status and introspection engine are determined
+	 * by the given parameters. A lightweight resolver discovers bean properties directly from the
+	 * public getter, is-getter and setter methods of a bean class, instead of using
+	 * {@link Introspector}. This is faster, but <code>BeanInfo</code> classes are ignored.
+	 * 
+	 * Note: this constructor is a JUEL extension and not part of the EL specification.
+	 * 
+	 * @param readOnly
+	 *            true if this resolver cannot modify beans; false otherwise.
+	 * @param lightweight
+	 *            true to discover bean properties by reflection; false to use the JavaBeans
+	 *            introspector.
+	 */
+	public BeanELResolver(boolean readOnly, boolean lightweight) {
 		this.readOnly = readOnly;
-		this.cache = new ConcurrentHashMap<Class<?>, BeanProperties>();
+		this.lightweight = lightweight;
+		this.cache = new ClassCache<BeanProperties>(BeanELResolver.class.getClassLoader()) {
+			@Override
+			protected BeanProperties computeValue(Class<?> type) {
+				return new BeanProperties(type, BeanELResolver.this.lightweight);
+			}
+		};
+		this.methodCache = new ClassCache<MethodCache>(BeanELResolver.class.getClassLoader()) {
+			@Override
+			protected MethodCache computeValue(Class<?> type) {
+				return new MethodCache(type);
+			}
+		};
+	}
+
+	/**
+	 * Introspect the given bean classes ahead of time, so that the first evaluation accessing one
+	 * of their properties does not have to. Classes already introspected are skipped.
+	 * 
+	 * Note: this method is a JUEL extension and not part of the EL specification.
+	 * 
+	 * @param beanClasses
+	 *            The bean classes to introspect.
+	 * @throws ELException
+	 *             if a class could not be introspected.
+	 */
+	public void introspect(Class<?>... beanClasses) {
+		for (Class<?> beanClass : beanClasses) {
+			cache.get(beanClass);
+		}
 	}
 
 	/**
@@ -322,22 +469,64 @@ public class BeanELResolver extends ELResolver {
 		}
 		Object result = null;
 		if (isResolvable(base)) {
-			Method method = toBeanProperty(base, property).getReadMethod();
-			if (method == null) {
-				throw new PropertyNotFoundException("Cannot read property " + property);
-			}
-			try {
-				result = method.invoke(base);
-			} catch (InvocationTargetException e) {
-				throw new ELException(e.getCause());
-			} catch (Exception e) {
-				throw new ELException(e);
-			}
+			result = toBeanProperty(base, property).getValue(base);
 			context.setPropertyResolved(true);
 		}
 		return result;
 	}
 
+	/**
+	 * If the base object is not null, answers an accessor invoking the read method of the given
+	 * bean property, behaving like {@link #getValue(ELContext, Object, Object)}. Answers
+	 * {@link PropertyAccessorProvider#UNRESOLVED} for a null base. Answers <code>null</code> if the
+	 * property does not exist or is not readable, or if getValue() has been overridden by a
+	 * subclass. The accessor holds the bean property weakly, so that it does not keep the bean
+	 * class alive once it has been dropped from this resolver's cache.
+	 * 
+	 * @param context
+	 *            The context of this evaluation.
+	 * @param base
+	 *            The bean to analyze.
+	 * @param property
+	 *            The name of the property to analyze. Will be coerced to a String.
+	 * @return an accessor, {@link PropertyAccessorProvider#UNRESOLVED} or <code>null</code>
+	 */
+	public PropertyAccessor getPropertyAccessor(ELContext context, Object base, final Object property) {
+		if (!PropertyAccessors.isGetValueDeclaredBy(this, BeanELResolver.class)) {
+			return null;
+		}
+		if (!isResolvable(base)) {
+			return UNRESOLVED;
+		}
+		BeanProperty beanProperty;
+		try {
+			beanProperty = toBeanProperty(base, property);
+		} catch (PropertyNotFoundException e) {
+			return null;
+		}
+		if (beanProperty.getReadMethod() == null) {
+			return null;
+		}
+		final WeakReference<BeanProperty> reference = new WeakReference<BeanProperty>(beanProperty);
+		return new PropertyAccessor() {
+			public Object getValue(ELContext context, Object base) {
+				BeanProperty beanProperty = reference.get();
+				if (beanProperty == null) {
+					beanProperty = toBeanProperty(base, property);
+				}
+				return beanProperty.getValue(base);
+			}
+		};
+	}
+
+	/**
+	 * Answers the class of this resolver, or <code>null</code> if getValue() has been overridden by
+	 * a subclass.
+	 */
+	public Object getPropertyAccessorKey() {
+		return PropertyAccessors.isGetValueDeclaredBy(this, BeanELResolver.class) ? getClass() : null;
+	}
+
 	/**
 	 * If the base object is not null, returns whether a call to
 	 * {@link #setValue(ELContext, Object, Object, Object)} will always fail. If the base is not
@@ -416,19 +605,7 @@ public class BeanELResolver extends ELResolver {
 			if (readOnly) {
 				throw new PropertyNotWritableException("resolver is read-only");
 			}
-			Method method = toBeanProperty(base, property).getWriteMethod();
-			if (method == null) {
-				throw new PropertyNotWritableException("Cannot write property: " + property);
-			}
-			try {
-				method.invoke(base, value);
-			} catch (InvocationTargetException e) {
-				throw new ELException("Cannot write property: " + property, e.getCause());
-			} catch (IllegalArgumentException e) {
-				throw new ELException("Cannot write property: " + property, e);
-			} catch (IllegalAccessException e) {
-				throw new PropertyNotWritableException("Cannot write property: " + property, e);
-			}
+			toBeanProperty(base, property).setValue(base, value);
 			context.setPropertyResolved(true);
 		}
 	}
@@ -497,7 +674,7 @@ public class BeanELResolver extends ELResolver {
 		Object result = null;
 		if (isResolvable(base)) {
 			if (params == null) {
-				params = new Object[0];
+				params = NO_PARAMS;
 			}
 			String name = method.toString();
 			ExpressionFactory factory = getExpressionFactory(context);
@@ -515,7 +692,7 @@ public class BeanELResolver extends ELResolver {
                 );
 			}
 			try {
-				result = target.invoke(base, coerceParams(getExpressionFactory(context), target, params));
+				result = target.invoke(base, coerceParams(factory, target, params));
 			} catch (InvocationTargetException e) {
 				throw new ELException(e.getCause());
 			} catch (IllegalAccessException e) {
@@ -534,14 +711,22 @@ public class BeanELResolver extends ELResolver {
 				return null;
 			}
 		}
-		try {
-			return findAccessibleMethod(
-				MethodDispatcher.getPublicMethod(base, name, params, factory)
-			);
-		}
-		catch (Exception e ) {
-			return null;
+		MethodCache methods = methodCache.get(base.getClass());
+		Method method = methods.get(name, params, factory);
+		if (method == null) {
+			try {
+				method = findAccessibleMethod(
+					MethodDispatcher.getPublicMethod(base, name, params, factory)
+				);
+			}
+			catch (Exception e ) {
+				return null;
+			}
+			if (method != null) {
+				methods.put(name, params, factory, method);
+			}
 		}
+		return method;
 	}
 
 	/**
@@ -656,13 +841,6 @@ public class BeanELResolver extends ELResolver {
 	 */
 	private final BeanProperty toBeanProperty(Object base, Object property) {
 		BeanProperties beanProperties = cache.get(base.getClass());
-		if (beanProperties == null) {
-			BeanProperties newBeanProperties = new BeanProperties(base.getClass());
-			beanProperties = cache.putIfAbsent(base.getClass(), newBeanProperties);
-			if (beanProperties == null) { // put succeeded, use new value
-				beanProperties = newBeanProperties;
-			}
-		}
 		BeanProperty beanProperty = property == null ? null : beanProperties.getBeanProperty(property.toString());
 		if (beanProperty == null) {
 			throw new PropertyNotFoundException("Could not find property " + property + " in " + base.getClass());
@@ -682,12 +860,8 @@ public class BeanELResolver extends ELResolver {
 	 */
 	@SuppressWarnings("unused")
 	private final void purgeBeanClasses(ClassLoader loader) {
-		Iterator<Class<?>> classes = cache.keySet().iterator();
-		while (classes.hasNext()) {
-			if (loader == classes.next().getClassLoader()) {
-				classes.remove();
-			}
-		}
+		cache.removeAll(loader);
+		methodCache.removeAll(loader);
 	}
 	
 	/**
@@ -721,9 +895,6 @@ public class BeanELResolver extends ELResolver {
 			autoUnboxingMap.put(Boolean.class, Boolean.TYPE);
 		}
 
-		private static final ConcurrentHashMap<List<Object>,Method> methodCache = 
-				new ConcurrentHashMap<List<Object>, Method>();
-		
 		/**
 		 * Predicate decides whether parameter can be converted into a given type.
 		 */
@@ -756,29 +927,6 @@ public class BeanELResolver extends ELResolver {
 			<P> boolean match(Method m, P[] param, Predicate<P> predicat);
 		}
 		
-		/**
-		 * Create a key used for the method cache.
-		 * 
-		 * Note: we use a list 
-		 * @param oType class one witch the method is defined
-		 * @param name Name of the method
-		 * @param pTypes Parameter types used to resolve the method
-		 * @param factory
-		 * @return immutable list used as key for the method cache
-		 */
-		private static List<Object> createCacheKey(
-			Class<?> oType, String name, Class<?>[] pTypes, ExpressionFactory factory
-		) {
-			ArrayList<Object> result = new ArrayList<Object>();
-			result.add(oType);
-			result.add(name);
-			for (Class<?> c : pTypes) {
-				result.add(c);
-			}
-			result.add(factory.getClass());
-			return Collections.unmodifiableList(result); // collection keys should be immutable
-		}
-		
 		/**
 		 * Resolve the public method matching the method name and given parameters.
 		 * 
@@ -796,13 +944,6 @@ public class BeanELResolver extends ELResolver {
 			Class<?> oType = obj.getClass();
 			Class<?>[] pTypes = deriveTypes(params);
 			
-			// lookup method in cache
-			List<Object> key = createCacheKey(oType, name, pTypes, factory);
-			Method method = methodCache.get(key);
-			if ( method != null ) {
-				return method;
-			}
-			
 			/* use JDK to find the method
 			 * NOTE: We will not find the method if
 			 * a) one of the parameters is <null>
@@ -833,7 +974,7 @@ public class BeanELResolver extends ELResolver {
 				);
 				if ( matched.size() != 0 ) {
 					return selectMostSpecific(
-						matched, MethodComparators.FIXED_ARITY, key
+						matched, MethodComparators.FIXED_ARITY
 					);
 				}
 	
@@ -845,7 +986,7 @@ public class BeanELResolver extends ELResolver {
 				);
 				if ( matched.size() != 0 ) {
 					return selectMostSpecific(
-						matched, MethodComparators.FIXED_ARITY, key
+						matched, MethodComparators.FIXED_ARITY
 					);
 				}
 	
@@ -858,7 +999,7 @@ public class BeanELResolver extends ELResolver {
 				);
 				if ( matched.size() != 0 ) {
 					return selectMostSpecific(
-						matched, MethodComparators.FIXED_ARITY, key
+						matched, MethodComparators.FIXED_ARITY
 					);
 				}
 			}
@@ -872,7 +1013,7 @@ public class BeanELResolver extends ELResolver {
 				);
 				if ( matched.size() != 0 ) {
 					return selectMostSpecific(
-						matched, MethodComparators.VARARG_ARITIY, key
+						matched, MethodComparators.VARARG_ARITIY
 					);
 				}
 	
@@ -885,7 +1026,7 @@ public class BeanELResolver extends ELResolver {
 					);
 				if ( matched.size() != 0 ) {
 					return selectMostSpecific(
-						matched, MethodComparators.VARARG_ARITIY, key
+						matched, MethodComparators.VARARG_ARITIY
 					);
 				}
 			}
@@ -983,13 +1124,10 @@ public class BeanELResolver extends ELResolver {
 		 * @param methods List of method from which the most specific is chosen
 		 * @param comparator Comparator used to compare tow methods based on how 
 		 * specific they are
-		 * @param key Key under which a method is added to the cache in case a
-		 * most specific method was found. 
 		 * @return The most specific method if there is one.
 		 */
 		private static Method selectMostSpecific(
-			List<Method> methods, Comparator<Method> comparator,
-			List<Object> key
+			List<Method> methods, Comparator<Method> comparator
 		) {
 			Method method = null;
 			switch (methods.size()) {
@@ -1013,9 +1151,6 @@ public class BeanELResolver extends ELResolver {
 					method = methods.get(0);
 				}
 			}
-			if ( method != null ) {
-				methodCache.put(key, method);
-			}
 			return method;
 		}
 		
@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package javax.el;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.el.BeanELResolver.BeanProperty;
+
+/**
+ * Lightweight replacement for <code>java.beans.Introspector</code>, discovering the properties of a
+ * bean class directly from its public methods:
+ * <ul>
+ * <li><code>T getXxx()</code> and <code>boolean isXxx()</code> are read methods, where the latter
+ * takes precedence,</li>
+ * <li><code>void setXxx(T)</code> is a write method; if there is a read method, its type must
+ * match.</li>
+ * </ul>
+ * Static methods and bridge methods are skipped. Property types declared by type variables are
+ * resolved against the bean class, if possible (e.g. the type of property <code>value</code> of
+ * <code>class StringBox extends Box&lt;String&gt;</code> is <code>String</code>). Property names
+ * are derived as by <code>Introspector.decapitalize()</code>. <code>BeanInfo</code> classes are
+ * not considered.
+ */
+final class BeanIntrospector {
+	/**
+	 * Discover the properties of the given bean class.
+	 * 
+	 * @param beanClass
+	 *            The bean class.
+	 * @return map of property names to bean properties
+	 */
+	static Map<String, BeanProperty> getBeanProperties(Class<?> beanClass) {
+		Map<TypeVariable<?>, Type> bindings = getTypeBindings(beanClass);
+		Map<String, Method> readMethods = new HashMap<String, Method>();
+		Map<String, List<Method>> writeMethods = new HashMap<String, List<Method>>();
+		for (Method method : beanClass.getMethods()) {
+			if (Modifier.isStatic(method.getModifiers()) || method.isBridge()) {
+				continue;
+			}
+			String name = method.getName();
+			int paramCount = method.getParameterTypes().length;
+			Class<?> returnType = method.getReturnType();
+			if (paramCount == 0 && name.length() > 3 && name.startsWith("get") && returnType != void.class) {
+				String property = decapitalize(name.substring(3));
+				Method readMethod = readMethods.get(property);
+				if (readMethod == null || !readMethod.getName().startsWith("is")) {
+					readMethods.put(property, method);
+				}
+			} else if (paramCount == 0 && name.length() > 2 && name.startsWith("is") && returnType == boolean.class) {
+				readMethods.put(decapitalize(name.substring(2)), method);
+			} else if (paramCount == 1 && name.length() > 3 && name.startsWith("set") && returnType == void.class) {
+				String property = decapitalize(name.substring(3));
+				List<Method> methods = writeMethods.get(property);
+				if (methods == null) {
+					writeMethods.put(property, methods = new ArrayList<Method>(1));
+				}
+				methods.add(method);
+			}
+		}
+		Map<String, BeanProperty> result = new HashMap<String, BeanProperty>();
+		for (Map.Entry<String, Method> entry : readMethods.entrySet()) {
+			Method readMethod = entry.getValue();
+			Class<?> type = resolve(readMethod.getGenericReturnType(), readMethod.getReturnType(), bindings);
+			Method writeMethod = null;
+			List<Method> methods = writeMethods.remove(entry.getKey());
+			if (methods != null) {
+				for (Method method : methods) {
+					if (type == resolve(method.getGenericParameterTypes()[0], method.getParameterTypes()[0], bindings)) {
+						writeMethod = method;
+						break;
+					}
+				}
+			}
+			result.put(entry.getKey(), new BeanProperty(entry.getKey(), type, readMethod, writeMethod));
+		}
+		for (Map.Entry<String, List<Method>> entry : writeMethods.entrySet()) {
+			Method writeMethod = null; // choose setter with "smallest" parameter type name
+			for (Method method : entry.getValue()) {
+				if (writeMethod == null || method.getParameterTypes()[0].getName().compareTo(writeMethod.getParameterTypes()[0].getName()) < 0) {
+					writeMethod = method;
+				}
+			}
+			Class<?> type = resolve(writeMethod.getGenericParameterTypes()[0], writeMethod.getParameterTypes()[0], bindings);
+			result.put(entry.getKey(), new BeanProperty(entry.getKey(), type, null, writeMethod));
+		}
+		return result;
+	}
+
+	/**
+	 * Same as <code>java.beans.Introspector.decapitalize(String)</code>: convert the first
+	 * character to lower case, unless the first two characters are upper case.
+	 */
+	static String decapitalize(String name) {
+		if (name.length() > 1 && Character.isUpperCase(name.charAt(0)) && Character.isUpperCase(name.charAt(1))) {
+			return name;
+		}
+		char[] chars = name.toCharArray();
+		chars[0] = Character.toLowerCase(chars[0]);
+		return new String(chars);
+	}
+
+	/**
+	 * Collect the type arguments bound to the type parameters of the superclasses and interfaces of
+	 * the given class.
+	 */
+	private static Map<TypeVariable<?>, Type> getTypeBindings(Class<?> beanClass) {
+		Map<TypeVariable<?>, Type> bindings = new HashMap<TypeVariable<?>, Type>();
+		collectTypeBindings(beanClass, bindings);
+		return bindings;
+	}
+
+	private static void collectTypeBindings(Class<?> type, Map<TypeVariable<?>, Type> bindings) {
+		if (type.getGenericSuperclass() != null) {
+			collectTypeBindings(type.getGenericSuperclass(), bindings);
+		}
+		for (Type supertype : type.getGenericInterfaces()) {
+			collectTypeBindings(supertype, bindings);
+		}
+	}
+
+	private static void collectTypeBindings(Type supertype, Map<TypeVariable<?>, Type> bindings) {
+		if (supertype instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) supertype;
+			Class<?> raw = (Class<?>) parameterized.getRawType();
+			TypeVariable<?>[] variables = raw.getTypeParameters();
+			Type[] arguments = parameterized.getActualTypeArguments();
+			for (int i = 0; i < variables.length; i++) {
+				if (!bindings.containsKey(variables[i])) {
+					bindings.put(variables[i], arguments[i]);
+				}
+			}
+			collectTypeBindings(raw, bindings);
+		} else if (supertype instanceof Class<?>) {
+			collectTypeBindings((Class<?>) supertype, bindings);
+		}
+	}
+
+	/**
+	 * Resolve the given generic type to a class using the given type bindings.
+	 * 
+	 * @return resolved class or the given erased class, if the type cannot be resolved
+	 */
+	private static Class<?> resolve(Type type, Class<?> erased, Map<TypeVariable<?>, Type> bindings) {
+		for (int depth = 0; type instanceof TypeVariable<?> && depth < 16; depth++) {
+			Type bound = bindings.get(type);
+			if (bound == null) {
+				return erased;
+			}
+			type = bound;
+		}
+		if (type instanceof Class<?>) {
+			return erased.isAssignableFrom((Class<?>) type) ? (Class<?>) type : erased;
+		}
+		if (type instanceof ParameterizedType) {
+			Class<?> raw = (Class<?>) ((ParameterizedType) type).getRawType();
+			return erased.isAssignableFrom(raw) ? raw : erased;
+		}
+		return erased;
+	}
+}
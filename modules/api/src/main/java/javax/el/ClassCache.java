@@ -0,0 +1,243 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package javax.el;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cache associating a lazily computed value with a class, similar to <code>ClassValue</code>.
+ * 
+ * Classes visible to the class loader given at construction time (or loaded by the bootstrap
+ * loader) cannot be unloaded before the cache itself, so their values are held strongly. Values of
+ * other classes (e.g. beans of a web application, when this cache lives in a shared loader) are
+ * held by a weak key and a soft value reference. A value usually refers to its class (e.g. via
+ * methods), so the key is only cleared after the value has been cleared: the cache keeps the class
+ * loader of such classes alive until the garbage collector clears soft references, at the latest
+ * before throwing an <code>OutOfMemoryError</code>. To release a class loader right away, its
+ * classes must be removed by {@link #removeAll(ClassLoader)}, e.g. via
+ * <code>BeanELResolver.purgeBeanClasses(ClassLoader)</code>. Lookups never lock: both maps are
+ * concurrent, weak keys of collected classes are expunged when values are stored.
+ * 
+ * Values are computed at most once at a time per class: concurrent lookups of a missing class wait
+ * for the thread computing its value instead of computing it themselves.
+ */
+abstract class ClassCache<T> {
+	private final ClassLoader loader;
+	private final ConcurrentHashMap<Class<?>, T> strong = new ConcurrentHashMap<Class<?>, T>();
+	private final ConcurrentHashMap<Object, Reference<T>> weak = new ConcurrentHashMap<Object, Reference<T>>();
+	private final ReferenceQueue<Class<?>> collected = new ReferenceQueue<Class<?>>();
+	private final ConcurrentHashMap<Class<?>, FutureTask<T>> pending = new ConcurrentHashMap<Class<?>, FutureTask<T>>();
+
+	/**
+	 * Create a cache.
+	 * 
+	 * @param loader
+	 *            class loader whose classes may be held strongly, <code>null</code> for the
+	 *            bootstrap loader
+	 */
+	ClassCache(ClassLoader loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * Compute the value for the given class.
+	 */
+	protected abstract T computeValue(Class<?> type);
+
+	/**
+	 * Get the value for the given class, computing it if necessary.
+	 */
+	T get(final Class<?> type) {
+		T value = lookup(type);
+		if (value == null) {
+			FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+				public T call() {
+					T value = lookup(type); // may have been stored after our first lookup
+					if (value == null) {
+						value = computeValue(type);
+						if (isStrong(type)) {
+							strong.put(type, value);
+						} else {
+							expunge();
+							weak.put(new WeakKey(type, collected), new SoftReference<T>(value));
+						}
+					}
+					return value;
+				}
+			});
+			FutureTask<T> running = pending.putIfAbsent(type, task);
+			if (running == null) {
+				running = task;
+				try {
+					task.run();
+				} finally {
+					pending.remove(type, task);
+				}
+			}
+			value = await(running);
+		}
+		return value;
+	}
+
+	/**
+	 * Get the value for the given class, if present.
+	 */
+	T lookup(Class<?> type) {
+		T value = strong.get(type);
+		if (value == null) {
+			Reference<T> reference = weak.get(new LookupKey(type));
+			if (reference != null) {
+				value = reference.get();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Remove the values of all classes loaded by the given class loader.
+	 */
+	void removeAll(ClassLoader loader) {
+		Iterator<Class<?>> classes = strong.keySet().iterator();
+		while (classes.hasNext()) {
+			if (loader == classes.next().getClassLoader()) {
+				classes.remove();
+			}
+		}
+		Iterator<Object> keys = weak.keySet().iterator();
+		while (keys.hasNext()) {
+			Class<?> type = ((WeakKey) keys.next()).get();
+			if (type == null || loader == type.getClassLoader()) {
+				keys.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove the values of collected classes.
+	 */
+	private void expunge() {
+		for (Object key = collected.poll(); key != null; key = collected.poll()) {
+			weak.remove(key);
+		}
+	}
+
+	/**
+	 * Answer <code>true</code> if the given class is loaded by our loader or one of its ancestors.
+	 */
+	boolean isStrong(Class<?> type) {
+		return isVisible(type, loader);
+	}
+
+	/**
+	 * Answer <code>true</code> if the given class is loaded by the given loader, one of its
+	 * ancestors or the bootstrap loader. Such a class cannot be unloaded before the given loader.
+	 */
+	static boolean isVisible(Class<?> type, ClassLoader loader) {
+		ClassLoader typeLoader = type.getClassLoader();
+		if (typeLoader == null) {
+			return true;
+		}
+		try {
+			for (ClassLoader ancestor = loader; ancestor != null; ancestor = ancestor.getParent()) {
+				if (ancestor == typeLoader) {
+					return true;
+				}
+			}
+		} catch (SecurityException e) {
+			// not allowed to walk up the hierarchy
+		}
+		return false;
+	}
+
+	private T await(FutureTask<T> task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new ELException(cause);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Key of the weak map, referencing its class weakly. Keys compare their classes by identity.
+	 */
+	private static final class WeakKey extends WeakReference<Class<?>> {
+		private final int hash;
+
+		WeakKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+			super(type, queue);
+			this.hash = System.identityHashCode(type);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			Class<?> type = get();
+			return type != null && obj instanceof WeakKey && ((WeakKey) obj).get() == type;
+		}
+	}
+
+	/**
+	 * Key used to lookup the weak map without creating a reference.
+	 */
+	private static final class LookupKey {
+		private final Class<?> type;
+
+		LookupKey(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(type);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof WeakKey && ((WeakKey) obj).get() == type;
+		}
+	}
+}
@@ -20,6 +20,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.odysseus.el.spi.PropertyAccessor;
+import de.odysseus.el.spi.PropertyAccessorProvider;
+import de.odysseus.el.spi.PropertyAccessors;
 
 /**
  * Maintains an ordered composite list of child ELResolvers. Though only a single ELResolver is
@@ -40,8 +45,33 @@ import java.util.List;
  * {@link #getCommonPropertyType(ELContext, Object)}. Instead, results are collected and combined
  * from all child ELResolvers for these methods.
  */
-public class CompositeELResolver extends ELResolver {
+public class CompositeELResolver extends ELResolver implements PropertyAccessorProvider {
+	/**
+	 * Accessor key of a composite resolver, computed when its components were last changed.
+	 */
+	private static final class AccessorKey {
+		final Object key;
+		final int modification;
+
+		AccessorKey(Object key, int modification) {
+			this.key = key;
+			this.modification = modification;
+		}
+	}
+
+	/**
+	 * Marks the end of a composite's accessor key at the first component not providing accessors.
+	 */
+	private static final Object NOT_PROVIDING = new Object();
+
+	/**
+	 * Incremented whenever a component is added to a composite whose key has been computed, so
+	 * that keys of enclosing composites are recomputed, too.
+	 */
+	private static final AtomicInteger MODIFICATIONS = new AtomicInteger();
+
 	private final List<ELResolver> resolvers = new ArrayList<ELResolver>();
+	private volatile AccessorKey accessorKey;
 
 	/**
 	 * Adds the given resolver to the list of component resolvers. Resolvers are consulted in the
@@ -57,6 +87,10 @@ public class CompositeELResolver extends ELResolver {
 			throw new NullPointerException("resolver must not be null");
 		}
 		resolvers.add(elResolver);
+		if (accessorKey != null) { // may be part of the key of an enclosing composite
+			accessorKey = null;
+			MODIFICATIONS.incrementAndGet();
+		}
 	}
 
 	/**
@@ -236,6 +270,75 @@ public class CompositeELResolver extends ELResolver {
 		return null;
 	}
 
+	/**
+	 * Answers the accessor of the first component resolver that resolves the given (base, property)
+	 * pair. Component resolvers answering {@link PropertyAccessorProvider#UNRESOLVED} are skipped.
+	 * If a component resolver does not implement {@link PropertyAccessorProvider} or answers
+	 * <code>null</code>, iteration stops and <code>null</code> is returned, since the order of
+	 * resolvers must be respected. Answers <code>null</code> if getValue() has been overridden by
+	 * a subclass.
+	 * 
+	 * @param context
+	 *            The context of this evaluation.
+	 * @param base
+	 *            The base object.
+	 * @param property
+	 *            The property to be accessed.
+	 * @return an accessor, {@link PropertyAccessorProvider#UNRESOLVED} or <code>null</code>
+	 */
+	public PropertyAccessor getPropertyAccessor(ELContext context, Object base, Object property) {
+		if (!PropertyAccessors.isGetValueDeclaredBy(this, CompositeELResolver.class)) {
+			return null;
+		}
+		for (int i = 0, l = resolvers.size(); i < l; i++) {
+			ELResolver resolver = resolvers.get(i);
+			if (!(resolver instanceof PropertyAccessorProvider)) {
+				return null;
+			}
+			PropertyAccessor accessor = ((PropertyAccessorProvider) resolver).getPropertyAccessor(context, base, property);
+			if (accessor != UNRESOLVED) {
+				return accessor;
+			}
+		}
+		return UNRESOLVED;
+	}
+
+	/**
+	 * Answers a list of the keys of the component resolvers, up to the first component resolver not
+	 * implementing {@link PropertyAccessorProvider}, since {@link #getPropertyAccessor(ELContext,
+	 * Object, Object)} never gets past it. Answers <code>null</code> if a component resolver answers
+	 * <code>null</code> or if getValue() has been overridden by a subclass. The key is remembered
+	 * until a component resolver is added.
+	 */
+	public Object getPropertyAccessorKey() {
+		if (!PropertyAccessors.isGetValueDeclaredBy(this, CompositeELResolver.class)) {
+			return null;
+		}
+		int modification = MODIFICATIONS.get();
+		AccessorKey cached = accessorKey;
+		if (cached == null || cached.modification != modification) {
+			accessorKey = cached = new AccessorKey(createPropertyAccessorKey(), modification);
+		}
+		return cached.key;
+	}
+
+	private Object createPropertyAccessorKey() {
+		List<Object> keys = new ArrayList<Object>(resolvers.size());
+		for (int i = 0, l = resolvers.size(); i < l; i++) {
+			ELResolver resolver = resolvers.get(i);
+			if (!(resolver instanceof PropertyAccessorProvider)) {
+				keys.add(NOT_PROVIDING);
+				break;
+			}
+			Object key = ((PropertyAccessorProvider) resolver).getPropertyAccessorKey();
+			if (key == null) {
+				return null;
+			}
+			keys.add(key);
+		}
+		return keys;
+	}
+
 	/**
 	 * For a given base and property, attempts to determine whether a call to
 	 * {@link #setValue(ELContext, Object, Object, Object)} will always fail. The result is obtained
@@ -19,6 +19,10 @@ import java.beans.FeatureDescriptor;
 import java.util.Iterator;
 import java.util.Map;
 
+import de.odysseus.el.spi.PropertyAccessor;
+import de.odysseus.el.spi.PropertyAccessorProvider;
+import de.odysseus.el.spi.PropertyAccessors;
+
 /**
  * Defines property resolution behavior on instances of java.util.Map. This resolver handles base
  * objects of type java.util.Map. It accepts any object as a property and uses that object as a key
@@ -29,7 +33,7 @@ import java.util.Map;
  * s, to define rich semantics for evaluating an expression. See the javadocs for {@link ELResolver}
  * for details.
  */
-public class MapELResolver extends ELResolver {
+public class MapELResolver extends ELResolver implements PropertyAccessorProvider {
 	private final boolean readOnly;
 
 	/**
@@ -199,6 +203,42 @@ public class MapELResolver extends ELResolver {
 		return result;
 	}
 
+	/**
+	 * If the base object is a map, answers an accessor reading the value for the given key,
+	 * behaving like {@link #getValue(ELContext, Object, Object)}. Otherwise, answers
+	 * {@link PropertyAccessorProvider#UNRESOLVED}. Answers <code>null</code> if getValue() has been
+	 * overridden by a subclass.
+	 * 
+	 * @param context
+	 *            The context of this evaluation.
+	 * @param base
+	 *            The map to analyze.
+	 * @param property
+	 *            The key whose associated value is to be read.
+	 * @return an accessor, {@link PropertyAccessorProvider#UNRESOLVED} or <code>null</code>
+	 */
+	public PropertyAccessor getPropertyAccessor(ELContext context, Object base, final Object property) {
+		if (!PropertyAccessors.isGetValueDeclaredBy(this, MapELResolver.class)) {
+			return null;
+		}
+		if (!isResolvable(base)) {
+			return UNRESOLVED;
+		}
+		return new PropertyAccessor() {
+			public Object getValue(ELContext context, Object base) {
+				return ((Map<?, ?>) base).get(property);
+			}
+		};
+	}
+
+	/**
+	 * Answers the class of this resolver, or <code>null</code> if getValue() has been overridden by
+	 * a subclass.
+	 */
+	public Object getPropertyAccessorKey() {
+		return PropertyAccessors.isGetValueDeclaredBy(this, MapELResolver.class) ? getClass() : null;
+	}
+
 	/**
 	 * If the base object is a map, returns whether a call to
 	 * {@link #setValue(ELContext, Object, Object, Object)} will always fail. If the base is a Map,
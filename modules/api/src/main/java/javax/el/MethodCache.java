@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package javax.el;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-class cache of methods resolved by {@link BeanELResolver} for a method name and the classes
+ * of the actual parameters. Lookups compare the parameters' classes in place and do not allocate.
+ * 
+ * The cache is bounded: at most {@link #MAX_ENTRIES} parameter class combinations are kept per
+ * method name, replacing the oldest one when full, and only names of resolved methods are stored.
+ * Entries whose parameter classes (or expression factory class) might be unloaded before both the
+ * bean class and this API are not stored, so the cache never keeps another class loader alive.
+ */
+final class MethodCache {
+	/**
+	 * Maximum number of entries per method name.
+	 */
+	static final int MAX_ENTRIES = 8;
+
+	private static final class Entry {
+		final Class<?>[] types; // null for null parameters
+		final Class<?> factoryType;
+		final Method method;
+
+		Entry(Class<?>[] types, Class<?> factoryType, Method method) {
+			this.types = types;
+			this.factoryType = factoryType;
+			this.method = method;
+		}
+
+		boolean matches(Object[] params, Class<?> factoryType) {
+			if (this.factoryType != factoryType || types.length != params.length) {
+				return false;
+			}
+			for (int i = 0; i < types.length; i++) {
+				if (types[i] != (params[i] == null ? null : params[i].getClass())) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private final ClassLoader loader;
+	private final ConcurrentHashMap<String, Entry[]> entries = new ConcurrentHashMap<String, Entry[]>();
+
+	/**
+	 * Create a cache for methods of the given class.
+	 */
+	MethodCache(Class<?> type) {
+		this.loader = type.getClassLoader();
+	}
+
+	/**
+	 * Get the method cached for the given name, actual parameters and expression factory.
+	 * 
+	 * @return cached method or <code>null</code>
+	 */
+	Method get(String name, Object[] params, ExpressionFactory factory) {
+		Entry[] entries = this.entries.get(name);
+		if (entries != null) {
+			Class<?> factoryType = factory.getClass();
+			for (Entry entry : entries) {
+				if (entry.matches(params, factoryType)) {
+					return entry.method;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remember the method resolved for the given name, actual parameters and expression factory.
+	 * Concurrent updates may be lost, which just leads to resolving the method again.
+	 */
+	void put(String name, Object[] params, ExpressionFactory factory, Method method) {
+		Class<?> factoryType = factory.getClass();
+		if (!isCacheable(factoryType)) {
+			return;
+		}
+		Class<?>[] types = new Class<?>[params.length];
+		for (int i = 0; i < params.length; i++) {
+			if (params[i] != null) {
+				types[i] = params[i].getClass();
+				if (!isCacheable(types[i])) {
+					return;
+				}
+			}
+		}
+		Entry entry = new Entry(types, factoryType, method);
+		Entry[] oldEntries = this.entries.get(name);
+		if (oldEntries == null) {
+			this.entries.putIfAbsent(name, new Entry[] { entry });
+		} else {
+			int length = Math.min(oldEntries.length + 1, MAX_ENTRIES);
+			Entry[] newEntries = new Entry[length];
+			System.arraycopy(oldEntries, oldEntries.length - length + 1, newEntries, 0, length - 1);
+			newEntries[length - 1] = entry;
+			this.entries.replace(name, oldEntries, newEntries);
+		}
+	}
+
+	private boolean isCacheable(Class<?> type) {
+		return ClassCache.isVisible(type, loader) || ClassCache.isVisible(type, MethodCache.class.getClassLoader());
+	}
+}
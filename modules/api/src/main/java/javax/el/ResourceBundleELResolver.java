@@ -21,6 +21,10 @@ import java.util.Iterator;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 
+import de.odysseus.el.spi.PropertyAccessor;
+import de.odysseus.el.spi.PropertyAccessorProvider;
+import de.odysseus.el.spi.PropertyAccessors;
+
 /**
  * Defines property resolution behavior on instances of java.util.ResourceBundle. This resolver
  * handles base objects of type java.util.ResourceBundle. It accepts any object as a property and
@@ -29,7 +33,7 @@ import java.util.ResourceBundle;
  * called. ELResolvers are combined together using {@link CompositeELResolver}s, to define rich
  * semantics for evaluating an expression. See the javadocs for {@link ELResolver} for details.
  */
-public class ResourceBundleELResolver extends ELResolver {
+public class ResourceBundleELResolver extends ELResolver implements PropertyAccessorProvider {
 	/**
 	 * If the base object is a ResourceBundle, returns the most general type that this resolver
 	 * accepts for the property argument. Otherwise, returns null. Assuming the base is a
@@ -177,6 +181,49 @@ public class ResourceBundleELResolver extends ELResolver {
 		return result;
 	}
 
+	/**
+	 * If the base object is a resource bundle, answers an accessor reading the object for the given
+	 * key, behaving like {@link #getValue(ELContext, Object, Object)}. Otherwise, answers
+	 * {@link PropertyAccessorProvider#UNRESOLVED}. Answers <code>null</code> if getValue() has been
+	 * overridden by a subclass.
+	 * 
+	 * @param context
+	 *            The context of this evaluation.
+	 * @param base
+	 *            The bundle to analyze.
+	 * @param property
+	 *            The name of the resource, will be coerced to a string.
+	 * @return an accessor, {@link PropertyAccessorProvider#UNRESOLVED} or <code>null</code>
+	 */
+	public PropertyAccessor getPropertyAccessor(ELContext context, Object base, final Object property) {
+		if (!PropertyAccessors.isGetValueDeclaredBy(this, ResourceBundleELResolver.class)) {
+			return null;
+		}
+		if (!isResolvable(base)) {
+			return UNRESOLVED;
+		}
+		return new PropertyAccessor() {
+			public Object getValue(ELContext context, Object base) {
+				if (property == null) {
+					return null;
+				}
+				try {
+					return ((ResourceBundle) base).getObject(property.toString());
+				} catch (MissingResourceException e) {
+					return "???" + property + "???";
+				}
+			}
+		};
+	}
+
+	/**
+	 * Answers the class of this resolver, or <code>null</code> if getValue() has been overridden by
+	 * a subclass.
+	 */
+	public Object getPropertyAccessorKey() {
+		return PropertyAccessors.isGetValueDeclaredBy(this, ResourceBundleELResolver.class) ? getClass() : null;
+	}
+
 	/**
 	 * If the base object is not null and an instanceof java.util.ResourceBundle, return true.
 	 * 
@@ -33,6 +33,9 @@ public class AllTests {
 		suite.addTestSuite(MethodInfoTest.class);
 		suite.addTestSuite(ExpressionFactoryTest.class);
 		suite.addTestSuite(ValueReferenceTest.class);
+		suite.addTestSuite(ClassCacheTest.class);
+		suite.addTestSuite(MethodCacheTest.class);
+		suite.addTestSuite(BeanIntrospectorTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -25,6 +25,9 @@ import java.util.Properties;
 
 import javax.el.test.TestClass;
 
+import de.odysseus.el.spi.PropertyAccessor;
+import de.odysseus.el.spi.PropertyAccessorProvider;
+
 import junit.framework.TestCase;
 
 public class BeanELResolverTest extends TestCase {
@@ -165,6 +168,67 @@ public class BeanELResolverTest extends TestCase {
 		}
 	}
 
+	public void testGetPropertyAccessor() {
+		BeanELResolver resolver = new BeanELResolver();
+
+		// base == null --> UNRESOLVED
+		assertSame(PropertyAccessorProvider.UNRESOLVED, resolver.getPropertyAccessor(context, null, "foo"));
+
+		// base is bean, property == "readWrite" --> reusable accessor
+		PropertyAccessor accessor = resolver.getPropertyAccessor(context, new TestBean(), "readWrite");
+		assertNotNull(accessor);
+		TestBean bean = new TestBean();
+		assertEquals(456, accessor.getValue(context, bean));
+		bean.setReadWrite(1);
+		assertEquals(1, accessor.getValue(context, bean));
+
+		// base is bean, property == "writeOnly" or doesn't exist --> null
+		assertNull(resolver.getPropertyAccessor(context, new TestBean(), "writeOnly"));
+		assertNull(resolver.getPropertyAccessor(context, new TestBean(), "doesntExist"));
+
+		// bean resolvers share their accessors
+		assertEquals(resolver.getPropertyAccessorKey(), new BeanELResolver(true).getPropertyAccessorKey());
+
+		// getValue() overridden --> null
+		resolver = new BeanELResolver() {
+			@Override
+			public Object getValue(ELContext context, Object base, Object property) {
+				return super.getValue(context, base, property);
+			}
+		};
+		assertNull(resolver.getPropertyAccessor(context, new TestBean(), "readWrite"));
+		assertNull(resolver.getPropertyAccessorKey());
+	}
+
+	public void testGetValueLightweight() {
+		BeanELResolver resolver = new BeanELResolver(false, true);
+		TestBean bean = new TestBean();
+		context.setPropertyResolved(false);
+		assertEquals(456, resolver.getValue(context, bean, "readWrite"));
+		assertTrue(context.isPropertyResolved());
+		context.setPropertyResolved(false);
+		assertSame(int.class, resolver.getType(context, bean, "readWrite"));
+		context.setPropertyResolved(false);
+		resolver.setValue(context, bean, "readWrite", 1);
+		assertEquals(1, bean.getReadWrite());
+		try {
+			resolver.getValue(context, bean, "writeOnly");
+			fail();
+		} catch (PropertyNotFoundException e) {
+			// fine
+		}
+		context.setPropertyResolved(false);
+		assertTrue(resolver.isReadOnly(context, bean, "readOnly"));
+	}
+
+	public void testIntrospect() {
+		BeanELResolver resolver = new BeanELResolver();
+		resolver.introspect(TestBean.class, String.class);
+		context.setPropertyResolved(false);
+		assertEquals(456, resolver.getValue(context, new TestBean(), "readWrite"));
+		assertTrue(context.isPropertyResolved());
+	}
+
 	public void testGetValue2() {
 		Properties properties = new Properties();
 		properties.setProperty(ExpressionFactory.class.getName(), TestFactory.class.getName());
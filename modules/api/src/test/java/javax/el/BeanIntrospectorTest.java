@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package javax.el;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.util.Map;
+
+import javax.el.BeanELResolver.BeanProperty;
+
+import junit.framework.TestCase;
+
+public class BeanIntrospectorTest extends TestCase {
+	public static class Box<T> {
+		T value;
+		public T getValue() {
+			return value;
+		}
+		public void setValue(T value) {
+			this.value = value;
+		}
+	}
+
+	public static class StringBox extends Box<String> {
+		public boolean isEmpty() {
+			return value == null;
+		}
+		public boolean getEmpty() {
+			return false;
+		}
+		public String getURL() {
+			return null;
+		}
+		public void setCount(int count) {
+		}
+		public static String getStatic() {
+			return null;
+		}
+		public String get() {
+			return null;
+		}
+	}
+
+	public void testGetBeanProperties() throws Exception {
+		Map<String, BeanProperty> properties = BeanIntrospector.getBeanProperties(BeanELResolverTest.TestBean.class);
+		PropertyDescriptor[] descriptors = Introspector.getBeanInfo(BeanELResolverTest.TestBean.class).getPropertyDescriptors();
+		assertEquals(descriptors.length, properties.size());
+		for (PropertyDescriptor descriptor : descriptors) {
+			BeanProperty property = properties.get(descriptor.getName());
+			assertNotNull(property);
+			assertSame(descriptor.getPropertyType(), property.getPropertyType());
+			assertEquals(descriptor.getReadMethod(), property.getReadMethod());
+			assertEquals(descriptor.getWriteMethod(), property.getWriteMethod());
+		}
+	}
+
+	public void testGetBeanPropertiesGeneric() throws Exception {
+		Map<String, BeanProperty> properties = BeanIntrospector.getBeanProperties(StringBox.class);
+		assertEquals(5, properties.size());
+
+		assertSame(String.class, properties.get("value").getPropertyType());
+		assertEquals("getValue", properties.get("value").getReadMethod().getName());
+		assertEquals("setValue", properties.get("value").getWriteMethod().getName());
+
+		assertSame(boolean.class, properties.get("empty").getPropertyType());
+		assertEquals("isEmpty", properties.get("empty").getReadMethod().getName());
+		assertTrue(properties.get("empty").isReadOnly());
+
+		assertNotNull(properties.get("URL"));
+		assertSame(Class.class, properties.get("class").getPropertyType());
+
+		assertSame(int.class, properties.get("count").getPropertyType());
+		assertNull(properties.get("count").getReadMethod());
+		assertNotNull(properties.get("count").getWriteMethod());
+	}
+
+	public void testDecapitalize() {
+		assertEquals("foo", BeanIntrospector.decapitalize("Foo"));
+		assertEquals("fooBar", BeanIntrospector.decapitalize("FooBar"));
+		assertEquals("URL", BeanIntrospector.decapitalize("URL"));
+		assertEquals("x", BeanIntrospector.decapitalize("X"));
+	}
+}
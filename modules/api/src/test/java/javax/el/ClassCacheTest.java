@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package javax.el;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ClassCacheTest extends TestCase {
+	static class CountingCache extends ClassCache<String> {
+		final AtomicInteger count = new AtomicInteger();
+		CountingCache() {
+			super(ClassCacheTest.class.getClassLoader());
+		}
+		@Override
+		protected String computeValue(Class<?> type) {
+			count.incrementAndGet();
+			return type.getName();
+		}
+	}
+
+	public void testGet() {
+		CountingCache cache = new CountingCache();
+		assertNull(cache.lookup(String.class));
+		assertEquals("java.lang.String", cache.get(String.class));
+		assertSame(cache.get(String.class), cache.lookup(String.class));
+		assertEquals(1, cache.count.get());
+	}
+
+	public void testGetConcurrent() throws InterruptedException {
+		final CountDownLatch computing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountingCache cache = new CountingCache() {
+			@Override
+			protected String computeValue(Class<?> type) {
+				computing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.computeValue(type);
+			}
+		};
+		Thread[] threads = new Thread[4];
+		final String[] results = new String[threads.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					results[index] = cache.get(Integer.class);
+				}
+			};
+			threads[i].start();
+		}
+		computing.await();
+		Thread.sleep(50);
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, cache.count.get());
+		for (String result : results) {
+			assertEquals("java.lang.Integer", result);
+		}
+	}
+
+	public void testGetFailure() {
+		final boolean[] fail = { true };
+		CountingCache cache = new CountingCache() {
+			@Override
+			protected String computeValue(Class<?> type) {
+				if (fail[0]) {
+					throw new ELException("failed");
+				}
+				return super.computeValue(type);
+			}
+		};
+		try {
+			cache.get(String.class);
+			fail();
+		} catch (ELException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		fail[0] = false;
+		assertEquals("java.lang.String", cache.get(String.class));
+	}
+
+	public void testIsStrong() throws Exception {
+		CountingCache cache = new CountingCache();
+		assertTrue(cache.isStrong(String.class));
+		assertTrue(cache.isStrong(ClassCacheTest.class));
+
+		URL[] urls = {
+			ELContext.class.getProtectionDomain().getCodeSource().getLocation(),
+			TestContext.class.getProtectionDomain().getCodeSource().getLocation()
+		};
+		ClassLoader loader = new URLClassLoader(urls, null);
+		Class<?> type = loader.loadClass(TestContext.class.getName());
+		assertNotSame(TestContext.class, type);
+		assertFalse(cache.isStrong(type));
+		assertEquals(TestContext.class.getName(), cache.get(type));
+		assertNotNull(cache.lookup(type));
+		cache.get(ClassCacheTest.class);
+
+		cache.removeAll(loader);
+		assertNull(cache.lookup(type));
+		assertNotNull(cache.lookup(ClassCacheTest.class));
+	}
+
+	public void testWeakKeys() throws Exception {
+		CountingCache cache = new CountingCache();
+		URL[] urls = {
+			ELContext.class.getProtectionDomain().getCodeSource().getLocation(),
+			TestContext.class.getProtectionDomain().getCodeSource().getLocation()
+		};
+		Class<?> type = new URLClassLoader(urls, null).loadClass(TestContext.class.getName());
+		assertEquals(TestContext.class.getName(), cache.get(type));
+		WeakReference<Class<?>> reference = new WeakReference<Class<?>>(type);
+		type = null;
+		for (int i = 0; i < 50 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+		assertEquals("java.lang.String", cache.get(String.class));
+	}
+}
@@ -24,6 +24,8 @@ import java.util.Map;
 import junit.framework.TestCase;
 import javax.el.TestContext;
 
+import de.odysseus.el.spi.PropertyAccessorProvider;
+
 public class CompositeELResolverTest extends TestCase {
 	ELContext context = new TestContext();
 
@@ -116,6 +118,79 @@ public class CompositeELResolverTest extends TestCase {
 		assertEquals(1, resolver.getValue(context, sampleMap(), 0));
 	}
 
+	public void testGetPropertyAccessor() {
+		CompositeELResolver resolver = new CompositeELResolver();
+		assertSame(PropertyAccessorProvider.UNRESOLVED, resolver.getPropertyAccessor(context, "foo", "class"));
+
+		resolver.add(new MapELResolver());
+		assertSame(PropertyAccessorProvider.UNRESOLVED, resolver.getPropertyAccessor(context, "foo", "class"));
+		assertEquals(1, resolver.getPropertyAccessor(context, sampleMap(), 0).getValue(context, sampleMap()));
+
+		resolver.add(new BeanELResolver());
+		assertEquals(String.class, resolver.getPropertyAccessor(context, "foo", "class").getValue(context, "bar"));
+		assertEquals(1, resolver.getPropertyAccessor(context, sampleMap(), 0).getValue(context, sampleMap()));
+
+		// component resolver not providing accessors --> null
+		resolver = new CompositeELResolver();
+		resolver.add(new ELResolver() {
+			@Override
+			public Class<?> getCommonPropertyType(ELContext context, Object base) {
+				return null;
+			}
+			@Override
+			public Iterator<FeatureDescriptor> getFeatureDescriptors(ELContext context, Object base) {
+				return null;
+			}
+			@Override
+			public Class<?> getType(ELContext context, Object base, Object property) {
+				return null;
+			}
+			@Override
+			public Object getValue(ELContext context, Object base, Object property) {
+				return null;
+			}
+			@Override
+			public boolean isReadOnly(ELContext context, Object base, Object property) {
+				return false;
+			}
+			@Override
+			public void setValue(ELContext context, Object base, Object property, Object value) {
+			}
+		});
+		resolver.add(new BeanELResolver());
+		assertNull(resolver.getPropertyAccessor(context, "foo", "class"));
+	}
+
+	public void testGetPropertyAccessorKey() {
+		CompositeELResolver resolver = new CompositeELResolver();
+		resolver.add(new MapELResolver());
+		CompositeELResolver other = new CompositeELResolver();
+		other.add(new MapELResolver(true));
+		assertNotNull(resolver.getPropertyAccessorKey());
+		assertEquals(resolver.getPropertyAccessorKey(), other.getPropertyAccessorKey());
+
+		resolver.add(new BeanELResolver());
+		assertFalse(resolver.getPropertyAccessorKey().equals(other.getPropertyAccessorKey()));
+
+		// keys of nested composites are updated
+		CompositeELResolver nested = new CompositeELResolver();
+		nested.add(new MapELResolver());
+		other = new CompositeELResolver();
+		other.add(nested);
+		Object key = other.getPropertyAccessorKey();
+		nested.add(new BeanELResolver());
+		assertFalse(key.equals(other.getPropertyAccessorKey()));
+
+		// component resolvers not providing a key --> null
+		resolver.add(new BeanELResolver() {
+			@Override
+			public Object getValue(ELContext context, Object base, Object property) {
+				return super.getValue(context, base, property);
+			}
+		});
+		assertNull(resolver.getPropertyAccessorKey());
+	}
+
 	public void testIsReadOnly() {
 		CompositeELResolver resolver = new CompositeELResolver();
 		assertFalse(resolver.isReadOnly(context, null, "foo"));
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package javax.el;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.TestCase;
+
+public class MethodCacheTest extends TestCase {
+	ExpressionFactory factory = new TestFactory();
+
+	public void testGet() throws Exception {
+		MethodCache cache = new MethodCache(String.class);
+		Method method = String.class.getMethod("substring", int.class);
+		Object[] params = { 1 };
+		assertNull(cache.get("substring", params, factory));
+		cache.put("substring", params, factory, method);
+		assertSame(method, cache.get("substring", new Object[]{ 2 }, factory));
+		assertNull(cache.get("substring", new Object[]{ 2l }, factory));
+		assertNull(cache.get("substring", new Object[]{ 1, 2 }, factory));
+		assertNull(cache.get("substring", new Object[]{ null }, factory));
+		assertNull(cache.get("toString", params, factory));
+
+		method = String.class.getMethod("concat", String.class);
+		cache.put("concat", new Object[]{ null }, factory, method);
+		assertSame(method, cache.get("concat", new Object[]{ null }, factory));
+		assertNull(cache.get("concat", new Object[]{ "foo" }, factory));
+	}
+
+	public void testBounded() throws Exception {
+		MethodCache cache = new MethodCache(String.class);
+		Method method = String.class.getMethod("valueOf", Object.class);
+		Object[][] params = new Object[MethodCache.MAX_ENTRIES + 1][];
+		for (int i = 0; i < params.length; i++) {
+			params[i] = new Object[i];
+			cache.put("valueOf", params[i], factory, method);
+		}
+		assertNull(cache.get("valueOf", params[0], factory));
+		for (int i = 1; i < params.length; i++) {
+			assertSame(method, cache.get("valueOf", params[i], factory));
+		}
+	}
+
+	public void testForeignClasses() throws Exception {
+		URL[] urls = {
+			ELContext.class.getProtectionDomain().getCodeSource().getLocation(),
+			TestContext.class.getProtectionDomain().getCodeSource().getLocation()
+		};
+		Class<?> foreign = new URLClassLoader(urls, null).loadClass(TestContext.class.getName());
+		Object[] params = { foreign.newInstance() };
+		Method method = String.class.getMethod("valueOf", Object.class);
+
+		MethodCache cache = new MethodCache(String.class);
+		cache.put("valueOf", params, factory, method);
+		assertNull(cache.get("valueOf", params, factory));
+
+		cache = new MethodCache(foreign);
+		cache.put("valueOf", params, factory, method);
+		assertSame(method, cache.get("valueOf", params, factory));
+	}
+}
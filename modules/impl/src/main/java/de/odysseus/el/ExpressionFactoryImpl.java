@@ -19,19 +19,32 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Constructor;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.el.ELContext;
 import javax.el.ELException;
 import javax.el.ExpressionFactory;
+import javax.management.ObjectName;
 
 import de.odysseus.el.misc.TypeConverter;
+import de.odysseus.el.tree.FailureCache;
+import de.odysseus.el.tree.PartitionedTreeCache;
+import de.odysseus.el.tree.PrewarmResult;
 import de.odysseus.el.tree.TreeBuilder;
+import de.odysseus.el.tree.TreeCache;
+import de.odysseus.el.tree.TreeCompiler;
 import de.odysseus.el.tree.TreeStore;
 import de.odysseus.el.tree.impl.Builder;
 import de.odysseus.el.tree.impl.Cache;
+import de.odysseus.el.tree.impl.CompilingBuilder;
+import de.odysseus.el.tree.impl.InstrumentedCache;
+import de.odysseus.el.tree.impl.NodeInterner;
+import de.odysseus.el.tree.impl.WeightedCache;
 import de.odysseus.el.tree.impl.Builder.Feature;
 
 /**
@@ -63,6 +76,25 @@ import de.odysseus.el.tree.impl.Builder.Feature;
  * <li>
  * <code>javax.el.cacheSize</code> - cache size (int, default is 1000)</li>
  * <li>
+ * <code>javax.el.cacheWeight</code> - if set, bound the cache by the estimated number of bytes
+ * retained by its trees rather than by entry count, using a
+ * <code>de.odysseus.el.tree.impl.WeightedCache</code> (long, default is none)</li>
+ * <li>
+ * <code>javax.el.failureCacheSize</code> - number of expressions that failed to build, whose
+ * exceptions are remembered and rethrown instead of parsing again (int, default is 0)</li>
+ * <li>
+ * <code>javax.el.failureCacheTimeToLive</code> - time in milliseconds after which a remembered
+ * failure is forgotten (long, default is 60000)</li>
+ * <li>
+ * <code>javax.el.nearCacheSize</code> - number of trees remembered per thread in front of the
+ * cache (int, default is 0)</li>
+ * <li>
+ * <code>javax.el.cacheMBean</code> - collect cache statistics and register them as MBean (see
+ * <code>de.odysseus.el.tree.impl.InstrumentedCache</code>) with the platform MBean server
+ * (boolean, default is <code>false</code>). The MBean is unregistered by {@link #close()}; a factory
+ * obtained by <code>ExpressionFactory.newInstance()</code> is never closed, so its MBean stays
+ * registered.</li>
+ * <li>
  * <code>javax.el.methodInvocations</code> - allow method invocations as in
  * <code>${foo.bar(baz)}</code> (boolean, default is <code>false</code>).</li>
  * <li>
@@ -71,8 +103,32 @@ import de.odysseus.el.tree.impl.Builder.Feature;
  * <li>
  * <code>javax.el.varArgs</code> - support function/method calls using varargs (boolean, default is
  * <code>false</code>).</li>
+ * <li>
+ * <code>javax.el.interning</code> - share equal nodes among trees and serve the same tree for
+ * expressions differing only in whitespace between tokens (boolean, default is <code>false</code>).
+ * </li>
+ * <li>
+ * <code>javax.el.interningCapacity</code> - maximum number of nodes and trees held by the interner
+ * (int, default is 10000).</li>
+ * <li>
+ * <code>javax.el.bindCache</code> - let trees reuse their bindings while the function and variable
+ * mappers don't change (boolean, default is <code>false</code>).</li>
+ * <li>
+ * <code>de.odysseus.el.tree.TreeCompiler</code> - name of a class implementing
+ * <code>de.odysseus.el.tree.TreeCompiler</code>, used to compile parsed trees (e.g.
+ * <code>de.odysseus.el.tree.impl.compiler.BytecodeCompiler</code>, default is none).</li>
+ * <li>
+ * <code>de.odysseus.el.tree.TreeCache</code> - name of a class implementing
+ * <code>de.odysseus.el.tree.TreeCache</code> with a constructor taking the cache size (e.g.
+ * <code>de.odysseus.el.tree.impl.TinyLfuCache</code>, default is
+ * <code>de.odysseus.el.tree.impl.Cache</code>).</li>
  * </ul>
  * 
+ * If the tree cache is a <code>de.odysseus.el.tree.PartitionedTreeCache</code> (e.g.
+ * <code>de.odysseus.el.tree.impl.PartitionedCache</code>), expressions are created using the
+ * cache partition given by the <code>ELContext</code>'s context object for key
+ * <code>PartitionedTreeCache.class</code>.
+ * 
  * @author Christoph Beck
  */
 public class ExpressionFactoryImpl extends javax.el.ExpressionFactory {
@@ -128,15 +184,65 @@ public class ExpressionFactoryImpl extends javax.el.ExpressionFactory {
 	 * <code>javax.el.ignoreReturnType</code>
 	 */
 	public static final String PROP_IGNORE_RETURN_TYPE = "javax.el.ignoreReturnType";	
+
+	/**
+	 * <code>javax.el.interning</code>
+	 */
+	public static final String PROP_INTERNING = "javax.el.interning";
+
+	/**
+	 * <code>javax.el.interningCapacity</code>
+	 */
+	public static final String PROP_INTERNING_CAPACITY = "javax.el.interningCapacity";
+
+	/**
+	 * <code>javax.el.bindCache</code>
+	 */
+	public static final String PROP_BIND_CACHE = "javax.el.bindCache";
 	
 	/**
 	 * <code>javax.el.cacheSize</code>
 	 */
 	public static final String PROP_CACHE_SIZE = "javax.el.cacheSize";
 
+	/**
+	 * <code>javax.el.cacheWeight</code>
+	 */
+	public static final String PROP_CACHE_WEIGHT = "javax.el.cacheWeight";
+
+	/**
+	 * <code>javax.el.failureCacheSize</code>
+	 */
+	public static final String PROP_FAILURE_CACHE_SIZE = "javax.el.failureCacheSize";
+
+	/**
+	 * <code>javax.el.failureCacheTimeToLive</code>
+	 */
+	public static final String PROP_FAILURE_CACHE_TTL = "javax.el.failureCacheTimeToLive";
+
+	/**
+	 * <code>javax.el.nearCacheSize</code>
+	 */
+	public static final String PROP_NEAR_CACHE_SIZE = "javax.el.nearCacheSize";
+
+	/**
+	 * <code>javax.el.cacheMBean</code>
+	 * <p/>
+	 * The MBean is registered when the factory is created and keeps the factory's cache reachable
+	 * until {@link #close()} is called. Factories obtained by
+	 * <code>ExpressionFactory.newInstance()</code> are usually never closed, so enable this
+	 * property for such factories only if they live as long as the application (or its class
+	 * loader), or unregister the MBean yourself.
+	 */
+	public static final String PROP_CACHE_MBEAN = "javax.el.cacheMBean";
+
+	private static final AtomicInteger MBEAN_ID = new AtomicInteger();
+
 	private final TreeStore store;
 	private final TypeConverter converter;
 
+	private volatile ObjectName cacheMBeanName;
+
 	/**
 	 * Create a new expression factory using the default builder and cache implementations. The
 	 * builder and cache are configured from <code>el.properties</code> (see above). The maximum
@@ -318,7 +424,17 @@ public class ExpressionFactoryImpl extends javax.el.ExpressionFactory {
 	 * Create the factory's tree store. This implementation creates a new tree store using the
 	 * default builder and cache implementations. The builder and cache are configured using the
 	 * specified properties. The maximum cache size will be as specified unless overridden by
-	 * property <code>javax.el.cacheSize</code>.
+	 * property <code>javax.el.cacheSize</code>. If property <code>javax.el.cacheWeight</code> is set,
+	 * the cache is bounded by estimated tree size instead (see {@link WeightedCache}). If property
+	 * <code>javax.el.failureCacheSize</code> is set, the store remembers failed builds (see
+	 * {@link FailureCache}). If property <code>javax.el.nearCacheSize</code> is set, the store
+	 * remembers recently served trees per thread. If property <code>javax.el.cacheMBean</code> is
+	 * <code>true</code>, the cache is wrapped by an {@link InstrumentedCache}, which is registered
+	 * as MBean (see {@link #registerTreeCacheMBean(InstrumentedCache)}). If property
+	 * <code>javax.el.interning</code> is <code>true</code>, the builder shares equal nodes among
+	 * its trees (see {@link Builder.Feature#INTERNING}), holding at most
+	 * <code>javax.el.interningCapacity</code> nodes. If property <code>javax.el.bindCache</code>
+	 * is <code>true</code>, trees reuse their bindings (see {@link Builder.Feature#BIND_CACHE}).
 	 */
 	protected TreeStore createTreeStore(int defaultCacheSize, Profile profile, Properties properties) {
 		// create builder
@@ -339,7 +455,26 @@ public class ExpressionFactoryImpl extends javax.el.ExpressionFactory {
 			if (getFeatureProperty(profile, properties, Feature.IGNORE_RETURN_TYPE, PROP_IGNORE_RETURN_TYPE)) {
 				features.add(Builder.Feature.IGNORE_RETURN_TYPE);
 			}
+			if (Boolean.valueOf(properties.getProperty(PROP_INTERNING))) {
+				features.add(Builder.Feature.INTERNING);
+			}
+			if (Boolean.valueOf(properties.getProperty(PROP_BIND_CACHE))) {
+				features.add(Builder.Feature.BIND_CACHE);
+			}
 			builder = createTreeBuilder(properties, features.toArray(new Builder.Feature[0]));
+			if (features.contains(Builder.Feature.INTERNING) && properties.containsKey(PROP_INTERNING_CAPACITY) && builder instanceof Builder) {
+				try {
+					((Builder) builder).setInterner(new NodeInterner(Integer.parseInt(properties.getProperty(PROP_INTERNING_CAPACITY))));
+				} catch (NumberFormatException e) {
+					throw new ELException("Cannot parse EL property " + PROP_INTERNING_CAPACITY, e);
+				}
+			}
+		}
+
+		// create compiler
+		TreeCompiler compiler = createTreeCompiler(properties);
+		if (compiler != null) {
+			builder = new CompilingBuilder(builder, compiler);
 		}
 
 		// create cache
@@ -351,9 +486,120 @@ public class ExpressionFactoryImpl extends javax.el.ExpressionFactory {
 				throw new ELException("Cannot parse EL property " + PROP_CACHE_SIZE, e);
 			}
 		}
-		Cache cache = cacheSize > 0 ? new Cache(cacheSize) : null;
+		TreeCache cache = null;
+		if (properties != null && properties.containsKey(PROP_CACHE_WEIGHT)) {
+			long cacheWeight;
+			try {
+				cacheWeight = Long.parseLong(properties.getProperty(PROP_CACHE_WEIGHT));
+			} catch (NumberFormatException e) {
+				throw new ELException("Cannot parse EL property " + PROP_CACHE_WEIGHT, e);
+			}
+			if (cacheWeight > 0) {
+				cache = new WeightedCache(cacheWeight);
+				cacheSize = (int) Math.min(Integer.MAX_VALUE, cacheWeight / WeightedCache.AVERAGE_WEIGHT);
+			}
+		} else if (cacheSize > 0) {
+			cache = createTreeCache(cacheSize, properties);
+		}
+		if (cache != null && properties != null && Boolean.valueOf(properties.getProperty(PROP_CACHE_MBEAN))) {
+			InstrumentedCache.Factory factory = null;
+			if (cache instanceof WeightedCache) {
+				factory = new InstrumentedCache.Factory() {
+					public TreeCache newCache(int capacity) {
+						return new WeightedCache((long) capacity * WeightedCache.AVERAGE_WEIGHT);
+					}
+				};
+			}
+			cache = registerTreeCacheMBean(new InstrumentedCache(cache, cacheSize, factory));
+		}
+
+		// create failure cache
+		FailureCache failures = null;
+		if (properties != null && properties.containsKey(PROP_FAILURE_CACHE_SIZE)) {
+			int failureCacheSize;
+			long timeToLive = 60000;
+			try {
+				failureCacheSize = Integer.parseInt(properties.getProperty(PROP_FAILURE_CACHE_SIZE));
+			} catch (NumberFormatException e) {
+				throw new ELException("Cannot parse EL property " + PROP_FAILURE_CACHE_SIZE, e);
+			}
+			if (properties.containsKey(PROP_FAILURE_CACHE_TTL)) {
+				try {
+					timeToLive = Long.parseLong(properties.getProperty(PROP_FAILURE_CACHE_TTL));
+				} catch (NumberFormatException e) {
+					throw new ELException("Cannot parse EL property " + PROP_FAILURE_CACHE_TTL, e);
+				}
+			}
+			if (failureCacheSize > 0) {
+				failures = new FailureCache(failureCacheSize, timeToLive);
+			}
+		}
+
+		// near cache size
+		int nearCacheSize = 0;
+		if (properties != null && properties.containsKey(PROP_NEAR_CACHE_SIZE)) {
+			try {
+				nearCacheSize = Integer.parseInt(properties.getProperty(PROP_NEAR_CACHE_SIZE));
+			} catch (NumberFormatException e) {
+				throw new ELException("Cannot parse EL property " + PROP_NEAR_CACHE_SIZE, e);
+			}
+		}
 
-		return new TreeStore(builder, cache);
+		return new TreeStore(builder, cache, failures, nearCacheSize);
+	}
+
+	/**
+	 * Register the factory's instrumented tree cache as MBean with the platform MBean server. The
+	 * object name is <code>de.odysseus.el:type=TreeCache,id=<em>n</em></code>, where <em>n</em>
+	 * is a counter. The MBean is unregistered by {@link #close()}.
+	 * @return the given cache
+	 */
+	protected InstrumentedCache registerTreeCacheMBean(InstrumentedCache cache) {
+		try {
+			ObjectName name = new ObjectName("de.odysseus.el:type=TreeCache,id=" + MBEAN_ID.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(cache, name);
+			cacheMBeanName = name;
+		} catch (Exception e) {
+			throw new ELException("Cannot register TreeCache MBean", e);
+		}
+		return cache;
+	}
+
+	/**
+	 * Release resources held by this factory outside of its own object graph. This implementation
+	 * unregisters the tree cache MBean registered by {@link #registerTreeCacheMBean(InstrumentedCache)},
+	 * which would otherwise keep the factory's cache (and its class loader) reachable. Expressions
+	 * created by this factory remain usable.
+	 */
+	public void close() {
+		ObjectName name = cacheMBeanName;
+		if (name != null) {
+			cacheMBeanName = null;
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch (Exception e) {
+				throw new ELException("Cannot unregister TreeCache MBean", e);
+			}
+		}
+	}
+
+	/**
+	 * Create the factory's tree cache. This implementation takes the
+	 * <code>de.odysseus.el.tree.TreeCache</code> property as the name of a class implementing the
+	 * <code>de.odysseus.el.tree.TreeCache</code> interface, which must provide a constructor taking
+	 * the cache size as an <code>int</code> (e.g. <code>de.odysseus.el.tree.impl.TinyLfuCache</code>
+	 * ). If the property is not set, a <code>de.odysseus.el.tree.impl.Cache</code> is used.
+	 */
+	protected TreeCache createTreeCache(int cacheSize, Properties properties) {
+		Class<?> clazz = load(TreeCache.class, properties);
+		if (clazz == null) {
+			return new Cache(cacheSize);
+		}
+		try {
+			return TreeCache.class.cast(clazz.getConstructor(int.class).newInstance(cacheSize));
+		} catch (Exception e) {
+			throw new ELException("TreeCache " + clazz + " could not be instantiated", e);
+		}
 	}
 
 	/**
@@ -374,6 +620,25 @@ public class ExpressionFactoryImpl extends javax.el.ExpressionFactory {
 		}
 	}
 
+	/**
+	 * Create the factory's tree compiler. This implementation takes the
+	 * <code>de.odysseus.el.tree.TreeCompiler</code> property as the name of a class implementing
+	 * the <code>de.odysseus.el.tree.TreeCompiler</code> interface (e.g.
+	 * <code>de.odysseus.el.tree.impl.compiler.BytecodeCompiler</code>). If the property is not set,
+	 * <code>null</code> is returned and trees are interpreted.
+	 */
+	protected TreeCompiler createTreeCompiler(Properties properties) {
+		Class<?> clazz = load(TreeCompiler.class, properties);
+		if (clazz == null) {
+			return null;
+		}
+		try {
+			return TreeCompiler.class.cast(clazz.newInstance());
+		} catch (Exception e) {
+			throw new ELException("TreeCompiler " + clazz + " could not be instantiated", e);
+		}
+	}
+
 	/**
 	 * Create the factory's builder. This implementation takes the
 	 * <code>de.odysseus.el.tree.TreeBuilder</code> property as a name of a class implementing the
@@ -442,14 +707,27 @@ public class ExpressionFactoryImpl extends javax.el.ExpressionFactory {
 
 	@Override
 	public final TreeValueExpression createValueExpression(ELContext context, String expression, Class<?> expectedType) {
-		return new TreeValueExpression(store, context.getFunctionMapper(), context.getVariableMapper(), converter,
-				expression, expectedType);
+		return new TreeValueExpression(store, context.getContext(PartitionedTreeCache.class),
+				context.getFunctionMapper(), context.getVariableMapper(), converter, expression, expectedType);
 	}
 
 	@Override
 	public final TreeMethodExpression createMethodExpression(ELContext context, String expression,
 			Class<?> expectedReturnType, Class<?>[] expectedParamTypes) {
-		return new TreeMethodExpression(store, context.getFunctionMapper(), context.getVariableMapper(), converter,
-				expression, expectedReturnType, expectedParamTypes);
+		return new TreeMethodExpression(store, context.getContext(PartitionedTreeCache.class),
+				context.getFunctionMapper(), context.getVariableMapper(), converter, expression, expectedReturnType,
+				expectedParamTypes);
+	}
+
+	/**
+	 * Parse the given expressions in parallel and add their trees to the factory's tree cache,
+	 * e.g. at startup, to avoid parsing them on first use.
+	 * @param expressions expression strings
+	 * @return number of trees built, build failures and elapsed time
+	 * @throws InterruptedException if interrupted while waiting
+	 * @see TreeStore#prewarm(Collection)
+	 */
+	public PrewarmResult prewarm(Collection<String> expressions) throws InterruptedException {
+		return store.prewarm(expressions);
 	}
 }
@@ -54,8 +54,9 @@ public final class TreeMethodExpression extends javax.el.MethodExpression {
 	private final boolean deferred;
 
 	private transient ExpressionNode node;
+	private transient long hash;
 
-	private String structure;
+	private transient String structure;
 
 	/**
 	 * Create a new method expression.
@@ -71,9 +72,27 @@ public final class TreeMethodExpression extends javax.el.MethodExpression {
 	 * @param paramTypes the expected parameter types (must not be <code>null</code> for lvalues)
 	 */
 	public TreeMethodExpression(TreeStore store, FunctionMapper functions, VariableMapper variables, TypeConverter converter, String expr, Class<?> returnType, Class<?>[] paramTypes) {
+		this(store, null, functions, variables, converter, expr, returnType, paramTypes);
+	}
+
+	/**
+	 * Create a new method expression.
+	 * The expression must be an lvalue expression or literal text.
+	 * The expected return type may be <code>null</code>, meaning "don't care".
+	 * If it is an lvalue expression, the parameter types must not be <code>null</code>.
+	 * If it is literal text, the expected return type must not be <code>void</code>.
+	 * @param store used to get the parse tree from.
+	 * @param partition the tree cache partition (may be <code>null</code>, see {@link TreeStore#get(Object, String)})
+	 * @param functions the function mapper used to bind functions
+	 * @param variables the variable mapper used to bind variables
+	 * @param expr the expression string
+	 * @param returnType the expected return type (may be <code>null</code>)
+	 * @param paramTypes the expected parameter types (must not be <code>null</code> for lvalues)
+	 */
+	public TreeMethodExpression(TreeStore store, Object partition, FunctionMapper functions, VariableMapper variables, TypeConverter converter, String expr, Class<?> returnType, Class<?>[] paramTypes) {
 		super();
 
-		Tree tree = store.get(expr);
+		Tree tree = store.get(partition, expr);
 
 		this.builder = store.getBuilder();
 		this.bindings = tree.bind(functions, variables, converter);
@@ -81,6 +100,7 @@ public final class TreeMethodExpression extends javax.el.MethodExpression {
 		this.type = returnType;
 		this.types = paramTypes;
 		this.node = tree.getRoot();
+		this.hash = tree.getStructuralHash(bindings);
 		this.deferred = tree.isDeferred();
 
 		if (node.isLiteralText()) {
@@ -97,6 +117,9 @@ public final class TreeMethodExpression extends javax.el.MethodExpression {
 		}
 	}
 
+	/**
+	 * Fallback for {@link #equals(Object)} if the structural hashes match, but the nodes differ.
+	 */
 	private String getStructuralId() {
 		if (structure == null) {
 			structure = node.getStructuralId(bindings);
@@ -159,6 +182,8 @@ public final class TreeMethodExpression extends javax.el.MethodExpression {
 	 * Expressions are compared using the concept of a <em>structural id</em>:
    * variable and function names are anonymized such that two expressions with
    * same tree structure will also have the same structural id and vice versa.
+	 * The structural id itself is only computed if the trees' structural hashes (see
+	 * {@link Tree#getStructuralHash(Bindings)}) match, but the expressions use different tree nodes.
 	 * Two method expressions are equal if
 	 * <ol>
 	 * <li>their builders are equal</li>
@@ -181,14 +206,17 @@ public final class TreeMethodExpression extends javax.el.MethodExpression {
 			if (!Arrays.equals(types, other.types)) {
 				return false;
 			}			
-			return getStructuralId().equals(other.getStructuralId()) && bindings.equals(other.bindings);
+			if (hash != other.hash || !bindings.equals(other.bindings)) {
+				return false;
+			}
+			return node == other.node || getStructuralId().equals(other.getStructuralId());
 		}
 		return false;
 	}
 
 	@Override
 	public int hashCode() {
-		return getStructuralId().hashCode();
+		return (int)(hash ^ (hash >>> 32));
 	}
 
 	@Override
@@ -207,7 +235,9 @@ public final class TreeMethodExpression extends javax.el.MethodExpression {
 	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
 		in.defaultReadObject();
 		try {
-			node = builder.build(expr).getRoot();
+			Tree tree = builder.build(expr);
+			node = tree.getRoot();
+			hash = tree.getStructuralHash(bindings);
 		} catch (ELException e) {
 			throw new IOException(e.getMessage());
 		}
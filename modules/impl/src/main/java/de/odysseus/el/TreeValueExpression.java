@@ -53,8 +53,9 @@ public final class TreeValueExpression extends javax.el.ValueExpression {
 	private final boolean deferred;
 
 	private transient ExpressionNode node;
+	private transient long hash;
 
-	private String structure;
+	private transient String structure;
 
 	/**
 	 * Create a new value expression.
@@ -65,15 +66,29 @@ public final class TreeValueExpression extends javax.el.ValueExpression {
 	 * @param type the expected type (may be <code>null</code>)
 	 */
 	public TreeValueExpression(TreeStore store, FunctionMapper functions, VariableMapper variables, TypeConverter converter, String expr, Class<?> type) {
+		this(store, null, functions, variables, converter, expr, type);
+	}
+
+	/**
+	 * Create a new value expression.
+	 * @param store used to get the parse tree from.
+	 * @param partition the tree cache partition (may be <code>null</code>, see {@link TreeStore#get(Object, String)})
+	 * @param functions the function mapper used to bind functions
+	 * @param variables the variable mapper used to bind variables
+	 * @param expr the expression string
+	 * @param type the expected type (may be <code>null</code>)
+	 */
+	public TreeValueExpression(TreeStore store, Object partition, FunctionMapper functions, VariableMapper variables, TypeConverter converter, String expr, Class<?> type) {
 		super();
 
-		Tree tree = store.get(expr);
+		Tree tree = store.get(partition, expr);
 
 		this.builder = store.getBuilder();
 		this.bindings = tree.bind(functions, variables, converter);
 		this.expr = expr;
 		this.type = type;
 		this.node = tree.getRoot();
+		this.hash = tree.getStructuralHash(bindings);
 		this.deferred = tree.isDeferred();
 		
 		if (type == null) {
@@ -81,6 +96,9 @@ public final class TreeValueExpression extends javax.el.ValueExpression {
 		}
 	}
 
+	/**
+	 * Fallback for {@link #equals(Object)} if the structural hashes match, but the nodes differ.
+	 */
 	private String getStructuralId() {
 		if (structure == null) {
 			structure = node.getStructuralId(bindings);
@@ -180,6 +198,8 @@ public final class TreeValueExpression extends javax.el.ValueExpression {
 	 * Expressions are compared using the concept of a <em>structural id</em>:
    * variable and function names are anonymized such that two expressions with
    * same tree structure will also have the same structural id and vice versa.
+	 * The structural id itself is only computed if the trees' structural hashes (see
+	 * {@link Tree#getStructuralHash(Bindings)}) match, but the expressions use different tree nodes.
 	 * Two value expressions are equal if
 	 * <ol>
 	 * <li>their structural id's are equal</li>
@@ -197,14 +217,17 @@ public final class TreeValueExpression extends javax.el.ValueExpression {
 			if (type != other.type) {
 				return false;
 			}
-			return getStructuralId().equals(other.getStructuralId()) && bindings.equals(other.bindings);
+			if (hash != other.hash || !bindings.equals(other.bindings)) {
+				return false;
+			}
+			return node == other.node || getStructuralId().equals(other.getStructuralId());
 		}
 		return false;
 	}
 
 	@Override
 	public int hashCode() {
-		return getStructuralId().hashCode();
+		return (int)(hash ^ (hash >>> 32));
 	}
 
 	@Override
@@ -223,7 +246,9 @@ public final class TreeValueExpression extends javax.el.ValueExpression {
 	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
 		in.defaultReadObject();
 		try {
-			node = builder.build(expr).getRoot();
+			Tree tree = builder.build(expr);
+			node = tree.getRoot();
+			hash = tree.getStructuralHash(bindings);
 		} catch (ELException e) {
 			throw new IOException(e.getMessage());
 		}
@@ -19,8 +19,12 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.el.ELException;
 import javax.el.ValueExpression;
@@ -38,6 +42,74 @@ public class Bindings implements TypeConverter {
 	private static final Method[] NO_FUNCTIONS = new Method[0];
 	private static final ValueExpression[] NO_VARIABLES = new ValueExpression[0];
 
+	/**
+	 * Shared bindings without functions and variables, using the default type converter.
+	 */
+	public static final Bindings EMPTY = new Bindings(null, null);
+
+	/**
+	 * Canonical bindings, see {@link #intern(Bindings)}. Maps each entry to itself.
+	 */
+	private static final ConcurrentHashMap<Entry, Entry> INTERNED = new ConcurrentHashMap<Entry, Entry>();
+
+	/**
+	 * Queue of entries whose bindings have been collected.
+	 */
+	private static final ReferenceQueue<Bindings> COLLECTED = new ReferenceQueue<Bindings>();
+
+	/**
+	 * Weak reference to interned bindings. Entries are equal if their bindings are still
+	 * reachable and bind the same (identical) functions, variables and converter.
+	 */
+	private static final class Entry extends WeakReference<Bindings> {
+		private final int hash;
+
+		Entry(Bindings bindings) {
+			super(bindings, COLLECTED);
+			int hash = System.identityHashCode(bindings.converter);
+			for (Method function : bindings.functions) {
+				hash = 31 * hash + System.identityHashCode(function);
+			}
+			for (ValueExpression variable : bindings.variables) {
+				hash = 31 * hash + System.identityHashCode(variable);
+			}
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof Entry) || hash != ((Entry)obj).hash) {
+				return false;
+			}
+			Bindings bindings = get();
+			Bindings other = ((Entry)obj).get();
+			if (bindings == null || other == null || bindings.converter != other.converter) {
+				return false;
+			}
+			return same(bindings.functions, other.functions) && same(bindings.variables, other.variables);
+		}
+
+		private static boolean same(Object[] a1, Object[] a2) {
+			if (a1.length != a2.length) {
+				return false;
+			}
+			for (int i = 0; i < a1.length; i++) {
+				if (a1[i] != a2[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
 	/**
 	 * Wrap a {@link Method} for serialization.
 	 */
@@ -71,6 +143,8 @@ public class Bindings implements TypeConverter {
 	private final ValueExpression[] variables;
 	private final TypeConverter converter;
 
+	private transient boolean interned;
+
 	/**
 	 * Constructor.
 	 */
@@ -89,6 +163,54 @@ public class Bindings implements TypeConverter {
 		this.converter = converter == null ? TypeConverter.DEFAULT : converter;
 	}
 	
+	/**
+	 * Answer canonical bindings for the given bindings. Bindings are interned in a concurrent
+	 * weak canonicalizing map: the answer is the first interned bindings, which is still reachable
+	 * and binds the same (identical) functions, variables and converter.
+	 * Bindings with bound variables are usually specific to a request and not shared, so they are
+	 * answered unchanged, as are instances of subclasses.
+	 * @param bindings bindings to intern
+	 * @return canonical bindings
+	 */
+	public static Bindings intern(Bindings bindings) {
+		if (bindings.getClass() != Bindings.class || bindings.interned || bindings.hasBoundVariables()) {
+			return bindings;
+		}
+		expunge();
+		Entry entry = new Entry(bindings);
+		while (true) {
+			Entry existing = INTERNED.putIfAbsent(entry, entry);
+			if (existing == null) {
+				bindings.interned = true;
+				return bindings;
+			}
+			Bindings result = existing.get();
+			if (result != null) {
+				return result;
+			}
+			INTERNED.remove(existing, existing); // collected since lookup
+		}
+	}
+
+	private boolean hasBoundVariables() {
+		for (ValueExpression variable : variables) {
+			if (variable != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Remove entries whose bindings have been collected.
+	 */
+	private static void expunge() {
+		Reference<? extends Bindings> entry;
+		while ((entry = COLLECTED.poll()) != null) {
+			INTERNED.remove(entry, entry);
+		}
+	}
+
 	/**
 	 * Get function by index.
 	 * @param index function index
@@ -137,6 +259,14 @@ public class Bindings implements TypeConverter {
 	public <T> T convert(Object value, Class<T> type) {
 		return converter.convert(value, type);
 	}
+
+	/**
+	 * Get the type converter used by {@link #convert(Object, Class)}.
+	 * @return type converter
+	 */
+	public TypeConverter getConverter() {
+		return converter;
+	}
 	
 	@Override
 	public boolean equals(Object obj) {
@@ -175,4 +305,11 @@ public class Bindings implements TypeConverter {
 			}
 		}
 	}	
+
+	private Object readResolve() {
+		if (functions.length == 0 && variables.length == 0 && converter == TypeConverter.DEFAULT) {
+			return EMPTY;
+		}
+		return intern(this);
+	}
 }
@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent (thread-safe) bounded cache of expressions that failed to build.
+ * A tree store holding a failure cache rethrows the cached {@link TreeBuilderException} for such
+ * expressions instead of parsing them again. Entries expire after a given time to live. After the
+ * cache size reached its capacity, the oldest entries are removed, when adding a new entry.
+ * Entries are queued in insertion order, so expired entries are removed lazily from the head of
+ * the queue when adding a new entry; a lookup only removes the entry it found expired.
+ * The cache counts hits, misses, expirations and evictions.
+ */
+public final class FailureCache {
+	private static final class Entry {
+		final String expression;
+		final TreeBuilderException failure;
+		final long created;
+
+		Entry(String expression, TreeBuilderException failure, long created) {
+			this.expression = expression;
+			this.failure = failure;
+			this.created = created;
+		}
+	}
+
+	private final ConcurrentMap<String, Entry> map;
+	private final ConcurrentLinkedQueue<Entry> queue;
+	private final AtomicInteger size;
+	private final int capacity;
+	private final long timeToLive;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a new failure cache.
+	 * 
+	 * @param capacity
+	 *            Cache size. The actual size may exceed it temporarily.
+	 * @param timeToLive
+	 *            Time in milliseconds after which a failure is forgotten.
+	 */
+	public FailureCache(int capacity, long timeToLive) {
+		this.map = new ConcurrentHashMap<String, Entry>();
+		this.queue = new ConcurrentLinkedQueue<Entry>();
+		this.size = new AtomicInteger();
+		this.capacity = capacity;
+		this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+	}
+
+	/**
+	 * Get the cached failure for an expression.
+	 * @param expression expression string
+	 * @return the exception thrown when building the expression or <code>null</code> if there's no
+	 *         (unexpired) failure for it
+	 */
+	public TreeBuilderException get(String expression) {
+		Entry entry = map.get(expression);
+		if (entry != null) {
+			if (!isExpired(entry, System.nanoTime())) {
+				hits.incrementAndGet();
+				return entry.failure;
+			}
+			if (map.remove(expression, entry)) { // queued entry is dropped when it reaches the head
+				size.decrementAndGet();
+				expirations.incrementAndGet();
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Remember a failure.
+	 * @param expression expression string
+	 * @param failure the exception thrown when building the expression
+	 */
+	public void put(String expression, TreeBuilderException failure) {
+		long now = System.nanoTime();
+		Entry entry = new Entry(expression, failure, now);
+		boolean added = map.put(expression, entry) == null;
+		queue.offer(entry);
+		if (added && size.incrementAndGet() > capacity) {
+			for (Entry eldest = queue.poll(); eldest != null; eldest = queue.poll()) {
+				if (map.remove(eldest.expression, eldest)) {
+					size.decrementAndGet();
+					evictions.incrementAndGet();
+					break;
+				}
+			}
+		}
+		expire(now);
+	}
+
+	/**
+	 * Remove expired and replaced entries from the head of the queue.
+	 */
+	private void expire(long now) {
+		for (Entry eldest = queue.peek(); eldest != null; eldest = queue.peek()) {
+			boolean expired = isExpired(eldest, now);
+			if (!expired && map.get(eldest.expression) == eldest) {
+				break;
+			}
+			if (queue.remove(eldest) && expired && map.remove(eldest.expression, eldest)) {
+				size.decrementAndGet();
+				expirations.incrementAndGet();
+			}
+		}
+	}
+
+	private boolean isExpired(Entry entry, long now) {
+		return now - entry.created >= timeToLive;
+	}
+
+	/**
+	 * @return number of cached failures
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * @return number of lookups that returned a failure
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups that returned <code>null</code>
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of failures removed because their time to live elapsed
+	 */
+	public long getExpirationCount() {
+		return expirations.get();
+	}
+
+	/**
+	 * @return number of failures removed to make room for new ones
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+}
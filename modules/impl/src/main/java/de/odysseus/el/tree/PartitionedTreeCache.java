@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree;
+
+/**
+ * Tree cache, which holds trees in separate partitions (e.g. one per tenant).
+ * The {@link TreeCache} methods operate on the default partition.
+ * A {@link TreeStore} uses the partitions when trees are requested via
+ * {@link TreeStore#get(Object, String)}. The expression factory passes the
+ * context object stored under key <code>PartitionedTreeCache.class</code> in
+ * the <code>ELContext</code> as partition key.
+ */
+public interface PartitionedTreeCache extends TreeCache {
+	/**
+	 * Lookup tree in a partition
+	 * @param partition partition key (<code>null</code> for the default partition)
+	 */
+	public Tree get(Object partition, String expression);
+
+	/**
+	 * Cache tree in a partition
+	 * @param partition partition key (<code>null</code> for the default partition)
+	 */
+	public void put(Object partition, String expression, Tree tree);
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of {@link TreeStore#prewarm(java.util.Collection, java.util.concurrent.ExecutorService)}.
+ */
+public final class PrewarmResult {
+	private final int count;
+	private final Map<String, TreeBuilderException> failures;
+	private final long elapsed;
+
+	PrewarmResult(int count, Map<String, TreeBuilderException> failures, long elapsed) {
+		this.count = count;
+		this.failures = Collections.unmodifiableMap(failures);
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * @return number of expressions, whose trees are now available
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return expressions that failed to build, mapped to their exceptions
+	 */
+	public Map<String, TreeBuilderException> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return <code>true</code> if all expressions have been built successfully
+	 */
+	public boolean isSuccess() {
+		return failures.isEmpty();
+	}
+
+	/**
+	 * @return elapsed time in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "prewarmed " + count + " trees in " + elapsed + "ms, " + failures.size() + " failures";
+	}
+}
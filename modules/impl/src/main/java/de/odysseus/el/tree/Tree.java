@@ -15,6 +15,7 @@
  */ 
 package de.odysseus.el.tree;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.util.List;
 
@@ -37,24 +38,161 @@ import de.odysseus.el.misc.TypeConverter;
  * @author Christoph Beck
  */
 public class Tree {
+	private static final int TREE_SIZE = 32;
+	private static final int NODE_SIZE = 32;
+	private static final int ENTRY_SIZE = 24;
+	private static final int STRING_SIZE = 40;
+
 	private final ExpressionNode root;
 	private final List<FunctionNode> functions;
 	private final List<IdentifierNode> identifiers;
 	private final boolean deferred;
+	private final int sizeEstimate;
+	private final long structuralHash;
+
+	private volatile boolean bindCacheEnabled;
+	private volatile BindCache bindCache;
+
+	/**
+	 * Result of the last {@link Tree#bind(FunctionMapper, VariableMapper, TypeConverter)}.
+	 * The mappers and converter are held weakly, so that a shared tree doesn't keep its
+	 * last caller's context alive. Bindings with bound variables are held weakly, too,
+	 * since their value expressions may refer to request-scoped objects.
+	 */
+	private static final class BindCache {
+		final WeakReference<FunctionMapper> fnMapper;
+		final long fnVersion;
+		final WeakReference<VariableMapper> varMapper;
+		final long varVersion;
+		final WeakReference<TypeConverter> converter;
+		final Bindings bindings;
+		final WeakReference<Bindings> weakBindings;
+
+		BindCache(FunctionMapper fnMapper, long fnVersion, VariableMapper varMapper, long varVersion, TypeConverter converter, Bindings bindings, boolean weak) {
+			this.fnMapper = fnMapper == null ? null : new WeakReference<FunctionMapper>(fnMapper);
+			this.fnVersion = fnVersion;
+			this.varMapper = varMapper == null ? null : new WeakReference<VariableMapper>(varMapper);
+			this.varVersion = varVersion;
+			this.converter = converter == null ? null : new WeakReference<TypeConverter>(converter);
+			this.bindings = weak ? null : bindings;
+			this.weakBindings = weak ? new WeakReference<Bindings>(bindings) : null;
+		}
+
+		/**
+		 * @return cached bindings or <code>null</code> if they have been collected
+		 */
+		Bindings getBindings() {
+			return weakBindings == null ? bindings : weakBindings.get();
+		}
+
+		boolean matches(FunctionMapper fnMapper, long fnVersion, VariableMapper varMapper, long varVersion, TypeConverter converter) {
+			return same(this.fnMapper, fnMapper) && this.fnVersion == fnVersion
+				&& same(this.varMapper, varMapper) && this.varVersion == varVersion
+				&& same(this.converter, converter);
+		}
+
+		private static boolean same(WeakReference<?> reference, Object value) {
+			return reference == null ? value == null : value != null && reference.get() == value;
+		}
+	}
 
 	/**
 	 * 
 	 * Constructor.
+	 * The tree's size is estimated from its nodes, see
+	 * {@link #estimateSize(ExpressionNode, List, List, int)}.
 	 * @param root root node
 	 * @param functions collection of function nodes
 	 * @param identifiers collection of identifier nodes
 	 */
 	public Tree(ExpressionNode root, List<FunctionNode> functions, List<IdentifierNode> identifiers, boolean deferred) {
+		this(root, functions, identifiers, deferred, estimateSize(root, functions, identifiers, 0));
+	}
+
+	/**
+	 * 
+	 * Constructor.
+	 * @param root root node
+	 * @param functions collection of function nodes
+	 * @param identifiers collection of identifier nodes
+	 * @param sizeEstimate estimated number of bytes retained by the tree
+	 */
+	public Tree(ExpressionNode root, List<FunctionNode> functions, List<IdentifierNode> identifiers, boolean deferred, int sizeEstimate) {
+		this(root, functions, identifiers, deferred, sizeEstimate, 0);
+	}
+
+	/**
+	 * 
+	 * Constructor.
+	 * @param root root node
+	 * @param functions collection of function nodes
+	 * @param identifiers collection of identifier nodes
+	 * @param sizeEstimate estimated number of bytes retained by the tree
+	 * @param structuralHash hash of the tree's structure, see {@link #getStructuralHash()}
+	 */
+	public Tree(ExpressionNode root, List<FunctionNode> functions, List<IdentifierNode> identifiers, boolean deferred, int sizeEstimate, long structuralHash) {
 		super();
 		this.root = root;
 		this.functions = functions;
 		this.identifiers = identifiers;
 		this.deferred = deferred;
+		this.sizeEstimate = sizeEstimate;
+		this.structuralHash = structuralHash;
+	}
+
+	/**
+	 * Constructor.
+	 * Create a tree with the same function and identifier nodes as the given tree,
+	 * but with another root node. This is used to replace the root of a parsed tree by
+	 * an equivalent (e.g. compiled) node.
+	 * @param tree original tree
+	 * @param root new root node
+	 */
+	public Tree(Tree tree, ExpressionNode root) {
+		super();
+		this.root = root;
+		this.functions = tree.functions;
+		this.identifiers = tree.identifiers;
+		this.deferred = tree.deferred;
+		this.sizeEstimate = tree.sizeEstimate;
+		this.structuralHash = tree.structuralHash;
+		this.bindCacheEnabled = tree.bindCacheEnabled;
+	}
+
+	/**
+	 * Estimate the number of bytes retained by a tree. The estimate accounts for a fixed amount per
+	 * node and per function/identifier entry, for the function and identifier names and for the
+	 * given number of text characters (string literals and literal text, which are bounded by the
+	 * length of the expression string).
+	 * @param root root node (may be <code>null</code> to skip counting nodes)
+	 * @param functions collection of function nodes
+	 * @param identifiers collection of identifier nodes
+	 * @param textLength number of text characters held by the tree
+	 * @return estimated size in bytes
+	 */
+	public static int estimateSize(ExpressionNode root, List<FunctionNode> functions, List<IdentifierNode> identifiers, int textLength) {
+		long size = TREE_SIZE + STRING_SIZE + 2L * textLength;
+		if (root != null) {
+			size += NODE_SIZE * (long) countNodes(root);
+		}
+		for (FunctionNode node : functions) {
+			size += ENTRY_SIZE + STRING_SIZE + 2L * node.getName().length();
+		}
+		for (IdentifierNode node : identifiers) {
+			size += ENTRY_SIZE + STRING_SIZE + 2L * node.getName().length();
+		}
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	private static int countNodes(Node node) {
+		int count = 1;
+		for (int i = 0; i < node.getCardinality(); i++) {
+			Node child = node.getChild(i);
+			if (child != null) {
+				count += countNodes(child);
+			}
+		}
+		return count;
 	}
 
 	/**
@@ -81,6 +219,61 @@ public class Tree {
 	public boolean isDeferred() {
 		return deferred;
 	}
+
+	/**
+	 * @return estimated number of bytes retained by this tree
+	 */
+	public int getSizeEstimate() {
+		return sizeEstimate;
+	}
+
+	/**
+	 * Enable caching of bindings. If enabled, the tree remembers the bindings created by its
+	 * last call to {@link #bind(FunctionMapper, VariableMapper, TypeConverter)} and answers them
+	 * again as long as it is bound with the same mappers and converter and the mappings didn't
+	 * change. Therefore, caching requires that the mappers needed to bind the tree implement
+	 * {@link VersionedMapper}; otherwise, new bindings are created as usual. The cache doesn't
+	 * keep mappers or bound variables alive; bindings with bound variables are answered again
+	 * only while they are still referenced elsewhere, e.g. by an expression.
+	 * This method is intended to be called by a builder, before the tree is published.
+	 */
+	public void enableBindCache() {
+		bindCacheEnabled = true;
+	}
+
+	/**
+	 * @return <code>true</code> if caching of bindings has been enabled
+	 */
+	public boolean isBindCacheEnabled() {
+		return bindCacheEnabled;
+	}
+
+	/**
+	 * Answer the hash of this tree's structure, as computed by the parser. Identifier and function
+	 * names are not included, so that trees which differ only by names have equal hashes.
+	 * Trees created without a structural hash answer <code>0</code>.
+	 * @return structural hash of this tree
+	 */
+	public long getStructuralHash() {
+		return structuralHash;
+	}
+
+	/**
+	 * Answer the structural hash for the given bindings. The names of identifiers not bound to a
+	 * variable are mixed into the tree's structural hash. Expressions with equal structural ids
+	 * (see {@link ExpressionNode#getStructuralId(Bindings)}) and equal bindings have equal hashes.
+	 * @param bindings bindings created for this tree
+	 * @return structural hash
+	 */
+	public long getStructuralHash(Bindings bindings) {
+		long hash = structuralHash;
+		for (IdentifierNode node : identifiers) {
+			if (!bindings.isVariableBound(node.getIndex())) {
+				hash = (Long.rotateLeft(hash, 5) ^ node.getName().hashCode()) * 0x9e3779b97f4a7c15L;
+			}
+		}
+		return hash;
+	}
 	
 	@Override
 	public String toString() {
@@ -105,6 +298,38 @@ public class Tree {
 	 * @return tree bindings
 	 */
 	public Bindings bind(FunctionMapper fnMapper, VariableMapper varMapper, TypeConverter converter) {
+		if (!bindCacheEnabled) {
+			return createBindings(fnMapper, varMapper, converter);
+		}
+		if (functions.isEmpty()) {
+			fnMapper = null;
+		} else if (fnMapper != null && !(fnMapper instanceof VersionedMapper)) {
+			return createBindings(fnMapper, varMapper, converter);
+		}
+		if (identifiers.isEmpty()) {
+			varMapper = null;
+		} else if (varMapper != null && !(varMapper instanceof VersionedMapper)) {
+			return createBindings(fnMapper, varMapper, converter);
+		}
+		long fnVersion = fnMapper == null ? 0 : ((VersionedMapper) fnMapper).getVersion();
+		long varVersion = varMapper == null ? 0 : ((VersionedMapper) varMapper).getVersion();
+		BindCache cache = bindCache;
+		if (cache != null && cache.matches(fnMapper, fnVersion, varMapper, varVersion, converter)) {
+			Bindings bindings = cache.getBindings();
+			if (bindings != null) {
+				return bindings;
+			}
+		}
+		Bindings bindings = createBindings(fnMapper, varMapper, converter);
+		boolean bound = false;
+		for (int i = 0; i < identifiers.size() && !bound; i++) {
+			bound = bindings.isVariableBound(i);
+		}
+		bindCache = new BindCache(fnMapper, fnVersion, varMapper, varVersion, converter, bindings, bound);
+		return bindings;
+	}
+
+	private Bindings createBindings(FunctionMapper fnMapper, VariableMapper varMapper, TypeConverter converter) {
 		Method[] methods = null;
 		if (!functions.isEmpty()) {
 			if (fnMapper == null) {
@@ -148,6 +373,9 @@ public class Tree {
 				expressions[node.getIndex()] = expression;
 			}
 		}
-		return new Bindings(methods, expressions, converter);
+		if (methods == null && expressions == null && (converter == null || converter == TypeConverter.DEFAULT)) {
+			return Bindings.EMPTY;
+		}
+		return Bindings.intern(new Bindings(methods, expressions, converter));
 	}
 }
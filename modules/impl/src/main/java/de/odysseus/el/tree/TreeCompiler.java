@@ -0,0 +1,31 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree;
+
+import java.io.Serializable;
+
+/**
+ * Tree compiler interface.
+ * A tree compiler translates a parsed {@link Tree} into an equivalent tree, whose root node
+ * evaluates faster than the plain syntax tree. The compiled tree must behave exactly like the
+ * original one. A tree compiler implementation must be thread-safe.
+ */
+public interface TreeCompiler extends Serializable {
+	/**
+	 * Compile the given tree.
+	 * @param tree parsed expression tree
+	 * @return compiled tree (may be the given tree if it cannot be compiled)
+	 */
+	public Tree compile(Tree tree);
+}
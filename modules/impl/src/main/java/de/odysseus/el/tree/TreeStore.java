@@ -15,18 +15,88 @@
  */ 
 package de.odysseus.el.tree;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.el.ELException;
 
 /**
  * Tree store class.
  * A tree store holds a {@link de.odysseus.el.tree.TreeBuilder} and a
  * {@link de.odysseus.el.tree.TreeCache}, provided at construction time.
  * The <code>get(String)</code> method is then used to serve expression trees.
+ * Optionally, a {@link de.odysseus.el.tree.FailureCache} remembers expressions
+ * that failed to build for some time, and a small per thread near cache
+ * remembers the trees most recently served to the current thread.
  *
  * @author Christoph Beck
  */
 public class TreeStore {
+	/**
+	 * Per thread cache of the last few trees served, looked up by expression string identity.
+	 * All entries are dropped when the store's epoch changed. Trees are held weakly, so that a
+	 * pooled thread doesn't keep them alive after they have been dropped from the tree cache or
+	 * after the store itself has been dropped.
+	 */
+	private static final class NearCache {
+		final String[] expressions;
+		final WeakReference<?>[] trees;
+		long epoch;
+		int next;
+
+		NearCache(int size, long epoch) {
+			this.expressions = new String[size];
+			this.trees = new WeakReference<?>[size];
+			this.epoch = epoch;
+		}
+
+		Tree get(String expression, long epoch) {
+			if (this.epoch != epoch) {
+				clear(epoch);
+				return null;
+			}
+			for (int i = 0; i < expressions.length; i++) {
+				if (expressions[i] == expression) {
+					return (Tree) trees[i].get();
+				}
+			}
+			return null;
+		}
+
+		void put(String expression, Tree tree) {
+			expressions[next] = expression;
+			trees[next] = new WeakReference<Tree>(tree);
+			next = (next + 1) % expressions.length;
+		}
+
+		void clear(long epoch) {
+			for (int i = 0; i < expressions.length; i++) {
+				expressions[i] = null;
+				trees[i] = null;
+			}
+			this.epoch = epoch;
+		}
+	}
+
 	private final TreeCache cache;
 	private final TreeBuilder builder;
+	private final FailureCache failures;
+	private final ConcurrentHashMap<String, FutureTask<Tree>> builds = new ConcurrentHashMap<String, FutureTask<Tree>>();
+	private final ThreadLocal<NearCache> near;
+	private final VersionedTreeCache versioned;
+	private final AtomicLong epoch = new AtomicLong();
 
 	/**
 	 * Constructor.
@@ -34,32 +104,293 @@ public class TreeStore {
 	 * @param cache the tree cache (may be <code>null</code>)
 	 */
 	public TreeStore(TreeBuilder builder, TreeCache cache) {
+		this(builder, cache, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param builder the tree builder
+	 * @param cache the tree cache (may be <code>null</code>)
+	 * @param failures the failure cache (may be <code>null</code>)
+	 */
+	public TreeStore(TreeBuilder builder, TreeCache cache, FailureCache failures) {
+		this(builder, cache, failures, 0);
+	}
+
+	/**
+	 * Constructor.
+	 * The near cache remembers the last <code>nearCacheSize</code> trees served to a thread,
+	 * keyed by the identity of their expression strings. It pays off for threads which evaluate
+	 * the same (constant) expression strings over and over again. If the tree cache is a
+	 * {@link VersionedTreeCache}, near caches are invalidated whenever its version changes, and
+	 * near cache hits are passed to the tree cache. Otherwise, since adding trees to the cache may
+	 * evict others, adding a tree invalidates all near caches. The near cache requires a tree
+	 * cache.
+	 * @param builder the tree builder
+	 * @param cache the tree cache (may be <code>null</code>)
+	 * @param failures the failure cache (may be <code>null</code>)
+	 * @param nearCacheSize number of trees remembered per thread (<code>0</code> to disable)
+	 */
+	public TreeStore(TreeBuilder builder, TreeCache cache, FailureCache failures, final int nearCacheSize) {
 		super();
 
 		this.builder = builder;
 		this.cache = cache;
+		this.failures = failures;
+		this.versioned = cache instanceof VersionedTreeCache ? (VersionedTreeCache) cache : null;
+		if (cache != null && nearCacheSize > 0) {
+			this.near = new ThreadLocal<NearCache>() {
+				@Override
+				protected NearCache initialValue() {
+					return new NearCache(nearCacheSize, epoch());
+				}
+			};
+		} else {
+			this.near = null;
+		}
 	}
 
 	public TreeBuilder getBuilder() {
 		return builder;
 	}
+
+	/**
+	 * @return the tree cache (may be <code>null</code>)
+	 */
+	public TreeCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return the failure cache (may be <code>null</code>)
+	 */
+	public FailureCache getFailureCache() {
+		return failures;
+	}
 	
 	/**
 	 * Get a {@link Tree}.
 	 * If a tree for the given expression is present in the cache, it is
 	 * taken from there; otherwise, the expression string is parsed and
 	 * the resulting tree is added to the cache.
+	 * If several threads miss the same expression at the same time, only
+	 * one of them parses it, while the others wait for its tree (or
+	 * exception).
+	 * If the store has a failure cache and building the expression failed
+	 * recently, the cached exception is rethrown without parsing again.
 	 * @param expression expression string
 	 * @return expression tree
 	 */
 	public Tree get(String expression) throws TreeBuilderException {
 		if (cache == null) {
-			return builder.build(expression);
+			return parse(expression);
 		}
-		Tree tree = cache.get(expression);
+		if (near == null) {
+			Tree tree = cache.get(expression);
+			if (tree == null) {
+				tree = build(expression);
+			}
+			return tree;
+		}
+		NearCache local = near.get();
+		Tree tree = local.get(expression, epoch());
 		if (tree == null) {
-			cache.put(expression, tree = builder.build(expression));
+			tree = cache.get(expression);
+			if (tree == null) {
+				tree = build(expression);
+			}
+			local.put(expression, tree);
+		} else if (versioned != null) {
+			versioned.touch(expression);
 		}
 		return tree;
 	}
+
+	/**
+	 * Get a {@link Tree} for a cache partition (e.g. a tenant).
+	 * If the store's cache is a {@link PartitionedTreeCache}, the tree is
+	 * looked up in and added to the given partition. Otherwise, or if the
+	 * partition is <code>null</code>, this is the same as {@link #get(String)}.
+	 * @param partition partition key (may be <code>null</code>)
+	 * @param expression expression string
+	 * @return expression tree
+	 */
+	public Tree get(Object partition, String expression) throws TreeBuilderException {
+		if (partition == null || !(cache instanceof PartitionedTreeCache)) {
+			return get(expression);
+		}
+		Tree tree = ((PartitionedTreeCache) cache).get(partition, expression);
+		if (tree == null) {
+			tree = build(partition, expression);
+		}
+		return tree;
+	}
+
+	/**
+	 * Build the trees for the given expressions in parallel and add them to the cache.
+	 * The expressions are split into batches, which are executed by the given executor.
+	 * This method waits until all batches have been executed.
+	 * @param expressions expression strings
+	 * @param executor executor used to build the trees
+	 * @return number of trees built, build failures and elapsed time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public PrewarmResult prewarm(Collection<String> expressions, ExecutorService executor) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		final AtomicInteger count = new AtomicInteger();
+		final Map<String, TreeBuilderException> failures = new ConcurrentHashMap<String, TreeBuilderException>();
+		List<String> list = new ArrayList<String>(expressions);
+		int batches = Math.min(list.size(), 4 * Runtime.getRuntime().availableProcessors());
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(batches);
+		for (int i = 0; i < batches; i++) {
+			final List<String> batch = list.subList(i * list.size() / batches, (i + 1) * list.size() / batches);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					for (String expression : batch) {
+						try {
+							get(expression);
+							count.incrementAndGet();
+						} catch (TreeBuilderException e) {
+							failures.put(expression, e);
+						}
+					}
+					return null;
+				}
+			});
+		}
+		for (Future<Object> future : executor.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw new ELException(e.getCause());
+			}
+		}
+		return new PrewarmResult(count.get(), failures, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Build the trees for the given expressions in parallel, using a temporary thread pool with
+	 * one thread per available processor.
+	 * @param expressions expression strings
+	 * @return number of trees built, build failures and elapsed time
+	 * @throws InterruptedException if interrupted while waiting
+	 * @see #prewarm(Collection, ExecutorService)
+	 */
+	public PrewarmResult prewarm(Collection<String> expressions) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			return prewarm(expressions, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Build the tree for an expression, consulting and updating the failure cache.
+	 */
+	private Tree parse(String expression) throws TreeBuilderException {
+		if (failures == null) {
+			return builder.build(expression);
+		}
+		TreeBuilderException failure = failures.get(expression);
+		if (failure != null) {
+			throw failure;
+		}
+		try {
+			return builder.build(expression);
+		} catch (TreeBuilderException e) {
+			failures.put(expression, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Build the tree for an expression missing in the cache and add it to the cache.
+	 * Concurrent calls for the same expression share a single build.
+	 */
+	private Tree build(String expression) {
+		return build(null, expression);
+	}
+
+	/**
+	 * Build the tree for an expression missing in a cache partition and add it to the partition.
+	 * Concurrent calls for the same expression share a single build, even across partitions.
+	 */
+	private Tree build(final Object partition, final String expression) {
+		FutureTask<Tree> task = new FutureTask<Tree>(new Callable<Tree>() {
+			public Tree call() {
+				Tree tree = lookup(partition, expression); // may have been added after our lookup
+				if (tree == null) {
+					cache(partition, expression, tree = parse(expression));
+				}
+				return tree;
+			}
+		});
+		FutureTask<Tree> running = builds.putIfAbsent(expression, task);
+		if (running == null) {
+			running = task;
+			try {
+				task.run();
+			} finally {
+				builds.remove(expression, task);
+			}
+		}
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					Tree tree = running.get();
+					if (running != task && partition != null) { // built for another partition
+						cache(partition, expression, tree);
+					}
+					return tree;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					if (e.getCause() instanceof Error) {
+						throw (Error) e.getCause();
+					}
+					throw new ELException(e.getCause());
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Current epoch of the near caches.
+	 */
+	private long epoch() {
+		return versioned != null ? versioned.getVersion() : epoch.get();
+	}
+
+	private Tree lookup(Object partition, String expression) {
+		if (partition == null) {
+			return cache.get(expression);
+		}
+		return ((PartitionedTreeCache) cache).get(partition, expression);
+	}
+
+	private void cache(Object partition, String expression, Tree tree) {
+		if (partition == null) {
+			cache.put(expression, tree);
+		} else {
+			((PartitionedTreeCache) cache).put(partition, expression, tree);
+		}
+		if (versioned == null) {
+			epoch.incrementAndGet();
+		}
+	}
 }
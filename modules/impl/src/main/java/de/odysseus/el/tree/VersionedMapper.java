@@ -0,0 +1,28 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree;
+
+/**
+ * Versioned function or variable mapper. A tree with enabled bind cache (see
+ * {@link Tree#enableBindCache()}) reuses its bindings as long as the version numbers
+ * of the mappers used to bind it don't change.
+ */
+public interface VersionedMapper {
+	/**
+	 * Answer the mapper's version. The version must change whenever a mapping is
+	 * added, replaced or removed.
+	 * @return version number
+	 */
+	public long getVersion();
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree;
+
+/**
+ * Tree cache, which tells when trees have been dropped. A {@link TreeStore} near cache
+ * remembers the trees it served, and keeps them as long as the version of a versioned cache
+ * doesn't change. Since the store does not look up trees served from its near cache, it passes
+ * these hits to {@link #touch(String)}, so that the cache can count them and use them for its
+ * eviction policy.
+ */
+public interface VersionedTreeCache extends TreeCache {
+	/**
+	 * Answer the cache's version. The version must change whenever a tree is evicted, removed
+	 * or replaced.
+	 * @return version number
+	 */
+	public long getVersion();
+
+	/**
+	 * Record a hit, which has been served without calling {@link #get(String)}.
+	 * @param expression expression string
+	 */
+	public void touch(String expression);
+}
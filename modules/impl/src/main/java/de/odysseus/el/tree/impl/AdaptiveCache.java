@@ -0,0 +1,239 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.odysseus.el.tree.EnumerableTreeCache;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.VersionedTreeCache;
+
+/**
+ * Concurrent (thread-safe) FIFO tree cache, which adapts its capacity to heap pressure.
+ * The cache starts with its maximum capacity. Every now and then, when adding or looking up
+ * entries, it checks the usage of the old generation heap pool after its last collection (or the
+ * whole heap, if there's no such pool). If the usage is high or if the garbage collector cleared a
+ * softly reachable sentinel object since the last check, the cache halves its target capacity and removes its oldest entries. If there is
+ * headroom again, it grows its target capacity back step by step, up to the maximum capacity.
+ * The current target is reported by {@link #getTarget()}.
+ */
+public final class AdaptiveCache implements EnumerableTreeCache, VersionedTreeCache {
+	/**
+	 * Heap usage source. Uses the collection usage of the old generation pool, i.e. the memory
+	 * still in use after its last collection, so that garbage waiting to be collected does not
+	 * count.
+	 */
+	static class HeapUsage {
+		private final MemoryPoolMXBean pool;
+
+		HeapUsage() {
+			MemoryPoolMXBean tenured = null;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+					if (tenured == null || pool.getUsage().getMax() > tenured.getUsage().getMax()) {
+						tenured = pool;
+					}
+				}
+			}
+			this.pool = tenured;
+		}
+
+		/**
+		 * @return fraction of the heap in use (between <code>0</code> and <code>1</code>)
+		 */
+		float get() {
+			if (pool != null) {
+				MemoryUsage usage = pool.getCollectionUsage();
+				if (usage == null || usage.getMax() <= 0) {
+					usage = pool.getUsage();
+				}
+				if (usage.getMax() > 0) {
+					return (float) usage.getUsed() / usage.getMax();
+				}
+			}
+			Runtime runtime = Runtime.getRuntime();
+			return (float) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+		}
+	}
+
+	/**
+	 * Heap usage above which the cache shrinks.
+	 */
+	public static final float HIGH_USAGE = 0.85f;
+
+	/**
+	 * Heap usage below which the cache grows.
+	 */
+	public static final float LOW_USAGE = 0.6f;
+
+	private static final int CHECK_INTERVAL = 64;
+
+	static final int READ_CHECK_INTERVAL = 1024; // power of two
+
+	private final ConcurrentMap<String, Tree> map;
+	private final ConcurrentLinkedQueue<String> queue;
+	private final AtomicInteger size;
+	private final AtomicInteger puts;
+	private final AtomicLong evictions;
+	private final AtomicBoolean adjusting;
+	private final int minCapacity;
+	private final int maxCapacity;
+	private final HeapUsage heap;
+
+	private volatile int target;
+	private volatile SoftReference<Object> sentinel;
+	private int reads; // not synchronized, lost updates only delay a check
+
+	/**
+	 * Creates a new cache with the specified maximum capacity. The cache won't shrink below a
+	 * tenth of it.
+	 * 
+	 * @param capacity
+	 *            Maximum cache size. The actual size may exceed it temporarily.
+	 */
+	public AdaptiveCache(int capacity) {
+		this(Math.max(1, capacity / 10), capacity);
+	}
+
+	/**
+	 * Creates a new cache with the specified minimum and maximum capacity.
+	 * 
+	 * @param minCapacity
+	 *            Minimum target cache size.
+	 * @param maxCapacity
+	 *            Maximum cache size. The actual size may exceed it temporarily.
+	 */
+	public AdaptiveCache(int minCapacity, int maxCapacity) {
+		this(minCapacity, maxCapacity, new HeapUsage());
+	}
+
+	AdaptiveCache(int minCapacity, int maxCapacity, HeapUsage heap) {
+		if (minCapacity < 1 || minCapacity > maxCapacity) {
+			throw new IllegalArgumentException("Invalid capacity: " + minCapacity + ".." + maxCapacity);
+		}
+		this.map = new ConcurrentHashMap<String, Tree>();
+		this.queue = new ConcurrentLinkedQueue<String>();
+		this.size = new AtomicInteger();
+		this.puts = new AtomicInteger();
+		this.evictions = new AtomicLong();
+		this.adjusting = new AtomicBoolean();
+		this.minCapacity = minCapacity;
+		this.maxCapacity = maxCapacity;
+		this.heap = heap;
+		this.target = maxCapacity;
+		this.sentinel = new SoftReference<Object>(new Object());
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * @return current target capacity
+	 */
+	public int getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return minimum target capacity
+	 */
+	public int getMinCapacity() {
+		return minCapacity;
+	}
+
+	/**
+	 * @return maximum capacity
+	 */
+	public int getMaxCapacity() {
+		return maxCapacity;
+	}
+
+	public Tree get(String expression) {
+		if ((++reads & (READ_CHECK_INTERVAL - 1)) == 0 || sentinel.get() == null) {
+			adjust();
+		}
+		return map.get(expression);
+	}
+
+	public Map<String, Tree> snapshot() {
+		return new HashMap<String, Tree>(map);
+	}
+
+	public void put(String expression, Tree tree) {
+		if (puts.incrementAndGet() % CHECK_INTERVAL == 0 || sentinel.get() == null) {
+			adjust();
+		}
+		if (map.putIfAbsent(expression, tree) == null) {
+			queue.offer(expression);
+			if (size.incrementAndGet() > target) {
+				evict();
+			}
+		}
+	}
+
+	public long getVersion() {
+		return evictions.get();
+	}
+
+	public void touch(String expression) {
+		// FIFO: hits don't matter
+	}
+
+	/**
+	 * Check heap usage and adjust the target capacity.
+	 */
+	void adjust() {
+		if (!adjusting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			float usage = heap.get();
+			if (usage > HIGH_USAGE || sentinel.get() == null) {
+				target = Math.max(minCapacity, target / 2);
+				sentinel = new SoftReference<Object>(new Object());
+				evict();
+			} else if (usage < LOW_USAGE && target < maxCapacity) {
+				target = Math.min(maxCapacity, target + Math.max(1, target / 4));
+			}
+		} finally {
+			adjusting.set(false);
+		}
+	}
+
+	private void evict() {
+		while (size.get() > target) {
+			String expression = queue.poll();
+			if (expression == null) {
+				break;
+			}
+			if (map.remove(expression) != null) {
+				size.decrementAndGet();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+}
@@ -68,11 +68,24 @@ public class Builder implements TreeBuilder {
 		 * Do not verify that a method's return type matches the expected return type passed to
 		 * {@link ExpressionFactory#createMethodExpression(ELContext, String, Class, Class[])}. 
 		 */
-		IGNORE_RETURN_TYPE
+		IGNORE_RETURN_TYPE,
+		/**
+		 * Share equal nodes among the trees created by a builder and serve the same tree for
+		 * expressions which differ only in whitespace between tokens (see {@link NodeInterner}).
+		 * Text outside of <code>${...}</code> and <code>#{...}</code> remains significant.
+		 */
+		INTERNING,
+		/**
+		 * Let trees remember their last bindings and reuse them when bound again to the same,
+		 * unchanged mappers (see {@link Tree#enableBindCache()}).
+		 */
+		BIND_CACHE
 	}
 	
 	protected final EnumSet<Feature> features;
 
+	private transient volatile NodeInterner interner;
+
 	public Builder() {
 		this.features = EnumSet.noneOf(Feature.class);
 	}
@@ -103,7 +116,10 @@ public class Builder implements TreeBuilder {
 	 */
 	public Tree build(String expression) throws TreeBuilderException {
 		try {
-			return createParser(expression).tree();
+			Parser parser = createParser(expression);
+			Tree tree = parser.tree();
+			String canonical = parser.getCanonicalForm();
+			return canonical == null ? tree : getInterner().putTree(canonical, tree);
 		} catch (ScanException e) {
 			throw new TreeBuilderException(expression, e.position, e.encountered, e.expected, e.getMessage());
 		} catch (ParseException e) {
@@ -114,7 +130,30 @@ public class Builder implements TreeBuilder {
 	protected Parser createParser(String expression) {
 		return new Parser(this, expression);
 	}	
-	
+
+	/**
+	 * Set the node interner used if feature {@link Feature#INTERNING} is enabled, e.g. to
+	 * choose its capacity. By default, an interner with default capacity is created on demand.
+	 * @param interner node interner
+	 */
+	public void setInterner(NodeInterner interner) {
+		this.interner = interner;
+	}
+
+	/**
+	 * @return the node interner or <code>null</code> if feature {@link Feature#INTERNING} is disabled.
+	 */
+	NodeInterner getInterner() {
+		if (interner == null && isEnabled(Feature.INTERNING)) {
+			synchronized (this) {
+				if (interner == null) {
+					interner = new NodeInterner();
+				}
+			}
+		}
+		return interner;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (obj == null || obj.getClass() != getClass()) {
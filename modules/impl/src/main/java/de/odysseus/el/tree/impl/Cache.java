@@ -15,13 +15,17 @@
  */ 
 package de.odysseus.el.tree.impl;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import de.odysseus.el.tree.EnumerableTreeCache;
 import de.odysseus.el.tree.Tree;
-import de.odysseus.el.tree.TreeCache;
+import de.odysseus.el.tree.VersionedTreeCache;
 
 /**
  * Concurrent (thread-safe) FIFO tree cache (using classes from
@@ -30,10 +34,11 @@ import de.odysseus.el.tree.TreeCache;
  * 
  * @author Christoph Beck
  */
-public final class Cache implements TreeCache {
+public final class Cache implements EnumerableTreeCache, VersionedTreeCache {
 	private final ConcurrentMap<String, Tree> map;
 	private final ConcurrentLinkedQueue<String> queue;
 	private final AtomicInteger size;
+	private final AtomicLong evictions;
 	private final int capacity;
 
 	/**
@@ -61,6 +66,7 @@ public final class Cache implements TreeCache {
 		this.map = new ConcurrentHashMap<String, Tree>(16, 0.75f, concurrencyLevel);
 		this.queue = new ConcurrentLinkedQueue<String>();
 		this.size = new AtomicInteger();
+		this.evictions = new AtomicLong();
 		this.capacity = capacity;
 	}
 	
@@ -72,13 +78,26 @@ public final class Cache implements TreeCache {
 		return map.get(expression);
 	}
 
+	public Map<String, Tree> snapshot() {
+		return new HashMap<String, Tree>(map);
+	}
+
 	public void put(String expression, Tree tree) {
 		if (map.putIfAbsent(expression, tree) == null) {
 			queue.offer(expression);
 			if (size.incrementAndGet() > capacity) {
 				size.decrementAndGet();
 				map.remove(queue.poll());
+				evictions.incrementAndGet();
 			}
 		}
 	}
+
+	public long getVersion() {
+		return evictions.get();
+	}
+
+	public void touch(String expression) {
+		// FIFO: hits don't matter
+	}
 }
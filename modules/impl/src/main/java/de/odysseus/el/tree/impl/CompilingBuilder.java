@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeBuilder;
+import de.odysseus.el.tree.TreeBuilderException;
+import de.odysseus.el.tree.TreeCompiler;
+
+/**
+ * Compiling tree builder.
+ * Delegates parsing to another tree builder and passes the resulting trees
+ * through a {@link TreeCompiler}. Since a {@link de.odysseus.el.tree.TreeStore}
+ * caches the trees served by its builder, each expression string is compiled
+ * only once.
+ */
+public class CompilingBuilder implements TreeBuilder {
+	private static final long serialVersionUID = 1L;
+
+	private final TreeBuilder builder;
+	private final TreeCompiler compiler;
+
+	/**
+	 * Constructor.
+	 * @param builder the builder used to parse expressions
+	 * @param compiler the compiler used to compile parsed trees
+	 */
+	public CompilingBuilder(TreeBuilder builder, TreeCompiler compiler) {
+		this.builder = builder;
+		this.compiler = compiler;
+	}
+
+	/**
+	 * @return the builder used to parse expressions
+	 */
+	public TreeBuilder getBuilder() {
+		return builder;
+	}
+
+	/**
+	 * @return the compiler used to compile parsed trees
+	 */
+	public TreeCompiler getCompiler() {
+		return compiler;
+	}
+
+	/**
+	 * Parse and compile expression.
+	 */
+	public Tree build(String expression) throws TreeBuilderException {
+		return compiler.compile(builder.build(expression));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == null || obj.getClass() != getClass()) {
+			return false;
+		}
+		CompilingBuilder other = (CompilingBuilder)obj;
+		return builder.equals(other.builder) && compiler.getClass() == other.compiler.getClass();
+	}
+
+	@Override
+	public int hashCode() {
+		return builder.hashCode();
+	}
+}
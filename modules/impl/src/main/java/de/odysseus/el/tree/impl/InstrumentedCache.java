@@ -0,0 +1,332 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.el.ELException;
+
+import de.odysseus.el.tree.EnumerableTreeCache;
+import de.odysseus.el.tree.PartitionedTreeCache;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeCache;
+import de.odysseus.el.tree.VersionedTreeCache;
+
+/**
+ * Tree cache wrapper, which collects statistics and exposes them as standard MBean (see
+ * {@link InstrumentedCacheMBean}). It counts hits, misses, puts and evictions (if the wrapped
+ * cache can tell its size) and records the time from a miss until the tree for the missing
+ * expression is added by the same thread, which is essentially the time needed to parse it.
+ * If the wrapped cache is a {@link PartitionedTreeCache}, partitioned lookups and puts are
+ * forwarded to it; otherwise, they operate on the wrapped cache's trees.
+ * Hits served by a tree store's near cache are counted as hits, too. The version is taken from
+ * the wrapped cache, if it is a {@link VersionedTreeCache}; otherwise, it changes with every put.
+ * Resetting the statistics doesn't affect the version.
+ * The cache can list its trees only if the wrapped cache is an {@link EnumerableTreeCache}, see
+ * {@link #isEnumerable()}.
+ * <p/>
+ * Resizing and clearing replace the wrapped cache by a new instance created by a {@link Factory}.
+ * By default, the factory invokes the wrapped cache's constructor taking the capacity as an
+ * <code>int</code>.
+ */
+public final class InstrumentedCache implements EnumerableTreeCache, PartitionedTreeCache, VersionedTreeCache, InstrumentedCacheMBean {
+	private static final long[] BUCKETS = { 10, 100, 1000, 10000, 100000 };
+
+	/**
+	 * Factory used to create a new wrapped cache when resizing or clearing.
+	 */
+	public static interface Factory {
+		/**
+		 * Create an empty cache.
+		 * @param capacity cache capacity
+		 */
+		public TreeCache newCache(int capacity);
+	}
+
+	/**
+	 * Miss pending in the current thread. The first lookup of the same expression following the
+	 * miss is the tree store's re-check before building and isn't counted. Later lookups (e.g.
+	 * after the build failed) count as new misses.
+	 */
+	private static final class Miss {
+		final String expression;
+		final long time;
+		boolean rechecked;
+
+		Miss(String expression, long time) {
+			this.expression = expression;
+			this.time = time;
+		}
+	}
+
+	private final ThreadLocal<Miss> pending = new ThreadLocal<Miss>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong puts = new AtomicLong();
+	private final AtomicLong modifications = new AtomicLong(); // version of unversioned caches, never reset
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong latency = new AtomicLong();
+	private final AtomicLong latencyCount = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+
+	private final Factory factory;
+
+	private volatile TreeCache cache;
+	private volatile int capacity;
+	private volatile long versionOffset; // version of replaced caches
+
+	/**
+	 * Creates a new instrumented cache. Resizing and clearing create new instances of the
+	 * wrapped cache's class via its constructor taking the capacity as an <code>int</code>.
+	 * 
+	 * @param cache
+	 *            wrapped cache
+	 * @param capacity
+	 *            capacity of the wrapped cache
+	 */
+	public InstrumentedCache(TreeCache cache, int capacity) {
+		this(cache, capacity, null);
+	}
+
+	/**
+	 * Creates a new instrumented cache.
+	 * 
+	 * @param cache
+	 *            wrapped cache
+	 * @param capacity
+	 *            capacity of the wrapped cache
+	 * @param factory
+	 *            factory used to create new caches when resizing or clearing (may be
+	 *            <code>null</code> to use the wrapped cache's <code>int</code> constructor)
+	 */
+	public InstrumentedCache(TreeCache cache, int capacity, Factory factory) {
+		this.cache = cache;
+		this.capacity = capacity;
+		this.factory = factory;
+	}
+
+	/**
+	 * @return the wrapped cache
+	 */
+	public TreeCache getCache() {
+		return cache;
+	}
+
+	public Tree get(String expression) {
+		return count(expression, cache.get(expression));
+	}
+
+	public Tree get(Object partition, String expression) {
+		TreeCache cache = this.cache;
+		if (partition != null && cache instanceof PartitionedTreeCache) {
+			return count(expression, ((PartitionedTreeCache) cache).get(partition, expression));
+		}
+		return count(expression, cache.get(expression));
+	}
+
+	public void put(String expression, Tree tree) {
+		cache.put(expression, tree);
+		record(expression);
+	}
+
+	public void put(Object partition, String expression, Tree tree) {
+		TreeCache cache = this.cache;
+		if (partition != null && cache instanceof PartitionedTreeCache) {
+			((PartitionedTreeCache) cache).put(partition, expression, tree);
+		} else {
+			cache.put(expression, tree);
+		}
+		record(expression);
+	}
+
+	public long getVersion() {
+		return versionOffset + version(cache);
+	}
+
+	public void touch(String expression) {
+		TreeCache cache = this.cache;
+		if (cache instanceof VersionedTreeCache) {
+			((VersionedTreeCache) cache).touch(expression);
+		}
+		hit();
+	}
+
+	private long version(TreeCache cache) {
+		return cache instanceof VersionedTreeCache ? ((VersionedTreeCache) cache).getVersion() : modifications.get();
+	}
+
+	private void hit() {
+		hits.incrementAndGet();
+		if (pending.get() != null) {
+			pending.remove();
+		}
+	}
+
+	private Tree count(String expression, Tree tree) {
+		Miss miss = pending.get();
+		if (tree != null) {
+			hit();
+		} else if (miss != null && !miss.rechecked && miss.expression.equals(expression)) {
+			miss.rechecked = true; // don't count the store's re-check before building
+		} else {
+			misses.incrementAndGet();
+			pending.set(new Miss(expression, System.nanoTime()));
+		}
+		return tree;
+	}
+
+	private void record(String expression) {
+		puts.incrementAndGet();
+		modifications.incrementAndGet();
+		Miss miss = pending.get();
+		if (miss != null) {
+			pending.remove();
+		}
+		if (miss != null && miss.expression.equals(expression)) {
+			long micros = (System.nanoTime() - miss.time) / 1000;
+			latency.addAndGet(micros);
+			latencyCount.incrementAndGet();
+			int bucket = 0;
+			while (bucket < BUCKETS.length && micros >= BUCKETS[bucket]) {
+				bucket++;
+			}
+			histogram.incrementAndGet(bucket);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the wrapped cache is an {@link EnumerableTreeCache}, i.e.
+	 *         {@link #snapshot()} is supported
+	 */
+	public boolean isEnumerable() {
+		return cache instanceof EnumerableTreeCache;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @throws UnsupportedOperationException if the wrapped cache is not enumerable
+	 */
+	public Map<String, Tree> snapshot() {
+		if (cache instanceof EnumerableTreeCache) {
+			return ((EnumerableTreeCache) cache).snapshot();
+		}
+		throw new UnsupportedOperationException("Cannot list trees of cache " + cache);
+	}
+
+	public int size() {
+		return cache instanceof EnumerableTreeCache ? ((EnumerableTreeCache) cache).size() : -1;
+	}
+
+	public int getSize() {
+		return size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public double getHitRatio() {
+		long hits = this.hits.get();
+		long lookups = hits + misses.get();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public long getPutCount() {
+		return puts.get();
+	}
+
+	public long getEvictionCount() {
+		int size = size();
+		return size < 0 ? -1 : Math.max(0, puts.get() - dropped.get() - size);
+	}
+
+	public double getAverageMissLatency() {
+		long count = latencyCount.get();
+		return count == 0 ? 0 : (double) latency.get() / count;
+	}
+
+	public long[] getMissLatencyBuckets() {
+		return BUCKETS.clone();
+	}
+
+	public long[] getMissLatencyHistogram() {
+		long[] result = new long[histogram.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = histogram.get(i);
+		}
+		return result;
+	}
+
+	public synchronized void resize(int capacity) {
+		TreeCache cache = newCache(capacity);
+		if (this.cache instanceof EnumerableTreeCache) {
+			for (Map.Entry<String, Tree> entry : ((EnumerableTreeCache) this.cache).snapshot().entrySet()) {
+				cache.put(entry.getKey(), entry.getValue());
+			}
+		}
+		replace(cache);
+		this.capacity = capacity;
+	}
+
+	public synchronized void clear() {
+		replace(newCache(capacity));
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		latency.set(0);
+		latencyCount.set(0);
+		for (int i = 0; i < histogram.length(); i++) {
+			histogram.set(i, 0);
+		}
+		puts.set(0);
+		dropped.set(-Math.max(0, size())); // trees currently cached don't count as puts
+	}
+
+	/**
+	 * Replace the wrapped cache. Trees not taken over by the new cache count as dropped, not as
+	 * evicted. The version offset is adjusted, so that the version changes, but never goes back.
+	 */
+	private void replace(TreeCache cache) {
+		int oldSize = size();
+		versionOffset += version(this.cache) + 1 - version(cache);
+		this.cache = cache;
+		int newSize = size();
+		if (oldSize > newSize) {
+			dropped.addAndGet(oldSize - newSize);
+		}
+	}
+
+	private TreeCache newCache(int capacity) {
+		if (factory != null) {
+			return factory.newCache(capacity);
+		}
+		try {
+			return cache.getClass().getConstructor(int.class).newInstance(capacity);
+		} catch (Exception e) {
+			throw new ELException("TreeCache " + cache.getClass() + " could not be instantiated", e);
+		}
+	}
+}
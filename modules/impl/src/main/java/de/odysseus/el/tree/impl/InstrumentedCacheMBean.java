@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+/**
+ * Management interface of {@link InstrumentedCache}.
+ */
+public interface InstrumentedCacheMBean {
+	/**
+	 * @return number of lookups that found a tree
+	 */
+	public long getHitCount();
+
+	/**
+	 * @return number of lookups that didn't find a tree
+	 */
+	public long getMissCount();
+
+	/**
+	 * @return hits divided by lookups (<code>0</code> if there were no lookups)
+	 */
+	public double getHitRatio();
+
+	/**
+	 * @return number of trees added
+	 */
+	public long getPutCount();
+
+	/**
+	 * @return number of trees evicted (<code>-1</code> if the cache cannot tell its size)
+	 */
+	public long getEvictionCount();
+
+	/**
+	 * @return number of cached trees (<code>-1</code> if the cache cannot tell its size)
+	 */
+	public int getSize();
+
+	/**
+	 * @return cache capacity
+	 */
+	public int getCapacity();
+
+	/**
+	 * @return average time in microseconds from a miss until the tree was added (<code>0</code> if
+	 *         no tree has been added after a miss)
+	 */
+	public double getAverageMissLatency();
+
+	/**
+	 * @return upper bounds (exclusive) in microseconds of the miss latency histogram buckets
+	 */
+	public long[] getMissLatencyBuckets();
+
+	/**
+	 * @return number of misses per miss latency bucket (the last bucket is unbounded)
+	 */
+	public long[] getMissLatencyHistogram();
+
+	/**
+	 * Replace the cache by a new one of the given capacity, keeping trees if possible.
+	 * @param capacity new capacity
+	 */
+	public void resize(int capacity);
+
+	/**
+	 * Remove all trees.
+	 */
+	public void clear();
+
+	/**
+	 * Reset all counters.
+	 */
+	public void resetStatistics();
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.impl.ast.AstNode;
+
+/**
+ * Node interner, used by a {@link Builder} with feature {@link Builder.Feature#INTERNING}.
+ * Since a parser creates nodes bottom up, equal children have been replaced by the same
+ * instance before their parent is created. Therefore, a node is determined by its class
+ * and attributes plus the identities of its children, which gives cheap keys.
+ * Additionally, trees are kept by their canonical form (the expression's token stream), so that
+ * expressions differing only in whitespace between tokens share the same tree.
+ * Nodes and trees are held weakly, so the interner keeps only what is still used, e.g. by the
+ * trees of a tree cache. When a table is full, new entries are not interned until others have
+ * been collected.
+ */
+public final class NodeInterner {
+	/**
+	 * Default maximum number of nodes and trees kept.
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	private final int capacity;
+	private final Table<List<Object>, AstNode> nodes;
+	private final Table<String, Tree> trees;
+
+	/**
+	 * Create interner with default capacity.
+	 */
+	public NodeInterner() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create interner.
+	 * @param capacity maximum number of nodes (and trees) kept
+	 */
+	public NodeInterner(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.nodes = new Table<List<Object>, AstNode>(capacity);
+		this.trees = new Table<String, Tree>(capacity);
+	}
+
+	/**
+	 * Answer a previously interned node equal to the given node or intern the given node.
+	 * @param node node to intern
+	 * @param key attributes and children of the node (children must have been interned before)
+	 * @return canonical node
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends AstNode> T intern(T node, Object... key) {
+		List<Object> list = new ArrayList<Object>(key.length + 1);
+		list.add(node.getClass());
+		list.addAll(Arrays.asList(key));
+		return (T)nodes.intern(list, node);
+	}
+
+	/**
+	 * Answer the tree for the given canonical form or <code>null</code>.
+	 */
+	public Tree getTree(String canonical) {
+		return trees.get(canonical);
+	}
+
+	/**
+	 * Answer a tree previously put for the given canonical form or put the given tree.
+	 * @return canonical tree
+	 */
+	public Tree putTree(String canonical, Tree tree) {
+		return trees.intern(canonical, tree);
+	}
+
+	/**
+	 * @return number of interned nodes
+	 */
+	public int nodeCount() {
+		return nodes.size();
+	}
+
+	/**
+	 * @return number of canonical trees
+	 */
+	public int treeCount() {
+		return trees.size();
+	}
+
+	/**
+	 * @return maximum number of nodes (and trees) kept
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	private static final class Table<K, V> {
+		private static final class Entry<K, V> extends WeakReference<V> {
+			final K key;
+
+			Entry(K key, V value, ReferenceQueue<V> queue) {
+				super(value, queue);
+				this.key = key;
+			}
+		}
+
+		private final ConcurrentHashMap<K, Entry<K, V>> map = new ConcurrentHashMap<K, Entry<K, V>>();
+		private final ReferenceQueue<V> collected = new ReferenceQueue<V>();
+		private final AtomicInteger size = new AtomicInteger();
+		private final int capacity;
+
+		Table(int capacity) {
+			this.capacity = capacity;
+		}
+
+		V get(K key) {
+			Entry<K, V> entry = map.get(key);
+			return entry == null ? null : entry.get();
+		}
+
+		V intern(K key, V value) {
+			expunge();
+			while (true) {
+				Entry<K, V> entry = map.get(key);
+				if (entry != null) {
+					V previous = entry.get();
+					if (previous != null) {
+						return previous;
+					}
+					if (map.replace(key, entry, new Entry<K, V>(key, value, collected))) {
+						return value;
+					}
+				} else if (size.get() >= capacity) {
+					return value; // full
+				} else if (map.putIfAbsent(key, new Entry<K, V>(key, value, collected)) == null) {
+					size.incrementAndGet();
+					return value;
+				}
+			}
+		}
+
+		/**
+		 * Remove entries whose values have been collected.
+		 */
+		@SuppressWarnings("unchecked")
+		private void expunge() {
+			Entry<K, V> entry;
+			while ((entry = (Entry<K, V>) collected.poll()) != null) {
+				if (map.remove(entry.key, entry)) {
+					size.decrementAndGet();
+				}
+			}
+		}
+
+		int size() {
+			expunge();
+			return size.get();
+		}
+	}
+}
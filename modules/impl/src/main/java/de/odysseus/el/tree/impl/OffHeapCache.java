@@ -0,0 +1,278 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeBuilder;
+import de.odysseus.el.tree.VersionedTreeCache;
+
+/**
+ * Two level tree cache for very large numbers of expressions. Trees are serialized (see
+ * {@link TreeArchive}) into direct byte buffers outside the java heap. A small
+ * {@link TinyLfuCache} of materialized trees sits in front of them. Off-heap entries are indexed
+ * by a 128-bit fingerprint of the expression string, so the expression strings themselves are
+ * not retained on heap. Each record starts with its expression, which is compared on read.
+ * <p/>
+ * Off-heap memory is divided into a fixed number of segments, which are filled one after the
+ * other. When all segments are full, the oldest segment is recycled, dropping all its entries.
+ * Each segment keeps the fingerprints written to it, so recycling only visits the entries of
+ * that segment. Reads hold the read lock of their segment, recycling holds its write lock.
+ * Trees which cannot be serialized (e.g. compiled trees) or which don't fit into a segment are
+ * held by the front cache only.
+ */
+public final class OffHeapCache implements VersionedTreeCache {
+	/**
+	 * 128-bit expression fingerprint.
+	 */
+	static final class Fingerprint {
+		final long high;
+		final long low;
+
+		Fingerprint(String expression) {
+			long h1 = 0xcbf29ce484222325L; // FNV-1a
+			long h2 = 0x9e3779b97f4a7c15L ^ expression.length();
+			for (int i = 0; i < expression.length(); i++) {
+				char c = expression.charAt(i);
+				h1 = (h1 ^ c) * 0x100000001b3L;
+				h2 = mix(h2 + c);
+			}
+			this.high = mix(h1);
+			this.low = h2;
+		}
+
+		private static long mix(long h) {
+			h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+			h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+			return h ^ (h >>> 33);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (obj instanceof Fingerprint) {
+				Fingerprint other = (Fingerprint) obj;
+				return high == other.high && low == other.low;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (low ^ (low >>> 32));
+		}
+	}
+
+	/**
+	 * Default segment size (4 MB).
+	 */
+	public static final int SEGMENT_SIZE = 4 << 20;
+
+	private static final int MAX_SEGMENTS = 1 << 15;
+
+	private final TreeArchive archive;
+	private final TinyLfuCache front;
+	private final ConcurrentHashMap<Fingerprint, Long> index;
+	private final ByteBuffer[] segments;
+	private final ReadWriteLock[] locks;
+	private final List<List<Fingerprint>> fingerprints; // written to each segment, guarded by write
+	private final AtomicIntegerArray generations;
+	private int segment;
+
+	/**
+	 * Creates a new cache with the default segment size.
+	 * 
+	 * @param builder
+	 *            builder used to create the cached trees
+	 * @param frontCapacity
+	 *            number of materialized trees held on heap
+	 * @param capacity
+	 *            off-heap capacity in bytes (rounded up to a multiple of the segment size)
+	 */
+	public OffHeapCache(TreeBuilder builder, int frontCapacity, long capacity) {
+		this(builder, frontCapacity, capacity, SEGMENT_SIZE);
+	}
+
+	/**
+	 * Creates a new cache.
+	 * 
+	 * @param builder
+	 *            builder used to create the cached trees
+	 * @param frontCapacity
+	 *            number of materialized trees held on heap
+	 * @param capacity
+	 *            off-heap capacity in bytes (rounded up to a multiple of the segment size)
+	 * @param segmentSize
+	 *            off-heap segment size in bytes
+	 */
+	public OffHeapCache(TreeBuilder builder, int frontCapacity, long capacity, int segmentSize) {
+		long count = Math.max(2, (capacity + segmentSize - 1) / segmentSize);
+		if (count > MAX_SEGMENTS) {
+			throw new IllegalArgumentException("Too many segments: " + count);
+		}
+		this.archive = new TreeArchive(builder);
+		this.front = new TinyLfuCache(frontCapacity);
+		this.index = new ConcurrentHashMap<Fingerprint, Long>();
+		this.segments = new ByteBuffer[(int) count];
+		this.locks = new ReadWriteLock[(int) count];
+		for (int i = 0; i < count; i++) {
+			this.locks[i] = new ReentrantReadWriteLock();
+		}
+		this.fingerprints = new ArrayList<List<Fingerprint>>((int) count);
+		for (int i = 0; i < count; i++) {
+			this.fingerprints.add(new ArrayList<Fingerprint>());
+		}
+		this.generations = new AtomicIntegerArray((int) count);
+		this.segments[0] = ByteBuffer.allocateDirect(segmentSize);
+	}
+
+	/**
+	 * @return number of trees held off-heap
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * @return number of materialized trees held on heap
+	 */
+	public int getFrontSize() {
+		return front.size();
+	}
+
+	public Tree get(String expression) {
+		Tree tree = front.get(expression);
+		if (tree == null) {
+			Long location = index.get(new Fingerprint(expression));
+			if (location != null) {
+				tree = read(location.longValue(), expression);
+				if (tree != null) {
+					front.put(expression, tree);
+				}
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * The version changes whenever a tree is evicted from the front cache. A tree read from
+	 * off-heap memory again is a new instance.
+	 */
+	public long getVersion() {
+		return front.getVersion();
+	}
+
+	public void touch(String expression) {
+		front.touch(expression);
+	}
+
+	public void put(String expression, Tree tree) {
+		front.put(expression, tree);
+		if (TreeArchive.isSupported(tree)) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			try {
+				DataOutputStream out = new DataOutputStream(bytes);
+				TreeArchive.writeString(out, expression);
+				TreeArchive.writeTree(out, tree);
+			} catch (IOException e) {
+				return; // cannot happen
+			}
+			write(new Fingerprint(expression), bytes.toByteArray());
+		}
+	}
+
+	private synchronized void write(Fingerprint fingerprint, byte[] bytes) {
+		ByteBuffer buffer = segments[segment];
+		if (4 + bytes.length > buffer.capacity()) {
+			return;
+		}
+		if (4 + bytes.length > buffer.remaining()) {
+			segment = (segment + 1) % segments.length;
+			if (segments[segment] == null) {
+				segments[segment] = ByteBuffer.allocateDirect(buffer.capacity());
+			} else {
+				recycle(segment);
+			}
+			buffer = segments[segment];
+		}
+		long location = ((long) segment << 48) | ((long) (generations.get(segment) & 0xffff) << 32) | buffer.position();
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+		index.put(fingerprint, location);
+		fingerprints.get(segment).add(fingerprint);
+	}
+
+	/**
+	 * Drop the entries of a segment and make it available for writing again. Once the generation
+	 * has been incremented, reads of the segment's entries fail, so index entries are removed
+	 * afterwards. Entries rewritten to another segment since are kept.
+	 */
+	private void recycle(int segment) {
+		locks[segment].writeLock().lock();
+		try {
+			generations.incrementAndGet(segment);
+			segments[segment].clear();
+		} finally {
+			locks[segment].writeLock().unlock();
+		}
+		List<Fingerprint> written = fingerprints.get(segment);
+		for (Fingerprint fingerprint : written) {
+			Long location = index.get(fingerprint);
+			if (location != null && (int) (location.longValue() >>> 48) == segment) {
+				index.remove(fingerprint, location);
+			}
+		}
+		written.clear();
+	}
+
+	/**
+	 * Read a tree. Answer <code>null</code> if the segment has been recycled since the location
+	 * was taken from the index, or if the record belongs to another expression with the same
+	 * fingerprint.
+	 */
+	Tree read(long location, String expression) {
+		int segment = (int) (location >>> 48);
+		int generation = (int) (location >>> 32) & 0xffff;
+		int offset = (int) location;
+		locks[segment].readLock().lock();
+		try {
+			if ((generations.get(segment) & 0xffff) != generation) {
+				return null;
+			}
+			ByteBuffer buffer = segments[segment].duplicate();
+			buffer.limit(offset + 4 + buffer.getInt(offset));
+			buffer.position(offset + 4);
+			if (!expression.equals(TreeArchive.readString(buffer))) {
+				return null;
+			}
+			return archive.readTree(buffer, expression);
+		} catch (Exception e) {
+			return null;
+		} finally {
+			locks[segment].readLock().unlock();
+		}
+	}
+}
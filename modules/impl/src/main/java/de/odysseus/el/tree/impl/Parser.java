@@ -21,6 +21,7 @@ import static de.odysseus.el.tree.impl.Builder.Feature.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -107,6 +108,8 @@ public class Parser {
 		public abstract AstNode createAstNode(AstNode... children);
 	}
 
+	private static final long HASH_SEED = 0xcbf29ce484222325L;
+
 	private static final String EXPR_FIRST =
 		IDENTIFIER + "|" + 
 		STRING + "|" + FLOAT + "|" + INTEGER + "|" + TRUE + "|" + FALSE + "|" + NULL + "|" +
@@ -116,6 +119,10 @@ public class Parser {
 	protected final Builder context;
 	protected final Scanner scanner;
 
+	private final NodeInterner interner;
+	private final StringBuilder canonical; // token stream, if interning
+	private final IdentityHashMap<AstNode, Long> hashes = new IdentityHashMap<AstNode, Long>();
+
 	private List<IdentifierNode> identifiers = Collections.emptyList();
 	private List<FunctionNode> functions = Collections.emptyList();
 	private List<LookaheadToken> lookahead = Collections.emptyList();
@@ -128,6 +135,8 @@ public class Parser {
 	public Parser(Builder context, String input) {
 		this.context = context;
 		this.scanner = createScanner(input);
+		this.interner = context.getInterner();
+		this.canonical = interner == null ? null : new StringBuilder(input.length() + 16);
 	}
 
 	protected Scanner createScanner(String expression) {
@@ -174,39 +183,39 @@ public class Parser {
 	}
 
 	protected AstBinary createAstBinary(AstNode left, AstNode right, AstBinary.Operator operator) {
-		return new AstBinary(left, right, operator);
+		return intern(new AstBinary(left, right, operator), left, right, operator);
 	}
 	
 	protected AstBracket createAstBracket(AstNode base, AstNode property, boolean lvalue, boolean strict) {
-		return new AstBracket(base, property, lvalue, strict, context.isEnabled(Feature.IGNORE_RETURN_TYPE));
+		return intern(new AstBracket(base, property, lvalue, strict, context.isEnabled(Feature.IGNORE_RETURN_TYPE)), base, property, lvalue, strict);
 	}
 	
 	protected AstChoice createAstChoice(AstNode question, AstNode yes, AstNode no) {
-		return new AstChoice(question, yes, no);
+		return intern(new AstChoice(question, yes, no), question, yes, no);
 	}
 	
 	protected AstComposite createAstComposite(List<AstNode> nodes) {
-		return new AstComposite(nodes);
+		return intern(new AstComposite(nodes), nodes);
 	}
 	
 	protected AstDot createAstDot(AstNode base, String property, boolean lvalue) {
-		return new AstDot(base, property, lvalue, context.isEnabled(Feature.IGNORE_RETURN_TYPE));
+		return intern(new AstDot(base, property, lvalue, context.isEnabled(Feature.IGNORE_RETURN_TYPE)), base, property, lvalue);
 	}
 	
 	protected AstFunction createAstFunction(String name, int index, AstParameters params) {
-		return new AstFunction(name, index, params, context.isEnabled(Feature.VARARGS));
+		return intern(new AstFunction(name, index, params, context.isEnabled(Feature.VARARGS)), name, index, params);
 	}
 
 	protected AstIdentifier createAstIdentifier(String name, int index) {
-		return new AstIdentifier(name, index, context.isEnabled(Feature.IGNORE_RETURN_TYPE));
+		return intern(new AstIdentifier(name, index, context.isEnabled(Feature.IGNORE_RETURN_TYPE)), name, index);
 	}
 	
 	protected AstMethod createAstMethod(AstProperty property, AstParameters params) {
-		return new AstMethod(property, params);
+		return intern(new AstMethod(property, params), property, params);
 	}
 	
 	protected AstUnary createAstUnary(AstNode child, AstUnary.Operator operator) {
-		return new AstUnary(child, operator);
+		return intern(new AstUnary(child, operator), child, operator);
 	}
 
 	protected final List<FunctionNode> getFunctions() {
@@ -243,11 +252,36 @@ public class Parser {
 			lookahead = new LinkedList<LookaheadToken>();
 		}
 		while (index >= lookahead.size()) {
-			lookahead.add(new LookaheadToken(scanner.next(), scanner.getPosition()));
+			lookahead.add(new LookaheadToken(nextToken(), scanner.getPosition()));
 		}
 		return lookahead.get(index).token;
 	}
 
+	/**
+	 * Scan the next token. If interning, append it to the canonical form of the input.
+	 */
+	private Token nextToken() throws ScanException {
+		Token token = scanner.next();
+		if (canonical != null && token.getSymbol() != Symbol.EOF) {
+			String image = token.getImage();
+			canonical.append(token.getSymbol().ordinal()).append(':');
+			canonical.append(image == null ? -1 : image.length()).append(':');
+			if (image != null) {
+				canonical.append(image);
+			}
+		}
+		return token;
+	}
+
+	/**
+	 * Canonical form of the input parsed so far: its token stream, which does not depend on
+	 * whitespace between tokens.
+	 * @return canonical form or <code>null</code> if the builder doesn't intern trees
+	 */
+	String getCanonicalForm() {
+		return canonical == null ? null : canonical.toString();
+	}
+
 	/**
 	 * consume current token (get next token).
 	 * @return the consumed token (which was the current token when calling this method)
@@ -255,7 +289,7 @@ public class Parser {
 	protected final Token consumeToken() throws ScanException, ParseException {
 		Token result = token;
 		if (lookahead.isEmpty()) {
-			token = scanner.next();
+			token = nextToken();
 			position = scanner.getPosition();
 		} else {
 			LookaheadToken next = lookahead.remove(0);
@@ -284,13 +318,13 @@ public class Parser {
 		AstNode t = text();
 		if (token.getSymbol() == EOF) {
 			if (t == null) {
-				t = new AstText("");
+				t = intern(new AstText(""), "");
 			}
-			return new Tree(t, functions, identifiers, false);
+			return createTree(t, false);
 		}
 		AstEval e = eval();
 		if (token.getSymbol() == EOF && t == null) {
-			return new Tree(e, functions, identifiers, e.isDeferred());
+			return createTree(e, e.isDeferred());
 		}
 		ArrayList<AstNode> list = new ArrayList<AstNode>();
 		if (t != null) {
@@ -312,7 +346,64 @@ public class Parser {
 				list.add(t);
 			}
 		}
-		return new Tree(createAstComposite(list), functions, identifiers, e.isDeferred());
+		return createTree(createAstComposite(list), e.isDeferred());
+	}
+
+	/**
+	 * Register a new node. Answer an equal node created earlier by the builder's interner (if any),
+	 * so that trees of the same builder share equal subtrees. Otherwise, answer the given node.
+	 * The node's structural hash is computed from its class and key, where the names of
+	 * identifiers and functions are left out (see {@link Tree#getStructuralHash()}).
+	 * @param node new node
+	 * @param key values determining the node (node attributes and children)
+	 */
+	protected <T extends AstNode> T intern(T node, Object... key) {
+		T result = interner == null ? node : interner.intern(node, key);
+		boolean anonymous = node instanceof IdentifierNode || node instanceof FunctionNode;
+		long hash = hash(HASH_SEED, node.getClass().getName().hashCode());
+		for (Object value : key) {
+			if (value instanceof AstNode) {
+				hash = hash(hash, structuralHash((AstNode)value));
+			} else if (value instanceof List<?>) {
+				for (Object element : (List<?>)value) {
+					hash = hash(hash, structuralHash((AstNode)element));
+				}
+			} else if (!anonymous) {
+				hash = hash(hash, String.valueOf(value).hashCode());
+			}
+		}
+		hashes.put(result, hash);
+		return result;
+	}
+
+	/**
+	 * Answer the structural hash of the given node. Nodes which have not been registered by
+	 * {@link #intern(AstNode, Object...)} (e.g. nodes created by extension handlers) are
+	 * hashed by class and cardinality.
+	 */
+	private long structuralHash(AstNode node) {
+		Long hash = hashes.get(node);
+		if (hash == null) {
+			return hash(hash(HASH_SEED, node.getClass().getName().hashCode()), node.getCardinality());
+		}
+		return hash;
+	}
+
+	private static long hash(long hash, long value) {
+		return (Long.rotateLeft(hash, 5) ^ value) * 0x9e3779b97f4a7c15L;
+	}
+
+	/**
+	 * Create the tree for the given root node, estimating its size from its nodes and the input's
+	 * length. Enable the tree's bind cache if feature {@link Feature#BIND_CACHE} is enabled.
+	 */
+	private Tree createTree(AstNode root, boolean deferred) {
+		int size = Tree.estimateSize(root, functions, identifiers, scanner.getInput().length());
+		Tree tree = new Tree(root, functions, identifiers, deferred, size, structuralHash(root));
+		if (context.isEnabled(Feature.BIND_CACHE)) {
+			tree.enableBindCache();
+		}
+		return tree;
 	}
 
 	/**
@@ -321,7 +412,7 @@ public class Parser {
 	protected AstNode text() throws ScanException, ParseException {
 		AstNode v = null;
 		if (token.getSymbol() == TEXT) {
-			v = new AstText(token.getImage());
+			v = intern(new AstText(token.getImage()), token.getImage());
 			consumeToken();
 		}
 		return v;
@@ -350,7 +441,8 @@ public class Parser {
 		Symbol start_eval = deferred ? START_EVAL_DEFERRED : START_EVAL_DYNAMIC;
 		if (token.getSymbol() == start_eval) {
 			consumeToken();
-			v = new AstEval(expr(true), deferred);
+			AstNode child = expr(true);
+			v = intern(new AstEval(child, deferred), child, deferred);
 			consumeToken(END_EVAL);
 		} else if (required) {
 			fail(start_eval);
@@ -653,7 +745,7 @@ public class Parser {
 				consumeToken();
 				v = expr(true);
 				consumeToken(RPAREN);
-				v = new AstNested(v);
+				v = intern(new AstNested(v), v);
 				break;
 		}
 		return v;
@@ -675,7 +767,7 @@ public class Parser {
 			}
 		}
 		consumeToken(RPAREN);
-		return new AstParameters(l);
+		return intern(new AstParameters(l), l);
 	}
 	
 	/**
@@ -685,27 +777,29 @@ public class Parser {
 		AstNode v = null;
 		switch (token.getSymbol()) {
 			case TRUE:
-				v = new AstBoolean(true);
+				v = intern(new AstBoolean(true), true);
 				consumeToken();
 				break;
 			case FALSE:
-				v = new AstBoolean(false);
+				v = intern(new AstBoolean(false), false);
 				consumeToken();
 				break;
 			case STRING:
-				v = new AstString(token.getImage());
+				v = intern(new AstString(token.getImage()), token.getImage());
 				consumeToken();
 				break;
 			case INTEGER:
-				v = new AstNumber(parseInteger(token.getImage()));
+				Number integer = parseInteger(token.getImage());
+				v = intern(new AstNumber(integer), integer);
 				consumeToken();
 				break;
 			case FLOAT:
-				v = new AstNumber(parseFloat(token.getImage()));
+				Number number = parseFloat(token.getImage());
+				v = intern(new AstNumber(number), number);
 				consumeToken();
 				break;			
 			case NULL:
-				v = new AstNull();
+				v = intern(new AstNull());
 				consumeToken();
 				break;
 			case EXTENSION:
@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.odysseus.el.tree.PartitionedTreeCache;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.VersionedTreeCache;
+
+/**
+ * Concurrent (thread-safe) partitioned tree cache. Each partition (e.g. a tenant) is a FIFO cache
+ * with its own capacity, so that one partition adding lots of trees doesn't evict the trees of
+ * others. Trees evicted from a partition move to a shared overflow cache, where they are found by
+ * all partitions until they are evicted from there, too. Partitions are created on demand, so
+ * partition keys should be taken from a bounded set.
+ */
+public final class PartitionedCache implements PartitionedTreeCache, VersionedTreeCache {
+	private static final Object DEFAULT_PARTITION = new Object();
+
+	private final class Partition {
+		final ConcurrentMap<String, Tree> map = new ConcurrentHashMap<String, Tree>();
+		final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+		final AtomicInteger size = new AtomicInteger();
+
+		void put(String expression, Tree tree) {
+			if (map.putIfAbsent(expression, tree) == null) {
+				queue.offer(expression);
+				if (size.incrementAndGet() > partitionCapacity) {
+					size.decrementAndGet();
+					String eldest = queue.poll();
+					Tree evicted = map.remove(eldest);
+					if (evicted != null && overflow != null) {
+						overflow.put(eldest, evicted);
+					} else if (evicted != null) {
+						evictions.incrementAndGet();
+					}
+				}
+			}
+		}
+	}
+
+	private final ConcurrentMap<Object, Partition> partitions;
+	private final Cache overflow;
+	private final int partitionCapacity;
+	private final AtomicLong evictions;
+
+	/**
+	 * Creates a new cache, where each partition as well as the overflow cache have the
+	 * specified capacity.
+	 * 
+	 * @param capacity
+	 *            Partition and overflow cache size.
+	 */
+	public PartitionedCache(int capacity) {
+		this(capacity, capacity);
+	}
+
+	/**
+	 * Creates a new cache with the specified partition and overflow capacities.
+	 * 
+	 * @param partitionCapacity
+	 *            Size of each partition. The actual size may exceed it temporarily.
+	 * @param overflowCapacity
+	 *            Size of the shared overflow cache (<code>0</code> for none).
+	 */
+	public PartitionedCache(int partitionCapacity, int overflowCapacity) {
+		this.partitions = new ConcurrentHashMap<Object, Partition>();
+		this.overflow = overflowCapacity > 0 ? new Cache(overflowCapacity) : null;
+		this.partitionCapacity = partitionCapacity;
+		this.evictions = new AtomicLong();
+	}
+
+	/**
+	 * @return number of partitions
+	 */
+	public int getPartitionCount() {
+		return partitions.size();
+	}
+
+	/**
+	 * @param partition partition key (<code>null</code> for the default partition)
+	 * @return number of trees in the given partition
+	 */
+	public int size(Object partition) {
+		Partition p = partitions.get(partition == null ? DEFAULT_PARTITION : partition);
+		return p == null ? 0 : p.size.get();
+	}
+
+	/**
+	 * @return number of trees in the overflow cache
+	 */
+	public int getOverflowSize() {
+		return overflow == null ? 0 : overflow.size();
+	}
+
+	public Tree get(String expression) {
+		return get(null, expression);
+	}
+
+	public void put(String expression, Tree tree) {
+		put(null, expression, tree);
+	}
+
+	public long getVersion() {
+		return evictions.get() + (overflow == null ? 0 : overflow.getVersion());
+	}
+
+	public void touch(String expression) {
+		// FIFO: hits don't matter
+	}
+
+	public Tree get(Object partition, String expression) {
+		Partition p = partitions.get(partition == null ? DEFAULT_PARTITION : partition);
+		Tree tree = p == null ? null : p.map.get(expression);
+		if (tree == null && overflow != null) {
+			tree = overflow.get(expression);
+		}
+		return tree;
+	}
+
+	public void put(Object partition, String expression, Tree tree) {
+		Object key = partition == null ? DEFAULT_PARTITION : partition;
+		Partition p = partitions.get(key);
+		if (p == null) {
+			Partition created = new Partition();
+			p = partitions.putIfAbsent(key, created);
+			if (p == null) {
+				p = created;
+			}
+		}
+		p.put(expression, tree);
+	}
+}
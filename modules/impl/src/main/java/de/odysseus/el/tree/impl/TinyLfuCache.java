@@ -0,0 +1,371 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.odysseus.el.tree.EnumerableTreeCache;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.VersionedTreeCache;
+
+/**
+ * Concurrent (thread-safe) tree cache with frequency based admission (W-TinyLFU).
+ * 
+ * New entries enter a small LRU window. Entries leaving the window are admitted to the main area (a
+ * segmented LRU with a probation and a protected segment) only if they have been used more often
+ * than the main area's eviction victim. Usage frequencies are estimated by a compact count-min
+ * sketch, which is aged periodically. This way, a burst of expressions used only once does not
+ * flush the frequently used trees.
+ * 
+ * Lookups do not block: hits are recorded in striped, lossy buffers, which are applied to the
+ * eviction policy in batches by whichever thread gets hold of the policy lock.
+ */
+public final class TinyLfuCache implements EnumerableTreeCache, VersionedTreeCache {
+	private static final int NEW = 0;
+	private static final int WINDOW = 1;
+	private static final int PROBATION = 2;
+	private static final int PROTECTED = 3;
+	private static final int DEAD = 4;
+
+	private static final class Node {
+		final String key;
+		final Tree tree;
+		Node prev;
+		Node next;
+		int queue = NEW;
+
+		Node(String key, Tree tree) {
+			this.key = key;
+			this.tree = tree;
+		}
+	}
+
+	/**
+	 * Doubly linked LRU list of nodes, from least to most recently used.
+	 */
+	private static final class AccessOrder {
+		Node head;
+		Node tail;
+		int size;
+
+		void add(Node node) {
+			node.prev = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			size++;
+		}
+
+		void remove(Node node) {
+			if (node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = node.next = null;
+			size--;
+		}
+
+		void moveToTail(Node node) {
+			if (node != tail) {
+				remove(node);
+				add(node);
+			}
+		}
+	}
+
+	/**
+	 * Count-min sketch with 4-bit counters, halved after a sample period.
+	 */
+	private static final class FrequencySketch {
+		private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+		};
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private final long[] table;
+		private final int sampleSize;
+		private int size;
+
+		FrequencySketch(int capacity) {
+			int length = 8;
+			while (length < capacity && length < (1 << 30)) {
+				length <<= 1;
+			}
+			table = new long[length];
+			sampleSize = capacity < Integer.MAX_VALUE / 10 ? 10 * capacity : Integer.MAX_VALUE;
+		}
+
+		int frequency(String key) {
+			int hash = spread(key.hashCode());
+			int start = (hash & 3) << 2;
+			int frequency = 15;
+			for (int i = 0; i < 4; i++) {
+				int offset = (start + i) << 2;
+				frequency = Math.min(frequency, (int) ((table[indexOf(hash, i)] >>> offset) & 15L));
+			}
+			return frequency;
+		}
+
+		void increment(String key) {
+			int hash = spread(key.hashCode());
+			int start = (hash & 3) << 2;
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				int index = indexOf(hash, i);
+				int offset = (start + i) << 2;
+				if (((table[index] >>> offset) & 15L) != 15L) {
+					table[index] += 1L << offset;
+					added = true;
+				}
+			}
+			if (added && ++size == sampleSize) {
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (table[i] >>> 1) & RESET_MASK;
+				}
+				size >>>= 1;
+			}
+		}
+
+		private int indexOf(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			h += h >>> 32;
+			return (int) h & (table.length - 1);
+		}
+
+		private static int spread(int hash) {
+			hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+			hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+			return (hash >>> 16) ^ hash;
+		}
+	}
+
+	/**
+	 * Lossy buffer recording hits of one stripe.
+	 */
+	private static final class ReadBuffer {
+		static final int SIZE = 16; // power of two
+		final AtomicReferenceArray<Node> nodes = new AtomicReferenceArray<Node>(SIZE);
+		final AtomicInteger writes = new AtomicInteger();
+	}
+
+	private final ConcurrentHashMap<String, Node> map;
+	private final ReadBuffer[] readBuffers;
+	private final ConcurrentLinkedQueue<Node> writeBuffer;
+	private final ReentrantLock policyLock;
+
+	// policy state, guarded by policyLock
+	private final FrequencySketch sketch;
+	private final AccessOrder window;
+	private final AccessOrder probation;
+	private final AccessOrder protectedSegment;
+	private final int windowCapacity;
+	private final int mainCapacity;
+	private final int protectedCapacity;
+	private volatile long evictions; // written with policyLock held
+
+	/**
+	 * Creates a new cache with the specified capacity and default concurrency level (16).
+	 * 
+	 * @param capacity
+	 *            Cache size. The actual size may exceed it temporarily.
+	 */
+	public TinyLfuCache(int capacity) {
+		this(capacity, 16);
+	}
+
+	/**
+	 * Creates a new cache with the specified capacity and concurrency level.
+	 * 
+	 * @param capacity
+	 *            Cache size. The actual size may exceed it temporarily.
+	 * @param concurrencyLevel
+	 *            The estimated number of concurrently updating threads. Also determines the
+	 *            number of read buffer stripes.
+	 */
+	public TinyLfuCache(int capacity, int concurrencyLevel) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		}
+		this.map = new ConcurrentHashMap<String, Node>(16, 0.75f, concurrencyLevel);
+		int stripes = 1;
+		while (stripes < concurrencyLevel && stripes < 64) {
+			stripes <<= 1;
+		}
+		this.readBuffers = new ReadBuffer[stripes];
+		for (int i = 0; i < stripes; i++) {
+			readBuffers[i] = new ReadBuffer();
+		}
+		this.writeBuffer = new ConcurrentLinkedQueue<Node>();
+		this.policyLock = new ReentrantLock();
+		this.sketch = new FrequencySketch(capacity);
+		this.window = new AccessOrder();
+		this.probation = new AccessOrder();
+		this.protectedSegment = new AccessOrder();
+		this.windowCapacity = Math.max(1, capacity / 100);
+		this.mainCapacity = capacity - windowCapacity;
+		this.protectedCapacity = mainCapacity * 4 / 5;
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public Map<String, Tree> snapshot() {
+		Map<String, Tree> result = new HashMap<String, Tree>();
+		for (Node node : map.values()) {
+			result.put(node.key, node.tree);
+		}
+		return result;
+	}
+
+	public Tree get(String expression) {
+		Node node = map.get(expression);
+		if (node == null) {
+			return null;
+		}
+		record(node);
+		return node.tree;
+	}
+
+	public long getVersion() {
+		return evictions;
+	}
+
+	/**
+	 * Record a hit served by a near cache, so that the policy sees it like a hit served by
+	 * {@link #get(String)}.
+	 */
+	public void touch(String expression) {
+		Node node = map.get(expression);
+		if (node != null) {
+			record(node);
+		}
+	}
+
+	/**
+	 * Buffer a hit, draining the buffers every now and then.
+	 */
+	private void record(Node node) {
+		ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+		int index = buffer.writes.getAndIncrement();
+		buffer.nodes.lazySet(index & (ReadBuffer.SIZE - 1), node);
+		if ((index & (ReadBuffer.SIZE / 2 - 1)) == 0) {
+			drain();
+		}
+	}
+
+	public void put(String expression, Tree tree) {
+		Node node = new Node(expression, tree);
+		if (map.putIfAbsent(expression, node) == null) {
+			writeBuffer.offer(node);
+			drain();
+		}
+	}
+
+	/**
+	 * Apply buffered reads and writes to the policy, unless another thread is already doing so.
+	 */
+	private void drain() {
+		if (policyLock.tryLock()) {
+			try {
+				Node node;
+				while ((node = writeBuffer.poll()) != null) {
+					onAdd(node);
+				}
+				for (ReadBuffer buffer : readBuffers) {
+					for (int i = 0; i < ReadBuffer.SIZE; i++) {
+						node = buffer.nodes.getAndSet(i, null);
+						if (node != null) {
+							onAccess(node);
+						}
+					}
+				}
+			} finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	private void onAccess(Node node) {
+		if (node.queue == NEW || node.queue == DEAD) {
+			return; // not yet added or already evicted
+		}
+		sketch.increment(node.key);
+		switch (node.queue) {
+			case WINDOW:
+				window.moveToTail(node);
+				break;
+			case PROBATION:
+				probation.remove(node);
+				node.queue = PROTECTED;
+				protectedSegment.add(node);
+				if (protectedSegment.size > protectedCapacity) {
+					Node demoted = protectedSegment.head;
+					protectedSegment.remove(demoted);
+					demoted.queue = PROBATION;
+					probation.add(demoted);
+				}
+				break;
+			case PROTECTED:
+				protectedSegment.moveToTail(node);
+				break;
+		}
+	}
+
+	private void onAdd(Node node) {
+		sketch.increment(node.key);
+		node.queue = WINDOW;
+		window.add(node);
+		while (window.size > windowCapacity) {
+			Node candidate = window.head;
+			window.remove(candidate);
+			if (probation.size + protectedSegment.size < mainCapacity) {
+				candidate.queue = PROBATION;
+				probation.add(candidate);
+			} else {
+				Node victim = probation.head != null ? probation.head : protectedSegment.head;
+				if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+					(victim.queue == PROBATION ? probation : protectedSegment).remove(victim);
+					evict(victim);
+					candidate.queue = PROBATION;
+					probation.add(candidate);
+				} else {
+					evict(candidate);
+				}
+			}
+		}
+	}
+
+	private void evict(Node node) {
+		node.queue = DEAD;
+		map.remove(node.key, node);
+		evictions++;
+	}
+}
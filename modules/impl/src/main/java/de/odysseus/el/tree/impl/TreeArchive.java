@@ -0,0 +1,586 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.odysseus.el.tree.EnumerableTreeCache;
+import de.odysseus.el.tree.FunctionNode;
+import de.odysseus.el.tree.IdentifierNode;
+import de.odysseus.el.tree.Node;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeBuilder;
+import de.odysseus.el.tree.TreeBuilderException;
+import de.odysseus.el.tree.TreeCache;
+import de.odysseus.el.tree.TreeCompiler;
+import de.odysseus.el.tree.TreeStore;
+import de.odysseus.el.tree.impl.Builder.Feature;
+import de.odysseus.el.tree.impl.ast.AstBinary;
+import de.odysseus.el.tree.impl.ast.AstBoolean;
+import de.odysseus.el.tree.impl.ast.AstBracket;
+import de.odysseus.el.tree.impl.ast.AstChoice;
+import de.odysseus.el.tree.impl.ast.AstComposite;
+import de.odysseus.el.tree.impl.ast.AstDot;
+import de.odysseus.el.tree.impl.ast.AstEval;
+import de.odysseus.el.tree.impl.ast.AstFunction;
+import de.odysseus.el.tree.impl.ast.AstIdentifier;
+import de.odysseus.el.tree.impl.ast.AstMethod;
+import de.odysseus.el.tree.impl.ast.AstNested;
+import de.odysseus.el.tree.impl.ast.AstNode;
+import de.odysseus.el.tree.impl.ast.AstNull;
+import de.odysseus.el.tree.impl.ast.AstNumber;
+import de.odysseus.el.tree.impl.ast.AstParameters;
+import de.odysseus.el.tree.impl.ast.AstProperty;
+import de.odysseus.el.tree.impl.ast.AstString;
+import de.odysseus.el.tree.impl.ast.AstText;
+import de.odysseus.el.tree.impl.ast.AstUnary;
+
+/**
+ * Binary archive of parsed trees, used to warm up a tree cache after a restart without parsing
+ * all expressions again.
+ * An archive is versioned by the builder class and its enabled features. Reading an archive
+ * written for another builder version yields <code>null</code>, so that trees will be parsed as
+ * usual. Trees consisting of the standard node types created by {@link Parser} are stored as
+ * nodes. Other trees (e.g. compiled trees or trees containing nodes created by a custom parser)
+ * are stored by expression string and parsed again when the archive is read.
+ * If the builder is a {@link CompilingBuilder}, the version is taken from the builder it wraps
+ * and its compiler, and trees read as nodes are compiled.
+ * Archives are written to a temporary file, which then replaces the archive file, and are read
+ * from a memory mapped file.
+ */
+public final class TreeArchive {
+	private static final int MAGIC = 0x4a55454c; // "JUEL"
+	private static final int FORMAT = 2;
+
+	private static final byte ENTRY_EXPRESSION = 0;
+	private static final byte ENTRY_TREE = 1;
+
+	private static final byte BINARY = 1;
+	private static final byte BOOLEAN = 2;
+	private static final byte BRACKET = 3;
+	private static final byte CHOICE = 4;
+	private static final byte COMPOSITE = 5;
+	private static final byte DOT = 6;
+	private static final byte EVAL = 7;
+	private static final byte FUNCTION = 8;
+	private static final byte IDENTIFIER = 9;
+	private static final byte METHOD = 10;
+	private static final byte NESTED = 11;
+	private static final byte NULL = 12;
+	private static final byte LONG = 13;
+	private static final byte DOUBLE = 14;
+	private static final byte STRING = 15;
+	private static final byte TEXT = 16;
+	private static final byte UNARY = 17;
+
+	private static final AstBinary.Operator[] BINARY_OPERATORS = {
+		AstBinary.ADD, AstBinary.AND, AstBinary.DIV, AstBinary.EQ, AstBinary.GE, AstBinary.GT, AstBinary.LE,
+		AstBinary.LT, AstBinary.MOD, AstBinary.MUL, AstBinary.NE, AstBinary.OR, AstBinary.SUB
+	};
+
+	private static final AstUnary.Operator[] UNARY_OPERATORS = {
+		AstUnary.EMPTY, AstUnary.NEG, AstUnary.NOT
+	};
+
+	/**
+	 * Save the trees cached by a tree store.
+	 * @param store tree store, whose cache must implement {@link EnumerableTreeCache} (an
+	 *            {@link InstrumentedCache} must wrap such a cache)
+	 * @param file archive file
+	 * @return number of trees saved
+	 * @throws IOException on write error
+	 * @throws IllegalArgumentException if the store's cache cannot list its trees
+	 */
+	public static int save(TreeStore store, File file) throws IOException {
+		if (!isEnumerable(store.getCache())) {
+			throw new IllegalArgumentException("Cannot list trees of cache " + store.getCache());
+		}
+		Map<String, Tree> trees = ((EnumerableTreeCache) store.getCache()).snapshot();
+		new TreeArchive(store.getBuilder()).write(file, trees);
+		return trees.size();
+	}
+
+	/**
+	 * Load an archive into the cache of a tree store. Nothing is loaded if the file doesn't
+	 * exist, if the store has no cache, if the archive has been written for another builder or
+	 * if it is not a valid archive (e.g. truncated), so that trees will be parsed as usual.
+	 * @param store tree store
+	 * @param file archive file
+	 * @return number of trees loaded
+	 * @throws IOException on read error
+	 */
+	public static int load(TreeStore store, File file) throws IOException {
+		TreeCache cache = store.getCache();
+		if (cache == null || !file.exists()) {
+			return 0;
+		}
+		Map<String, Tree> trees;
+		try {
+			trees = new TreeArchive(store.getBuilder()).read(file);
+		} catch (InvalidArchiveException e) {
+			return 0;
+		}
+		if (trees == null) {
+			return 0;
+		}
+		for (Map.Entry<String, Tree> entry : trees.entrySet()) {
+			cache.put(entry.getKey(), entry.getValue());
+		}
+		return trees.size();
+	}
+
+	/**
+	 * Thrown if a file is not a valid archive.
+	 */
+	private static final class InvalidArchiveException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		InvalidArchiveException(String message) {
+			super(message);
+		}
+	}
+
+	private static boolean isEnumerable(TreeCache cache) {
+		if (cache instanceof InstrumentedCache) {
+			return ((InstrumentedCache) cache).isEnumerable();
+		}
+		return cache instanceof EnumerableTreeCache;
+	}
+
+	private final TreeBuilder builder;
+	private final TreeCompiler compiler;
+	private final String version;
+	private final boolean varargs;
+	private final boolean ignoreReturnType;
+	private final boolean bindCache;
+
+	/**
+	 * Create an archive for trees built by the given builder.
+	 * @param builder tree builder
+	 */
+	public TreeArchive(TreeBuilder builder) {
+		this.builder = builder;
+		StringBuilder version = new StringBuilder(builder.getClass().getName());
+		TreeBuilder parser = builder;
+		if (builder instanceof CompilingBuilder) {
+			parser = ((CompilingBuilder) builder).getBuilder();
+			this.compiler = ((CompilingBuilder) builder).getCompiler();
+			version.append(',').append(parser.getClass().getName());
+			version.append(',').append(compiler.getClass().getName());
+		} else {
+			this.compiler = null;
+		}
+		if (parser instanceof Builder) {
+			for (Feature feature : Feature.values()) {
+				if (((Builder) parser).isEnabled(feature)) {
+					version.append(',').append(feature);
+				}
+			}
+			this.varargs = ((Builder) parser).isEnabled(Feature.VARARGS);
+			this.ignoreReturnType = ((Builder) parser).isEnabled(Feature.IGNORE_RETURN_TYPE);
+			this.bindCache = ((Builder) parser).isEnabled(Feature.BIND_CACHE);
+		} else {
+			this.varargs = false;
+			this.ignoreReturnType = false;
+			this.bindCache = false;
+		}
+		this.version = version.toString();
+	}
+
+	/**
+	 * @return archive version, consisting of builder class name and enabled features
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Write trees to an archive file. The trees are written to a temporary file in the same
+	 * directory, which is then renamed to the archive file, so that an interrupted write never
+	 * leaves a truncated archive.
+	 * @param file archive file
+	 * @param trees map from expression strings to trees
+	 * @throws IOException on write error
+	 */
+	public void write(File file, Map<String, Tree> trees) throws IOException {
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			write(new FileOutputStream(temp), trees);
+			if (!temp.renameTo(file)) {
+				file.delete(); // rename doesn't replace files on some platforms
+				if (!temp.renameTo(file)) {
+					throw new IOException("Cannot rename " + temp + " to " + file);
+				}
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private void write(FileOutputStream stream, Map<String, Tree> trees) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			writeString(out, version);
+			out.writeInt(trees.size());
+			for (Map.Entry<String, Tree> entry : trees.entrySet()) {
+				writeString(out, entry.getKey());
+				if (isSupported(entry.getValue())) {
+					out.writeByte(ENTRY_TREE);
+					writeTree(out, entry.getValue());
+				} else {
+					out.writeByte(ENTRY_EXPRESSION);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Answer <code>true</code> if the given tree can be stored as nodes.
+	 */
+	static boolean isSupported(Tree tree) {
+		return isSupported(tree.getRoot());
+	}
+
+	/**
+	 * Write a tree's nodes. The tree must be supported.
+	 */
+	static void writeTree(DataOutputStream out, Tree tree) throws IOException {
+		out.writeBoolean(tree.isDeferred());
+		out.writeLong(tree.getStructuralHash());
+		out.writeInt(count(tree.getFunctionNodes()));
+		out.writeInt(count(tree.getIdentifierNodes()));
+		writeNode(out, tree.getRoot());
+	}
+
+	/**
+	 * Read trees from an archive file.
+	 * @param file archive file
+	 * @return map from expression strings to trees or <code>null</code> if the archive has been
+	 *         written for another builder version
+	 * @throws IOException on read error or if the file is not a valid archive
+	 */
+	public Map<String, Tree> read(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			return read(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			in.close();
+		}
+	}
+
+	private Map<String, Tree> read(ByteBuffer buffer) throws IOException {
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new InvalidArchiveException("Not a tree archive");
+			}
+			if (buffer.getInt() != FORMAT || !version.equals(readString(buffer))) {
+				return null;
+			}
+			int size = buffer.getInt();
+			Map<String, Tree> trees = new HashMap<String, Tree>(size * 4 / 3 + 1);
+			for (int i = 0; i < size; i++) {
+				String expression = readString(buffer);
+				if (buffer.get() == ENTRY_TREE) {
+					trees.put(expression, readTree(buffer, expression));
+				} else {
+					try {
+						trees.put(expression, builder.build(expression));
+					} catch (TreeBuilderException e) {
+						// skip
+					}
+				}
+			}
+			return trees;
+		} catch (BufferUnderflowException e) {
+			throw new InvalidArchiveException("Truncated tree archive");
+		} catch (RuntimeException e) {
+			throw new InvalidArchiveException("Corrupt tree archive: " + e);
+		}
+	}
+
+	/**
+	 * Read a tree's nodes. Compile the tree, if our builder is a {@link CompilingBuilder}.
+	 */
+	Tree readTree(ByteBuffer buffer, String expression) throws IOException {
+		boolean deferred = buffer.get() != 0;
+		long structuralHash = buffer.getLong();
+		FunctionNode[] functions = new FunctionNode[buffer.getInt()];
+		IdentifierNode[] identifiers = new IdentifierNode[buffer.getInt()];
+		AstNode root = readNode(buffer, functions, identifiers);
+		List<FunctionNode> functionList = toList(functions);
+		List<IdentifierNode> identifierList = toList(identifiers);
+		int size = Tree.estimateSize(root, functionList, identifierList, expression.length());
+		Tree tree = new Tree(root, functionList, identifierList, deferred, size, structuralHash);
+		if (bindCache) {
+			tree.enableBindCache();
+		}
+		return compiler == null ? tree : compiler.compile(tree);
+	}
+
+	private static <T> List<T> toList(T[] nodes) throws IOException {
+		if (nodes.length == 0) {
+			return Collections.emptyList();
+		}
+		for (T node : nodes) {
+			if (node == null) {
+				throw new InvalidArchiveException("Corrupt tree archive: missing node");
+			}
+		}
+		return new ArrayList<T>(Arrays.asList(nodes));
+	}
+
+	private static int count(Iterable<?> nodes) {
+		int count = 0;
+		for (@SuppressWarnings("unused") Object node : nodes) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Answer <code>true</code> if the given node and its descendants can be stored as nodes.
+	 */
+	private static boolean isSupported(Node node) {
+		Class<?> type = node.getClass();
+		if (type == AstBinary.class) {
+			if (indexOf(BINARY_OPERATORS, ((AstBinary) node).getOperator()) < 0) {
+				return false;
+			}
+		} else if (type == AstUnary.class) {
+			if (indexOf(UNARY_OPERATORS, ((AstUnary) node).getOperator()) < 0) {
+				return false;
+			}
+		} else if (type == AstNumber.class) {
+			Object value = ((AstNumber) node).eval(null, null);
+			return value instanceof Long || value instanceof Double;
+		} else if (type != AstBoolean.class && type != AstBracket.class && type != AstChoice.class
+				&& type != AstComposite.class && type != AstDot.class && type != AstEval.class
+				&& type != AstFunction.class && type != AstIdentifier.class && type != AstMethod.class
+				&& type != AstNested.class && type != AstNull.class && type != AstParameters.class
+				&& type != AstString.class && type != AstText.class) {
+			return false;
+		}
+		for (int i = 0; i < node.getCardinality(); i++) {
+			if (!isSupported(node.getChild(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(Object[] array, Object value) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeInt(value.length());
+		out.writeChars(value);
+	}
+
+	static String readString(ByteBuffer buffer) {
+		char[] chars = new char[buffer.getInt()];
+		buffer.asCharBuffer().get(chars);
+		buffer.position(buffer.position() + 2 * chars.length);
+		return new String(chars);
+	}
+
+	private static void writeNodes(DataOutputStream out, Node node) throws IOException {
+		out.writeInt(node.getCardinality());
+		for (int i = 0; i < node.getCardinality(); i++) {
+			writeNode(out, node.getChild(i));
+		}
+	}
+
+	private static void writeNode(DataOutputStream out, Node child) throws IOException {
+		AstNode node = (AstNode) child;
+		Class<?> type = node.getClass();
+		if (type == AstBinary.class) {
+			out.writeByte(BINARY);
+			out.writeByte(indexOf(BINARY_OPERATORS, ((AstBinary) node).getOperator()));
+			writeNode(out, node.getChild(0));
+			writeNode(out, node.getChild(1));
+		} else if (type == AstBoolean.class) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) node.eval(null, null));
+		} else if (type == AstBracket.class) {
+			out.writeByte(BRACKET);
+			out.writeBoolean(node.isLeftValue());
+			out.writeBoolean(((AstBracket) node).isStrict());
+			writeNode(out, node.getChild(0));
+			writeNode(out, node.getChild(1));
+		} else if (type == AstChoice.class) {
+			out.writeByte(CHOICE);
+			writeNode(out, node.getChild(0));
+			writeNode(out, node.getChild(1));
+			writeNode(out, node.getChild(2));
+		} else if (type == AstComposite.class) {
+			out.writeByte(COMPOSITE);
+			writeNodes(out, node);
+		} else if (type == AstDot.class) {
+			out.writeByte(DOT);
+			out.writeBoolean(node.isLeftValue());
+			writeString(out, ((AstDot) node).getPropertyName());
+			writeNode(out, node.getChild(0));
+		} else if (type == AstEval.class) {
+			out.writeByte(EVAL);
+			out.writeBoolean(((AstEval) node).isDeferred());
+			writeNode(out, node.getChild(0));
+		} else if (type == AstFunction.class) {
+			out.writeByte(FUNCTION);
+			writeString(out, ((AstFunction) node).getName());
+			out.writeInt(((AstFunction) node).getIndex());
+			writeNodes(out, node.getChild(0));
+		} else if (type == AstIdentifier.class) {
+			out.writeByte(IDENTIFIER);
+			writeString(out, ((AstIdentifier) node).getName());
+			out.writeInt(((AstIdentifier) node).getIndex());
+		} else if (type == AstMethod.class) {
+			out.writeByte(METHOD);
+			writeNode(out, node.getChild(0));
+			writeNodes(out, node.getChild(1));
+		} else if (type == AstNested.class) {
+			out.writeByte(NESTED);
+			writeNode(out, node.getChild(0));
+		} else if (type == AstNull.class) {
+			out.writeByte(NULL);
+		} else if (type == AstNumber.class) {
+			Object value = node.eval(null, null);
+			if (value instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long) value);
+			} else {
+				out.writeByte(DOUBLE);
+				out.writeDouble((Double) value);
+			}
+		} else if (type == AstString.class) {
+			out.writeByte(STRING);
+			writeString(out, (String) node.eval(null, null));
+		} else if (type == AstText.class) {
+			out.writeByte(TEXT);
+			writeString(out, (String) node.eval(null, null));
+		} else if (type == AstUnary.class) {
+			out.writeByte(UNARY);
+			out.writeByte(indexOf(UNARY_OPERATORS, ((AstUnary) node).getOperator()));
+			writeNode(out, node.getChild(0));
+		} else {
+			throw new IllegalArgumentException("Unsupported node: " + type);
+		}
+	}
+
+	private List<AstNode> readNodes(ByteBuffer buffer, FunctionNode[] functions, IdentifierNode[] identifiers) throws IOException {
+		int size = buffer.getInt();
+		List<AstNode> nodes = new ArrayList<AstNode>(size);
+		for (int i = 0; i < size; i++) {
+			nodes.add(readNode(buffer, functions, identifiers));
+		}
+		return nodes;
+	}
+
+	private AstNode readNode(ByteBuffer buffer, FunctionNode[] functions, IdentifierNode[] identifiers) throws IOException {
+		byte tag = buffer.get();
+		switch (tag) {
+			case BINARY: {
+				AstBinary.Operator operator = BINARY_OPERATORS[buffer.get()];
+				AstNode left = readNode(buffer, functions, identifiers);
+				return new AstBinary(left, readNode(buffer, functions, identifiers), operator);
+			}
+			case BOOLEAN:
+				return new AstBoolean(buffer.get() != 0);
+			case BRACKET: {
+				boolean lvalue = buffer.get() != 0;
+				boolean strict = buffer.get() != 0;
+				AstNode base = readNode(buffer, functions, identifiers);
+				return new AstBracket(base, readNode(buffer, functions, identifiers), lvalue, strict, ignoreReturnType);
+			}
+			case CHOICE: {
+				AstNode question = readNode(buffer, functions, identifiers);
+				AstNode yes = readNode(buffer, functions, identifiers);
+				return new AstChoice(question, yes, readNode(buffer, functions, identifiers));
+			}
+			case COMPOSITE:
+				return new AstComposite(readNodes(buffer, functions, identifiers));
+			case DOT: {
+				boolean lvalue = buffer.get() != 0;
+				String property = readString(buffer);
+				return new AstDot(readNode(buffer, functions, identifiers), property, lvalue, ignoreReturnType);
+			}
+			case EVAL: {
+				boolean deferred = buffer.get() != 0;
+				return new AstEval(readNode(buffer, functions, identifiers), deferred);
+			}
+			case FUNCTION: {
+				String name = readString(buffer);
+				int index = buffer.getInt();
+				AstParameters params = new AstParameters(readNodes(buffer, functions, identifiers));
+				AstFunction function = new AstFunction(name, index, params, varargs);
+				functions[index] = function;
+				return function;
+			}
+			case IDENTIFIER: {
+				String name = readString(buffer);
+				int index = buffer.getInt();
+				AstIdentifier identifier = new AstIdentifier(name, index, ignoreReturnType);
+				identifiers[index] = identifier;
+				return identifier;
+			}
+			case METHOD: {
+				AstProperty property = (AstProperty) readNode(buffer, functions, identifiers);
+				return new AstMethod(property, new AstParameters(readNodes(buffer, functions, identifiers)));
+			}
+			case NESTED:
+				return new AstNested(readNode(buffer, functions, identifiers));
+			case NULL:
+				return new AstNull();
+			case LONG:
+				return new AstNumber(buffer.getLong());
+			case DOUBLE:
+				return new AstNumber(buffer.getDouble());
+			case STRING:
+				return new AstString(readString(buffer));
+			case TEXT:
+				return new AstText(readString(buffer));
+			case UNARY: {
+				AstUnary.Operator operator = UNARY_OPERATORS[buffer.get()];
+				return new AstUnary(readNode(buffer, functions, identifiers), operator);
+			}
+			default:
+				throw new InvalidArchiveException("Corrupt tree archive: unknown node type " + tag);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.odysseus.el.tree.EnumerableTreeCache;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.VersionedTreeCache;
+
+/**
+ * Concurrent (thread-safe) FIFO tree cache bounded by weight rather than by number of entries.
+ * The weight of an entry is the estimated number of bytes retained by its tree (see
+ * {@link Tree#getSizeEstimate()}) plus its expression string and some per entry overhead.
+ * After the total weight exceeded the limit, the oldest entries are removed, when adding a new entry.
+ * A tree whose weight alone exceeds the limit is not cached at all.
+ */
+public final class WeightedCache implements EnumerableTreeCache, VersionedTreeCache {
+	/**
+	 * Average entry weight in bytes assumed by {@link #WeightedCache(int)}.
+	 */
+	public static final int AVERAGE_WEIGHT = 1024;
+
+	private static final int ENTRY_WEIGHT = 64;
+
+	private final ConcurrentMap<String, Tree> map;
+	private final ConcurrentLinkedQueue<String> queue;
+	private final AtomicLong weight;
+	private final AtomicLong evictions;
+	private final long maxWeight;
+
+	/**
+	 * Creates a new cache, which can hold about the specified number of entries of average weight
+	 * ({@value #AVERAGE_WEIGHT} bytes). This constructor lets the cache be configured by entry count
+	 * via the <code>de.odysseus.el.tree.TreeCache</code> property.
+	 * 
+	 * @param capacity
+	 *            Cache size in entries of average weight.
+	 */
+	public WeightedCache(int capacity) {
+		this(capacity * (long) AVERAGE_WEIGHT);
+	}
+
+	/**
+	 * Creates a new cache with the specified maximum weight and default concurrency level (16).
+	 * 
+	 * @param maxWeight
+	 *            Maximum total weight (estimated bytes). The actual weight may exceed it temporarily.
+	 */
+	public WeightedCache(long maxWeight) {
+		this(maxWeight, 16);
+	}
+
+	/**
+	 * Creates a new cache with the specified maximum weight and concurrency level.
+	 * 
+	 * @param maxWeight
+	 *            Maximum total weight (estimated bytes). The actual weight may exceed it temporarily.
+	 * @param concurrencyLevel
+	 *            The estimated number of concurrently updating threads. The
+	 *            implementation performs internal sizing to try to accommodate
+	 *            this many threads.
+	 */
+	public WeightedCache(long maxWeight, int concurrencyLevel) {
+		this.map = new ConcurrentHashMap<String, Tree>(16, 0.75f, concurrencyLevel);
+		this.queue = new ConcurrentLinkedQueue<String>();
+		this.weight = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * @return number of cached trees
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return total weight of cached trees
+	 */
+	public long weight() {
+		return weight.get();
+	}
+
+	/**
+	 * @return maximum total weight
+	 */
+	public long maxWeight() {
+		return maxWeight;
+	}
+
+	public Tree get(String expression) {
+		return map.get(expression);
+	}
+
+	public Map<String, Tree> snapshot() {
+		return new HashMap<String, Tree>(map);
+	}
+
+	public void put(String expression, Tree tree) {
+		long w = weigh(expression, tree);
+		if (w > maxWeight) {
+			return;
+		}
+		if (map.putIfAbsent(expression, tree) == null) {
+			queue.offer(expression);
+			if (weight.addAndGet(w) > maxWeight) {
+				evict();
+			}
+		}
+	}
+
+	public long getVersion() {
+		return evictions.get();
+	}
+
+	public void touch(String expression) {
+		// FIFO: hits don't matter
+	}
+
+	private void evict() {
+		while (weight.get() > maxWeight) {
+			String expression = queue.poll();
+			if (expression == null) {
+				break;
+			}
+			Tree tree = map.remove(expression);
+			if (tree != null) {
+				weight.addAndGet(-weigh(expression, tree));
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Weight of a cache entry: tree size estimate, expression string and entry overhead.
+	 */
+	static long weigh(String expression, Tree tree) {
+		return tree.getSizeEstimate() + 2L * expression.length() + ENTRY_WEIGHT;
+	}
+}
@@ -92,13 +92,62 @@ public class AstBinary extends AstRightValue {
 		@Override public String toString() { return "-"; }
 	};
 
+	/*
+	 * Operator codes of standard operators which support specialization.
+	 */
+	private static final int OP_NONE = 0;
+	private static final int OP_ADD = 1;
+	private static final int OP_SUB = 2;
+	private static final int OP_MUL = 3;
+	private static final int OP_DIV = 4;
+	private static final int OP_MOD = 5;
+	private static final int OP_EQ = 6;
+	private static final int OP_NE = 7;
+	private static final int OP_LT = 8;
+	private static final int OP_LE = 9;
+	private static final int OP_GT = 10;
+	private static final int OP_GE = 11;
+
+	/*
+	 * Specialization states.
+	 */
+	private static final int UNINITIALIZED = 0;
+	private static final int LONG_LONG = 1;
+	private static final int DOUBLE_DOUBLE = 2;
+	private static final int STRING_STRING = 3;
+	private static final int GENERIC = 4;
+
+	private static int code(Operator operator) {
+		if (operator == ADD) return OP_ADD;
+		if (operator == SUB) return OP_SUB;
+		if (operator == MUL) return OP_MUL;
+		if (operator == DIV) return OP_DIV;
+		if (operator == MOD) return OP_MOD;
+		if (operator == EQ) return OP_EQ;
+		if (operator == NE) return OP_NE;
+		if (operator == LT) return OP_LT;
+		if (operator == LE) return OP_LE;
+		if (operator == GT) return OP_GT;
+		if (operator == GE) return OP_GE;
+		return OP_NONE;
+	}
+
 	private final Operator operator;
 	private final AstNode left, right;
+	private final int code;
+
+	/**
+	 * Specialization state. Updated without synchronization: each specialized path
+	 * checks its guard, so a stale state may only cause an unnecessary deoptimization.
+	 */
+	private int state;
 
 	public AstBinary(AstNode left, AstNode right, Operator operator) {
 		this.left = left;
 		this.right = right;
 		this.operator = operator;
+		this.code = code(operator);
+		this.state = code == OP_NONE ? GENERIC : UNINITIALIZED;
 	}
 
 	public Operator getOperator() {
@@ -107,7 +156,109 @@ public class AstBinary extends AstRightValue {
 
 	@Override 
 	public Object eval(Bindings bindings, ELContext context) {
-		return operator.eval(bindings, context, left, right);
+		if (state == GENERIC) {
+			return operator.eval(bindings, context, left, right);
+		}
+		return apply(bindings, left.eval(bindings, context), right.eval(bindings, context));
+	}
+
+	/**
+	 * Apply standard operator to the given operands.
+	 * On first use, the node observes the operand types and specializes to long, double or string
+	 * operands (provided that the default type converter is used). A specialized node evaluates the
+	 * operator directly, avoiding the generic type dispatch in {@link NumberOperations} and
+	 * {@link BooleanOperations}. If a guard fails, the node falls back to the generic operator
+	 * for good.
+	 */
+	private Object apply(Bindings bindings, Object o1, Object o2) {
+		switch (state) {
+			case LONG_LONG:
+				if (o1 instanceof Long && o2 instanceof Long && bindings.getConverter() == TypeConverter.DEFAULT) {
+					return apply(((Long)o1).longValue(), ((Long)o2).longValue());
+				}
+				break;
+			case DOUBLE_DOUBLE:
+				if (o1 instanceof Double && o2 instanceof Double && bindings.getConverter() == TypeConverter.DEFAULT) {
+					return apply((Double)o1, (Double)o2);
+				}
+				break;
+			case STRING_STRING:
+				if (o1 instanceof String && o2 instanceof String && bindings.getConverter() == TypeConverter.DEFAULT) {
+					return apply((String)o1, (String)o2);
+				}
+				break;
+			case UNINITIALIZED:
+				state = specialize(bindings, o1, o2);
+				if (state != GENERIC) {
+					return apply(bindings, o1, o2);
+				}
+				break;
+		}
+		state = GENERIC;
+		return ((SimpleOperator)operator).apply(bindings, o1, o2);
+	}
+
+	private int specialize(Bindings bindings, Object o1, Object o2) {
+		if (bindings.getConverter() == TypeConverter.DEFAULT && o1 != null && o2 != null && o1.getClass() == o2.getClass()) {
+			if (o1.getClass() == Long.class) {
+				return LONG_LONG;
+			}
+			if (o1.getClass() == Double.class) {
+				return DOUBLE_DOUBLE;
+			}
+			if (o1.getClass() == String.class && code >= OP_EQ) {
+				return STRING_STRING;
+			}
+		}
+		return GENERIC;
+	}
+
+	private Object apply(long l1, long l2) {
+		switch (code) {
+			case OP_ADD: return l1 + l2;
+			case OP_SUB: return l1 - l2;
+			case OP_MUL: return l1 * l2;
+			case OP_DIV: return (double)l1 / (double)l2;
+			case OP_MOD: return l1 % l2;
+			case OP_EQ: return l1 == l2;
+			case OP_NE: return l1 != l2;
+			case OP_LT: return l1 < l2;
+			case OP_LE: return l1 <= l2;
+			case OP_GT: return l1 > l2;
+			case OP_GE: return l1 >= l2;
+		}
+		throw new IllegalStateException();
+	}
+
+	private Object apply(Double o1, Double o2) {
+		double d1 = o1.doubleValue();
+		double d2 = o2.doubleValue();
+		switch (code) {
+			case OP_ADD: return d1 + d2;
+			case OP_SUB: return d1 - d2;
+			case OP_MUL: return d1 * d2;
+			case OP_DIV: return d1 / d2;
+			case OP_MOD: return d1 % d2;
+			case OP_EQ: return o1.equals(o2); // Double.equals() semantics for NaN and -0.0
+			case OP_NE: return !o1.equals(o2);
+			case OP_LT: return o1 != o2 && d1 < d2;
+			case OP_LE: return o1 == o2 || !(d1 > d2);
+			case OP_GT: return o1 != o2 && d1 > d2;
+			case OP_GE: return o1 == o2 || !(d1 < d2);
+		}
+		throw new IllegalStateException();
+	}
+
+	private Object apply(String s1, String s2) {
+		switch (code) {
+			case OP_EQ: return s1.equals(s2);
+			case OP_NE: return !s1.equals(s2);
+			case OP_LT: return s1.compareTo(s2) < 0;
+			case OP_LE: return s1.compareTo(s2) <= 0;
+			case OP_GT: return s1.compareTo(s2) > 0;
+			case OP_GE: return s1.compareTo(s2) >= 0;
+		}
+		throw new IllegalStateException();
 	}
 
 	@Override
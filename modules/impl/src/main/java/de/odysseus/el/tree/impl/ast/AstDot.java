@@ -37,6 +37,13 @@ public class AstDot extends AstProperty {
 		return property;
 	}
 
+	/**
+	 * @return the property name
+	 */
+	public String getPropertyName() {
+		return property;
+	}
+
 	@Override
 	public String toString() {
 		return ". " + property;
@@ -15,25 +15,74 @@
  */ 
 package de.odysseus.el.tree.impl.ast;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 import javax.el.ELContext;
 import javax.el.ELException;
+import javax.el.ELResolver;
 import javax.el.MethodInfo;
 import javax.el.MethodNotFoundException;
 import javax.el.PropertyNotFoundException;
 import javax.el.ValueReference;
 
 import de.odysseus.el.misc.LocalMessages;
+import de.odysseus.el.spi.PropertyAccessor;
+import de.odysseus.el.spi.PropertyAccessorProvider;
 import de.odysseus.el.tree.Bindings;
 
 public abstract class AstProperty extends AstNode {
+	/**
+	 * Inline cache entry: remembers the accessor provided for a base class and property by
+	 * resolvers with the given accessor key, or <code>null</code> if they provided none. Trees are
+	 * shared between contexts, so entries are keyed by the resolver's accessor key rather than the
+	 * resolver itself, and the base class is held weakly to not keep a class loader alive.
+	 */
+	private static final class InlineCacheEntry {
+		final Object key;
+		final WeakReference<Class<?>> type;
+		final Object property;
+		final PropertyAccessor accessor;
+
+		InlineCacheEntry(Object key, Class<?> type, Object property, PropertyAccessor accessor) {
+			this.key = key;
+			this.type = new WeakReference<Class<?>>(type);
+			this.property = property;
+			this.accessor = accessor;
+		}
+
+		boolean matches(Class<?> type, Object property, Object key) {
+			return this.type.get() == type
+					&& (this.property == property || this.property != null && this.property.equals(property))
+					&& (this.key == key || this.key.equals(key));
+		}
+
+		boolean isCleared() {
+			return type.get() == null;
+		}
+	}
+
+	/**
+	 * Maximum number of inline cache entries. A node seeing more (base class, property)
+	 * combinations is considered megamorphic and stops caching.
+	 */
+	static final int INLINE_CACHE_SIZE = 4;
+
+	private static final InlineCacheEntry[] MEGAMORPHIC = new InlineCacheEntry[0];
+
 	protected final AstNode prefix;
 	protected final boolean lvalue;
 	protected final boolean strict; // allow null as property value?
 	protected final boolean ignoreReturnType;
 
+	/**
+	 * Polymorphic inline cache used by {@link #eval(Bindings, ELContext)}. Updated without
+	 * synchronization by copying: entries are immutable, so a racing update may only lose an
+	 * entry, which will be looked up again.
+	 */
+	private InlineCacheEntry[] inlineCache;
+
 	public AstProperty(AstNode prefix, boolean lvalue, boolean strict) {
 		this(prefix, lvalue, strict, false);
 	}
@@ -47,10 +96,18 @@ public abstract class AstProperty extends AstNode {
 
 	protected abstract Object getProperty(Bindings bindings, ELContext context) throws ELException;
 
-	protected AstNode getPrefix() {
+	public AstNode getPrefix() {
 		return prefix;
 	}
 
+	/**
+	 * @return <code>true</code> if a <code>null</code> property evaluates to <code>null</code>
+	 * without consulting the resolver
+	 */
+	public boolean isStrict() {
+		return strict;
+	}
+
 	public ValueReference getValueReference(Bindings bindings, ELContext context) {
 		Object base = prefix.eval(bindings, context);
 		if (base == null) {
@@ -73,14 +130,71 @@ public abstract class AstProperty extends AstNode {
 		if (property == null && strict) {
 			return null;
 		}
+		ELResolver resolver = context.getELResolver();
+		PropertyAccessor accessor = lookupAccessor(context, resolver, base, property);
+		if (accessor != null) {
+			Object result = accessor.getValue(context, base);
+			context.setPropertyResolved(true);
+			return result;
+		}
 		context.setPropertyResolved(false);
-		Object result = context.getELResolver().getValue(context, base, property);
+		Object result = resolver.getValue(context, base, property);
 		if (!context.isPropertyResolved()) {
 			throw new PropertyNotFoundException(LocalMessages.get("error.property.property.notfound", property, base));
 		}
 		return result;
 	}
 
+	/**
+	 * Lookup the inline cache for an accessor reading the given property from the given base. On a
+	 * miss, ask the resolver for a new accessor and remember it. Entries are keyed by base class,
+	 * property and the resolver's {@link PropertyAccessorProvider#getPropertyAccessorKey() accessor
+	 * key}, so that contexts creating their own resolvers (e.g.
+	 * {@link de.odysseus.el.util.SimpleContext}) share entries as long as their resolvers are
+	 * configured alike. If the cache is full, the node becomes megamorphic and always answers
+	 * <code>null</code>.
+	 * 
+	 * @return cached accessor or <code>null</code>, meaning the resolver has to be used
+	 */
+	private PropertyAccessor lookupAccessor(ELContext context, ELResolver resolver, Object base, Object property) {
+		InlineCacheEntry[] entries = inlineCache;
+		if (entries == MEGAMORPHIC || !(resolver instanceof PropertyAccessorProvider)) {
+			return null;
+		}
+		PropertyAccessorProvider provider = (PropertyAccessorProvider) resolver;
+		Object key = provider.getPropertyAccessorKey();
+		if (key == null) {
+			return null;
+		}
+		Class<?> type = base.getClass();
+		int size = entries == null ? 0 : entries.length;
+		int index = size;
+		for (int i = 0; i < size; i++) {
+			InlineCacheEntry entry = entries[i];
+			if (entry.matches(type, property, key)) {
+				return entry.accessor;
+			}
+			if (index == size && entry.isCleared()) {
+				index = i;
+			}
+		}
+		if (index == INLINE_CACHE_SIZE) {
+			inlineCache = MEGAMORPHIC;
+			return null;
+		}
+		PropertyAccessor accessor = provider.getPropertyAccessor(context, base, property);
+		if (accessor == PropertyAccessorProvider.UNRESOLVED) {
+			return null;
+		}
+		InlineCacheEntry[] newEntries = new InlineCacheEntry[index == size ? size + 1 : size];
+		if (size > 0) {
+			System.arraycopy(entries, 0, newEntries, 0, size);
+		}
+		newEntries[index] = new InlineCacheEntry(key, type, property, accessor);
+		inlineCache = newEntries;
+		return accessor;
+	}
+
 	public final boolean isLiteralText() {
 		return false;
 	}
@@ -0,0 +1,401 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.odysseus.el.tree.ExpressionNode;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeCompiler;
+import de.odysseus.el.tree.impl.ast.AstBinary;
+import de.odysseus.el.tree.impl.ast.AstBoolean;
+import de.odysseus.el.tree.impl.ast.AstBracket;
+import de.odysseus.el.tree.impl.ast.AstChoice;
+import de.odysseus.el.tree.impl.ast.AstComposite;
+import de.odysseus.el.tree.impl.ast.AstDot;
+import de.odysseus.el.tree.impl.ast.AstEval;
+import de.odysseus.el.tree.impl.ast.AstIdentifier;
+import de.odysseus.el.tree.impl.ast.AstMethod;
+import de.odysseus.el.tree.impl.ast.AstNested;
+import de.odysseus.el.tree.impl.ast.AstNode;
+import de.odysseus.el.tree.impl.ast.AstNull;
+import de.odysseus.el.tree.impl.ast.AstNumber;
+import de.odysseus.el.tree.impl.ast.AstProperty;
+import de.odysseus.el.tree.impl.ast.AstString;
+import de.odysseus.el.tree.impl.ast.AstText;
+import de.odysseus.el.tree.impl.ast.AstUnary;
+
+/**
+ * Tree compiler, which translates expression trees into JVM bytecode.
+ * <p/>
+ * For each tree, a subclass of {@link CompiledNode} is generated, whose <code>eval(...)</code>
+ * method evaluates the whole tree in a single method body. Literals, operators, identifiers,
+ * property accesses and method invocations are compiled; any other node (e.g. function calls
+ * or nodes of custom subclasses created by an extended parser) is evaluated by the interpreter.
+ * Other operations (e.g. <code>setValue(...)</code>) are delegated to the original tree.
+ * <p/>
+ * Each generated class is defined by its own class loader and can be garbage collected
+ * together with its tree. If a tree cannot be compiled, it is returned unchanged.
+ */
+public class BytecodeCompiler implements TreeCompiler {
+	private static final long serialVersionUID = 1L;
+
+	private static final String COMPILED_NODE = "de/odysseus/el/tree/impl/compiler/CompiledNode";
+	private static final String AST_NODE = "de/odysseus/el/tree/impl/ast/AstNode";
+	private static final String NUMBER_OPERATIONS = "de/odysseus/el/misc/NumberOperations";
+	private static final String BOOLEAN_OPERATIONS = "de/odysseus/el/misc/BooleanOperations";
+	private static final String BOOLEAN = "java/lang/Boolean";
+	private static final String OBJECT = "java/lang/Object";
+	private static final String STRING_BUILDER = "java/lang/StringBuilder";
+
+	private static final String BINDINGS_DESC = "Lde/odysseus/el/tree/Bindings;";
+	private static final String CONTEXT_DESC = "Ljavax/el/ELContext;";
+	private static final String OBJECT_DESC = "Ljava/lang/Object;";
+	private static final String EVAL_DESC = "(" + BINDINGS_DESC + CONTEXT_DESC + ")" + OBJECT_DESC;
+	private static final String NUMBER_OPERATION_DESC = "(Lde/odysseus/el/misc/TypeConverter;Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Number;";
+	private static final String BOOLEAN_OPERATION_DESC = "(Lde/odysseus/el/misc/TypeConverter;Ljava/lang/Object;Ljava/lang/Object;)Z";
+	private static final String INIT_DESC = "(Lde/odysseus/el/tree/ExpressionNode;[Lde/odysseus/el/tree/impl/ast/AstNode;[Ljava/lang/Object;)V";
+
+	private static final int THIS = 0;
+	private static final int BINDINGS = 1;
+	private static final int CONTEXT = 2;
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	/**
+	 * Class loader used to define a single generated class.
+	 */
+	private static final class Loader extends ClassLoader {
+		Loader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Code generator for a single tree.
+	 */
+	private static final class Generator {
+		final List<AstNode> nodes = new ArrayList<AstNode>();
+		final List<Object> constants = new ArrayList<Object>();
+		final ClassWriter.Code code;
+
+		Generator(ClassWriter writer) {
+			code = writer.method(ClassWriter.ACC_PUBLIC, "eval", EVAL_DESC);
+		}
+
+		/**
+		 * Emit code which pushes the value of the given node.
+		 */
+		void value(AstNode node) {
+			Class<?> type = node.getClass();
+			if (type == AstText.class || type == AstString.class || type == AstNumber.class) {
+				constant(node.eval(null, null));
+			} else if (type == AstBoolean.class) {
+				code.getstatic(BOOLEAN, node.eval(null, null) == Boolean.TRUE ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+			} else if (type == AstNull.class) {
+				code.aconst_null();
+			} else if (type == AstEval.class || type == AstNested.class) {
+				value(child(node, 0));
+			} else if (type == AstComposite.class) {
+				composite(node);
+			} else if (type == AstChoice.class) {
+				choice(node);
+			} else if (type == AstIdentifier.class) {
+				identifier((AstIdentifier)node);
+			} else if (type == AstDot.class || type == AstBracket.class) {
+				property((AstProperty)node);
+			} else if (type == AstMethod.class && isProperty(child(node, 0))) {
+				method(node);
+			} else if (type == AstBinary.class && binary((AstBinary)node)) {
+				// done
+			} else if (type == AstUnary.class && unary((AstUnary)node)) {
+				// done
+			} else {
+				interpret(node);
+			}
+		}
+
+		AstNode child(AstNode node, int i) {
+			return (AstNode)node.getChild(i);
+		}
+
+		boolean isProperty(AstNode node) {
+			return node.getClass() == AstDot.class || node.getClass() == AstBracket.class;
+		}
+
+		void constant(Object value) {
+			code.aload(THIS);
+			code.getfield(COMPILED_NODE, "constants", "[" + OBJECT_DESC);
+			code.iconst(constants.size());
+			code.aaload();
+			constants.add(value);
+		}
+
+		void interpret(AstNode node) {
+			code.aload(THIS);
+			code.getfield(COMPILED_NODE, "nodes", "[L" + AST_NODE + ";");
+			code.iconst(nodes.size());
+			code.aaload();
+			code.aload(BINDINGS);
+			code.aload(CONTEXT);
+			code.invokevirtual(AST_NODE, "eval", EVAL_DESC);
+			nodes.add(node);
+		}
+
+		void composite(AstNode node) {
+			code.anew(STRING_BUILDER);
+			code.dup();
+			code.invokespecial(STRING_BUILDER, "<init>", "()V");
+			for (int i = 0; i < node.getCardinality(); i++) {
+				code.dup();
+				code.aload(BINDINGS);
+				value(child(node, i));
+				code.invokestatic(COMPILED_NODE, "append", "(Ljava/lang/StringBuilder;" + BINDINGS_DESC + OBJECT_DESC + ")V");
+			}
+			code.invokevirtual(STRING_BUILDER, "toString", "()Ljava/lang/String;");
+		}
+
+		void choice(AstNode node) {
+			ClassWriter.Label no = code.newLabel();
+			ClassWriter.Label end = code.newLabel();
+			code.aload(BINDINGS);
+			value(child(node, 0));
+			code.invokestatic(COMPILED_NODE, "test", "(" + BINDINGS_DESC + OBJECT_DESC + ")Z");
+			code.ifeq(no);
+			value(child(node, 1));
+			code.jump(end);
+			code.mark(no);
+			value(child(node, 2));
+			code.mark(end);
+		}
+
+		void identifier(AstIdentifier node) {
+			code.aload(BINDINGS);
+			code.aload(CONTEXT);
+			code.iconst(node.getIndex());
+			code.ldc(node.getName());
+			code.invokestatic(COMPILED_NODE, "identifier", "(" + BINDINGS_DESC + CONTEXT_DESC + "ILjava/lang/String;)" + OBJECT_DESC);
+		}
+
+		void property(AstProperty node) {
+			ClassWriter.Label undefined = code.newLabel();
+			ClassWriter.Label end = code.newLabel();
+			int base = code.newLocal();
+			value(node.getPrefix());
+			code.astore(base);
+			code.aload(base);
+			code.ifnull(undefined);
+			if (node instanceof AstDot) {
+				code.aload(CONTEXT);
+				code.aload(base);
+				code.ldc(((AstDot)node).getPropertyName());
+			} else {
+				int property = code.newLocal();
+				value(child(node, 1));
+				code.astore(property);
+				if (node.isStrict()) {
+					code.aload(property);
+					code.ifnull(undefined);
+				}
+				code.aload(CONTEXT);
+				code.aload(base);
+				code.aload(property);
+			}
+			code.invokestatic(COMPILED_NODE, "property", "(" + CONTEXT_DESC + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+			code.jump(end);
+			code.mark(undefined);
+			code.aconst_null();
+			code.mark(end);
+		}
+
+		void method(AstNode node) {
+			AstProperty property = (AstProperty)child(node, 0);
+			AstNode params = child(node, 1);
+			ClassWriter.Label undefined = code.newLabel();
+			ClassWriter.Label end = code.newLabel();
+			int base = code.newLocal();
+			value(property.getPrefix());
+			code.astore(base);
+			code.aload(base);
+			code.ifnull(undefined);
+			code.aload(CONTEXT);
+			code.aload(base);
+			code.aload(BINDINGS);
+			code.aload(base);
+			if (property instanceof AstDot) {
+				code.ldc(((AstDot)property).getPropertyName());
+			} else {
+				value(child(property, 1));
+			}
+			code.invokestatic(COMPILED_NODE, "method", "(" + BINDINGS_DESC + OBJECT_DESC + OBJECT_DESC + ")Ljava/lang/String;");
+			code.iconst(params.getCardinality());
+			code.anewarray(OBJECT);
+			for (int i = 0; i < params.getCardinality(); i++) {
+				code.dup();
+				code.iconst(i);
+				value(child(params, i));
+				code.aastore();
+			}
+			code.invokestatic(COMPILED_NODE, "invoke", "(" + CONTEXT_DESC + OBJECT_DESC + "Ljava/lang/String;[" + OBJECT_DESC + ")" + OBJECT_DESC);
+			code.jump(end);
+			code.mark(undefined);
+			code.aconst_null();
+			code.mark(end);
+		}
+
+		boolean binary(AstBinary node) {
+			AstBinary.Operator operator = node.getOperator();
+			if (operator == AstBinary.AND || operator == AstBinary.OR) {
+				ClassWriter.Label right = code.newLabel();
+				ClassWriter.Label end = code.newLabel();
+				code.aload(BINDINGS);
+				value(child(node, 0));
+				code.invokestatic(COMPILED_NODE, "isTrue", "(" + BINDINGS_DESC + OBJECT_DESC + ")Z");
+				if (operator == AstBinary.AND) {
+					code.ifeq(right);
+					code.aload(BINDINGS);
+					value(child(node, 1));
+					code.invokestatic(COMPILED_NODE, "toBoolean", "(" + BINDINGS_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+					code.jump(end);
+					code.mark(right);
+					code.getstatic(BOOLEAN, "FALSE", "Ljava/lang/Boolean;");
+				} else {
+					code.ifeq(right);
+					code.getstatic(BOOLEAN, "TRUE", "Ljava/lang/Boolean;");
+					code.jump(end);
+					code.mark(right);
+					code.aload(BINDINGS);
+					value(child(node, 1));
+					code.invokestatic(COMPILED_NODE, "toBoolean", "(" + BINDINGS_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+				}
+				code.mark(end);
+				return true;
+			}
+			String owner = NUMBER_OPERATIONS, desc = NUMBER_OPERATION_DESC, name = null;
+			if (operator == AstBinary.ADD) {
+				name = "add";
+			} else if (operator == AstBinary.SUB) {
+				name = "sub";
+			} else if (operator == AstBinary.MUL) {
+				name = "mul";
+			} else if (operator == AstBinary.DIV) {
+				name = "div";
+			} else if (operator == AstBinary.MOD) {
+				name = "mod";
+			} else {
+				owner = BOOLEAN_OPERATIONS;
+				desc = BOOLEAN_OPERATION_DESC;
+				if (operator == AstBinary.EQ) {
+					name = "eq";
+				} else if (operator == AstBinary.NE) {
+					name = "ne";
+				} else if (operator == AstBinary.LT) {
+					name = "lt";
+				} else if (operator == AstBinary.LE) {
+					name = "le";
+				} else if (operator == AstBinary.GT) {
+					name = "gt";
+				} else if (operator == AstBinary.GE) {
+					name = "ge";
+				} else {
+					return false;
+				}
+			}
+			code.aload(BINDINGS);
+			value(child(node, 0));
+			value(child(node, 1));
+			code.invokestatic(owner, name, desc);
+			if (owner == BOOLEAN_OPERATIONS) {
+				code.invokestatic(BOOLEAN, "valueOf", "(Z)Ljava/lang/Boolean;");
+			}
+			return true;
+		}
+
+		boolean unary(AstUnary node) {
+			AstUnary.Operator operator = node.getOperator();
+			if (operator == AstUnary.EMPTY) {
+				code.aload(BINDINGS);
+				value(child(node, 0));
+				code.invokestatic(BOOLEAN_OPERATIONS, "empty", "(Lde/odysseus/el/misc/TypeConverter;" + OBJECT_DESC + ")Z");
+				code.invokestatic(BOOLEAN, "valueOf", "(Z)Ljava/lang/Boolean;");
+			} else if (operator == AstUnary.NEG) {
+				code.aload(BINDINGS);
+				value(child(node, 0));
+				code.invokestatic(NUMBER_OPERATIONS, "neg", "(Lde/odysseus/el/misc/TypeConverter;" + OBJECT_DESC + ")Ljava/lang/Number;");
+			} else if (operator == AstUnary.NOT) {
+				code.aload(BINDINGS);
+				value(child(node, 0));
+				code.invokestatic(COMPILED_NODE, "not", "(Lde/odysseus/el/misc/TypeConverter;" + OBJECT_DESC + ")" + OBJECT_DESC);
+			} else {
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Compile the given tree.
+	 * @param tree the tree to compile
+	 * @return a tree with a {@link CompiledNode} root or the given tree, if it cannot be compiled
+	 */
+	public Tree compile(Tree tree) {
+		ExpressionNode root = tree.getRoot();
+		if (!(root instanceof AstNode) || root.getClass() == AstText.class) {
+			return tree;
+		}
+		try {
+			return new Tree(tree, generate((AstNode)root));
+		} catch (RuntimeException e) {
+			return tree;
+		} catch (LinkageError e) {
+			return tree;
+		}
+	}
+
+	/**
+	 * Generate, load and instantiate a compiled node for the given root node.
+	 */
+	protected CompiledNode generate(AstNode root) {
+		String name = "de.odysseus.el.tree.impl.compiler.Generated" + counter.incrementAndGet();
+		String internalName = name.replace('.', '/');
+
+		ClassWriter writer = new ClassWriter(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_FINAL, internalName, COMPILED_NODE);
+		ClassWriter.Code init = writer.method(ClassWriter.ACC_PUBLIC, "<init>", INIT_DESC);
+		init.aload(0);
+		init.aload(1);
+		init.aload(2);
+		init.aload(3);
+		init.invokespecial(COMPILED_NODE, "<init>", INIT_DESC);
+		init.vreturn();
+
+		Generator generator = new Generator(writer);
+		generator.value(root);
+		generator.code.areturn();
+
+		Class<?> type = new Loader(CompiledNode.class.getClassLoader()).define(name, writer.toByteArray());
+		AstNode[] nodes = generator.nodes.toArray(new AstNode[generator.nodes.size()]);
+		Object[] constants = generator.constants.toArray();
+		try {
+			return (CompiledNode)type.getConstructor(ExpressionNode.class, AstNode[].class, Object[].class).newInstance(root, nodes, constants);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
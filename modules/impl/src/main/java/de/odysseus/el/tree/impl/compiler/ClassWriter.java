@@ -0,0 +1,440 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class file writer.
+ * Writes class files of version 49 (Java 5), which are verified by type inference
+ * and hence don't need stack map frames. Only the features needed to generate
+ * compiled expression nodes are supported: a super class, methods with code and
+ * no exception handlers.
+ */
+class ClassWriter {
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	/**
+	 * Method code buffer.
+	 * Keeps track of the operand stack depth and the number of local variables.
+	 */
+	final class Code {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final List<int[]> fixups = new ArrayList<int[]>(); // { instruction, offset position, label }
+		private final List<Label> labels = new ArrayList<Label>();
+		private int stack;
+		private int maxStack;
+		private int maxLocals;
+		private boolean reachable = true;
+
+		Code(int locals) {
+			this.maxLocals = locals;
+		}
+
+		private void push(int n) {
+			stack += n;
+			if (stack > maxStack) {
+				maxStack = stack;
+			}
+		}
+
+		private void op(int opcode, int delta) {
+			bytes.write(opcode);
+			push(delta);
+		}
+
+		private void u1(int value) {
+			bytes.write(value);
+		}
+
+		private void u2(int value) {
+			bytes.write(value >> 8);
+			bytes.write(value);
+		}
+
+		int newLocal() {
+			if (maxLocals > 0xff) {
+				throw new IllegalStateException("Too many local variables");
+			}
+			return maxLocals++;
+		}
+
+		Label newLabel() {
+			Label label = new Label(labels.size());
+			labels.add(label);
+			return label;
+		}
+
+		/**
+		 * Place the given label at the current position.
+		 */
+		void mark(Label label) {
+			label.position = bytes.size();
+			if (!reachable) {
+				stack = label.stack;
+				reachable = true;
+			}
+		}
+
+		private void jump(int opcode, int delta, Label label) {
+			int position = bytes.size();
+			op(opcode, delta);
+			fixups.add(new int[]{ position, bytes.size(), label.index });
+			u2(0);
+			label.stack = stack;
+		}
+
+		void ifeq(Label label) {
+			jump(0x99, -1, label);
+		}
+
+		void ifnull(Label label) {
+			jump(0xc6, -1, label);
+		}
+
+		void jump(Label label) {
+			jump(0xa7, 0, label);
+			reachable = false;
+		}
+
+		void aconst_null() {
+			op(0x01, 1);
+		}
+
+		void iconst(int value) {
+			if (value >= -1 && value <= 5) {
+				op(0x03 + value, 1);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				op(0x10, 1);
+				u1(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				op(0x11, 1);
+				u2(value);
+			} else {
+				ldc(integer(value));
+			}
+		}
+
+		void ldc(String value) {
+			ldc(string(value));
+		}
+
+		private void ldc(int index) {
+			if (index < 256) {
+				op(0x12, 1);
+				u1(index);
+			} else {
+				op(0x13, 1);
+				u2(index);
+			}
+		}
+
+		void aload(int local) {
+			if (local < 4) {
+				op(0x2a + local, 1);
+			} else {
+				op(0x19, 1);
+				u1(local);
+			}
+		}
+
+		void astore(int local) {
+			if (local < 4) {
+				op(0x4b + local, -1);
+			} else {
+				op(0x3a, -1);
+				u1(local);
+			}
+		}
+
+		void aaload() {
+			op(0x32, -1);
+		}
+
+		void aastore() {
+			op(0x53, -3);
+		}
+
+		void dup() {
+			op(0x59, 1);
+		}
+
+		void areturn() {
+			op(0xb0, -1);
+			reachable = false;
+		}
+
+		void vreturn() {
+			op(0xb1, 0);
+			reachable = false;
+		}
+
+		void anew(String type) {
+			op(0xbb, 1);
+			u2(type(type));
+		}
+
+		void anewarray(String type) {
+			op(0xbd, 0);
+			u2(type(type));
+		}
+
+		void checkcast(String type) {
+			op(0xc0, 0);
+			u2(type(type));
+		}
+
+		void getfield(String owner, String name, String desc) {
+			op(0xb4, 0);
+			u2(field(owner, name, desc));
+		}
+
+		void getstatic(String owner, String name, String desc) {
+			op(0xb2, 1);
+			u2(field(owner, name, desc));
+		}
+
+		void invokestatic(String owner, String name, String desc) {
+			op(0xb8, returnSize(desc) - argumentsSize(desc));
+			u2(method(owner, name, desc));
+		}
+
+		void invokevirtual(String owner, String name, String desc) {
+			op(0xb6, returnSize(desc) - argumentsSize(desc) - 1);
+			u2(method(owner, name, desc));
+		}
+
+		void invokespecial(String owner, String name, String desc) {
+			op(0xb7, returnSize(desc) - argumentsSize(desc) - 1);
+			u2(method(owner, name, desc));
+		}
+
+		/**
+		 * Resolve jump offsets.
+		 * @return code bytes
+		 */
+		byte[] toByteArray() {
+			byte[] code = bytes.toByteArray();
+			for (int[] fixup : fixups) {
+				int offset = labels.get(fixup[2]).position - fixup[0];
+				if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+					throw new IllegalStateException("Jump offset out of range");
+				}
+				code[fixup[1]] = (byte)(offset >> 8);
+				code[fixup[1] + 1] = (byte)offset;
+			}
+			return code;
+		}
+	}
+
+	/**
+	 * Jump target.
+	 */
+	static final class Label {
+		final int index;
+		int position = -1;
+		int stack;
+
+		Label(int index) {
+			this.index = index;
+		}
+	}
+
+	private static final class Method {
+		final int access;
+		final int name;
+		final int desc;
+		final Code code;
+
+		Method(int access, int name, int desc, Code code) {
+			this.access = access;
+			this.name = name;
+			this.desc = desc;
+			this.code = code;
+		}
+	}
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolData = new DataOutputStream(pool);
+	private final Map<String, Integer> poolIndices = new HashMap<String, Integer>();
+	private final List<Method> methods = new ArrayList<Method>();
+	private int poolSize = 1;
+
+	private final int access;
+	private final int thisClass;
+	private final int superClass;
+
+	/**
+	 * Create a class writer.
+	 * @param access class access flags
+	 * @param name internal class name (e.g. <code>foo/Bar</code>)
+	 * @param superName internal super class name
+	 */
+	ClassWriter(int access, String name, String superName) {
+		this.access = access | ACC_SUPER;
+		this.thisClass = type(name);
+		this.superClass = type(superName);
+	}
+
+	/**
+	 * Start a new method.
+	 * @param access method access flags
+	 * @param name method name
+	 * @param desc method descriptor
+	 * @return code buffer to emit the method's instructions to
+	 */
+	Code method(int access, String name, String desc) {
+		Code code = new Code(argumentsSize(desc) + 1);
+		methods.add(new Method(access, utf8(name), utf8(desc), code));
+		return code;
+	}
+
+	private int constant(String key, int tag, Object... values) {
+		Integer index = poolIndices.get(key);
+		if (index == null) {
+			try {
+				poolData.writeByte(tag);
+				for (Object value : values) {
+					if (value instanceof String) {
+						poolData.writeUTF((String)value);
+					} else if (tag == CONSTANT_INTEGER) {
+						poolData.writeInt((Integer)value);
+					} else {
+						poolData.writeShort((Integer)value);
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			poolIndices.put(key, index = poolSize++);
+			if (poolSize > 0xffff) {
+				throw new IllegalStateException("Constant pool overflow");
+			}
+		}
+		return index;
+	}
+
+	private int utf8(String value) {
+		return constant("U" + value, CONSTANT_UTF8, value);
+	}
+
+	private int integer(int value) {
+		return constant("I" + value, CONSTANT_INTEGER, value);
+	}
+
+	private int string(String value) {
+		return constant("S" + value, CONSTANT_STRING, utf8(value));
+	}
+
+	private int type(String name) {
+		return constant("C" + name, CONSTANT_CLASS, utf8(name));
+	}
+
+	private int nameAndType(String name, String desc) {
+		return constant("N" + name + ":" + desc, CONSTANT_NAME_AND_TYPE, utf8(name), utf8(desc));
+	}
+
+	private int field(String owner, String name, String desc) {
+		return constant("F" + owner + "." + name + ":" + desc, CONSTANT_FIELDREF, type(owner), nameAndType(name, desc));
+	}
+
+	private int method(String owner, String name, String desc) {
+		return constant("M" + owner + "." + name + desc, CONSTANT_METHODREF, type(owner), nameAndType(name, desc));
+	}
+
+	private static int size(char type) {
+		return type == 'V' ? 0 : type == 'J' || type == 'D' ? 2 : 1;
+	}
+
+	private static int returnSize(String desc) {
+		return size(desc.charAt(desc.indexOf(')') + 1));
+	}
+
+	private static int argumentsSize(String desc) {
+		int size = 0;
+		for (int i = 1; desc.charAt(i) != ')'; i++) {
+			boolean array = false;
+			char c = desc.charAt(i);
+			while (c == '[') {
+				array = true;
+				c = desc.charAt(++i);
+			}
+			if (c == 'L') {
+				i = desc.indexOf(';', i);
+			}
+			size += array ? 1 : size(c);
+		}
+		return size;
+	}
+
+	/**
+	 * @return class file bytes
+	 */
+	byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xcafebabe);
+			out.writeShort(0); // minor version
+			out.writeShort(49); // major version (Java 5)
+			int codeAttribute = utf8("Code");
+			out.writeShort(poolSize);
+			pool.writeTo(out);
+			out.writeShort(access);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(methods.size());
+			for (Method method : methods) {
+				byte[] code = method.code.toByteArray();
+				if (code.length > 0xffff) {
+					throw new IllegalStateException("Method code too large");
+				}
+				out.writeShort(method.access);
+				out.writeShort(method.name);
+				out.writeShort(method.desc);
+				out.writeShort(1); // attributes
+				out.writeShort(codeAttribute);
+				out.writeInt(12 + code.length);
+				out.writeShort(method.code.maxStack);
+				out.writeShort(method.code.maxLocals);
+				out.writeInt(code.length);
+				out.write(code);
+				out.writeShort(0); // exception table
+				out.writeShort(0); // attributes
+			}
+			out.writeShort(0); // attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,466 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import javax.el.ELContext;
+
+import de.odysseus.el.misc.BooleanOperations;
+import de.odysseus.el.misc.NumberOperations;
+import de.odysseus.el.tree.Bindings;
+import de.odysseus.el.tree.ExpressionNode;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeCompiler;
+import de.odysseus.el.tree.impl.ast.AstBinary;
+import de.odysseus.el.tree.impl.ast.AstBoolean;
+import de.odysseus.el.tree.impl.ast.AstBracket;
+import de.odysseus.el.tree.impl.ast.AstChoice;
+import de.odysseus.el.tree.impl.ast.AstComposite;
+import de.odysseus.el.tree.impl.ast.AstDot;
+import de.odysseus.el.tree.impl.ast.AstEval;
+import de.odysseus.el.tree.impl.ast.AstIdentifier;
+import de.odysseus.el.tree.impl.ast.AstMethod;
+import de.odysseus.el.tree.impl.ast.AstNested;
+import de.odysseus.el.tree.impl.ast.AstNode;
+import de.odysseus.el.tree.impl.ast.AstNull;
+import de.odysseus.el.tree.impl.ast.AstNumber;
+import de.odysseus.el.tree.impl.ast.AstProperty;
+import de.odysseus.el.tree.impl.ast.AstString;
+import de.odysseus.el.tree.impl.ast.AstText;
+import de.odysseus.el.tree.impl.ast.AstUnary;
+
+/**
+ * Tree compiler, which translates expression trees into composed closures.
+ * <p/>
+ * Each node is translated into a small immutable evaluator object, specific to the node type
+ * and operator, whose children are final fields. Compared to the syntax tree, the resulting
+ * evaluator chain avoids operator dispatch and dynamic feature checks, and each call site only
+ * sees a few receiver classes, which lets the JIT inline large parts of the chain.
+ * <p/>
+ * Unlike the {@link BytecodeCompiler}, no classes are generated, so this compiler may be used
+ * where defining classes is not permitted. Nodes of unknown types are evaluated by the interpreter.
+ */
+public class ClosureCompiler implements TreeCompiler {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Evaluator for a node.
+	 */
+	static abstract class Closure {
+		abstract Object eval(Bindings bindings, ELContext context);
+	}
+
+	static final class Constant extends Closure {
+		private final Object value;
+		Constant(Object value) {
+			this.value = value;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return value;
+		}
+	}
+
+	static final class Interpreted extends Closure {
+		private final AstNode node;
+		Interpreted(AstNode node) {
+			this.node = node;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return node.eval(bindings, context);
+		}
+	}
+
+	static final class Identifier extends Closure {
+		private final int index;
+		private final String name;
+		Identifier(int index, String name) {
+			this.index = index;
+			this.name = name;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return CompiledNode.identifier(bindings, context, index, name);
+		}
+	}
+
+	static final class Dot extends Closure {
+		private final Closure prefix;
+		private final String property;
+		Dot(Closure prefix, String property) {
+			this.prefix = prefix;
+			this.property = property;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			Object base = prefix.eval(bindings, context);
+			return base == null ? null : CompiledNode.property(context, base, property);
+		}
+	}
+
+	static final class Bracket extends Closure {
+		private final Closure prefix;
+		private final Closure property;
+		private final boolean strict;
+		Bracket(Closure prefix, Closure property, boolean strict) {
+			this.prefix = prefix;
+			this.property = property;
+			this.strict = strict;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			Object base = prefix.eval(bindings, context);
+			if (base == null) {
+				return null;
+			}
+			Object value = property.eval(bindings, context);
+			if (value == null && strict) {
+				return null;
+			}
+			return CompiledNode.property(context, base, value);
+		}
+	}
+
+	static final class Method extends Closure {
+		private final Closure prefix;
+		private final Closure method;
+		private final Closure[] params;
+		Method(Closure prefix, Closure method, Closure[] params) {
+			this.prefix = prefix;
+			this.method = method;
+			this.params = params;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			Object base = prefix.eval(bindings, context);
+			if (base == null) {
+				return null;
+			}
+			String name = CompiledNode.method(bindings, base, method.eval(bindings, context));
+			Object[] values = new Object[params.length];
+			for (int i = 0; i < params.length; i++) {
+				values[i] = params[i].eval(bindings, context);
+			}
+			return CompiledNode.invoke(context, base, name, values);
+		}
+	}
+
+	static final class Composite extends Closure {
+		private final Closure[] children;
+		Composite(Closure[] children) {
+			this.children = children;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			StringBuilder builder = new StringBuilder();
+			for (Closure child : children) {
+				CompiledNode.append(builder, bindings, child.eval(bindings, context));
+			}
+			return builder.toString();
+		}
+	}
+
+	static final class Choice extends Closure {
+		private final Closure question, yes, no;
+		Choice(Closure question, Closure yes, Closure no) {
+			this.question = question;
+			this.yes = yes;
+			this.no = no;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return CompiledNode.test(bindings, question.eval(bindings, context)) ? yes.eval(bindings, context) : no.eval(bindings, context);
+		}
+	}
+
+	static abstract class Binary extends Closure {
+		final Closure left, right;
+		Binary(Closure left, Closure right) {
+			this.left = left;
+			this.right = right;
+		}
+	}
+
+	static final class And extends Binary {
+		And(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return CompiledNode.isTrue(bindings, left.eval(bindings, context)) ? CompiledNode.toBoolean(bindings, right.eval(bindings, context)) : Boolean.FALSE;
+		}
+	}
+
+	static final class Or extends Binary {
+		Or(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return CompiledNode.isTrue(bindings, left.eval(bindings, context)) ? Boolean.TRUE : CompiledNode.toBoolean(bindings, right.eval(bindings, context));
+		}
+	}
+
+	static final class Add extends Binary {
+		Add(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return NumberOperations.add(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Sub extends Binary {
+		Sub(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return NumberOperations.sub(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Mul extends Binary {
+		Mul(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return NumberOperations.mul(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Div extends Binary {
+		Div(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return NumberOperations.div(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Mod extends Binary {
+		Mod(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return NumberOperations.mod(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Eq extends Binary {
+		Eq(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return BooleanOperations.eq(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Ne extends Binary {
+		Ne(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return BooleanOperations.ne(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Lt extends Binary {
+		Lt(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return BooleanOperations.lt(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Le extends Binary {
+		Le(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return BooleanOperations.le(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Gt extends Binary {
+		Gt(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return BooleanOperations.gt(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Ge extends Binary {
+		Ge(Closure left, Closure right) {
+			super(left, right);
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return BooleanOperations.ge(bindings, left.eval(bindings, context), right.eval(bindings, context));
+		}
+	}
+
+	static final class Empty extends Closure {
+		private final Closure child;
+		Empty(Closure child) {
+			this.child = child;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return BooleanOperations.empty(bindings, child.eval(bindings, context));
+		}
+	}
+
+	static final class Neg extends Closure {
+		private final Closure child;
+		Neg(Closure child) {
+			this.child = child;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return NumberOperations.neg(bindings, child.eval(bindings, context));
+		}
+	}
+
+	static final class Not extends Closure {
+		private final Closure child;
+		Not(Closure child) {
+			this.child = child;
+		}
+		@Override
+		Object eval(Bindings bindings, ELContext context) {
+			return CompiledNode.not(bindings, child.eval(bindings, context));
+		}
+	}
+
+	/**
+	 * Root node evaluating a closure.
+	 */
+	static final class ClosureNode extends CompiledNode {
+		private final Closure closure;
+
+		ClosureNode(ExpressionNode root, Closure closure) {
+			super(root, null, null);
+			this.closure = closure;
+		}
+
+		@Override
+		public Object eval(Bindings bindings, ELContext context) {
+			return closure.eval(bindings, context);
+		}
+	}
+
+	/**
+	 * Compile the given tree.
+	 * @param tree the tree to compile
+	 * @return a tree with a {@link CompiledNode} root or the given tree, if it consists of literal text
+	 */
+	public Tree compile(Tree tree) {
+		ExpressionNode root = tree.getRoot();
+		if (!(root instanceof AstNode) || root instanceof AstText) {
+			return tree;
+		}
+		return new Tree(tree, new ClosureNode(root, closure((AstNode)root)));
+	}
+
+	private AstNode child(AstNode node, int i) {
+		return (AstNode)node.getChild(i);
+	}
+
+	private Closure[] children(AstNode node) {
+		Closure[] result = new Closure[node.getCardinality()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = closure(child(node, i));
+		}
+		return result;
+	}
+
+	/**
+	 * Translate the given node.
+	 */
+	Closure closure(AstNode node) {
+		Class<?> type = node.getClass();
+		if (type == AstText.class || type == AstString.class || type == AstNumber.class || type == AstBoolean.class) {
+			return new Constant(node.eval(null, null));
+		}
+		if (type == AstNull.class) {
+			return new Constant(null);
+		}
+		if (type == AstEval.class || type == AstNested.class) {
+			return closure(child(node, 0));
+		}
+		if (type == AstComposite.class) {
+			return new Composite(children(node));
+		}
+		if (type == AstChoice.class) {
+			return new Choice(closure(child(node, 0)), closure(child(node, 1)), closure(child(node, 2)));
+		}
+		if (type == AstIdentifier.class) {
+			return new Identifier(((AstIdentifier)node).getIndex(), ((AstIdentifier)node).getName());
+		}
+		if (type == AstDot.class) {
+			return new Dot(closure(((AstProperty)node).getPrefix()), ((AstDot)node).getPropertyName());
+		}
+		if (type == AstBracket.class) {
+			return new Bracket(closure(((AstProperty)node).getPrefix()), closure(child(node, 1)), ((AstProperty)node).isStrict());
+		}
+		if (type == AstMethod.class) {
+			AstNode property = child(node, 0);
+			if (property.getClass() == AstDot.class) {
+				Closure method = new Constant(((AstDot)property).getPropertyName());
+				return new Method(closure(((AstProperty)property).getPrefix()), method, children(child(node, 1)));
+			}
+			if (property.getClass() == AstBracket.class) {
+				Closure method = closure(child(property, 1));
+				return new Method(closure(((AstProperty)property).getPrefix()), method, children(child(node, 1)));
+			}
+		}
+		if (type == AstBinary.class) {
+			AstBinary.Operator operator = ((AstBinary)node).getOperator();
+			Closure left = closure(child(node, 0));
+			Closure right = closure(child(node, 1));
+			if (operator == AstBinary.AND) return new And(left, right);
+			if (operator == AstBinary.OR) return new Or(left, right);
+			if (operator == AstBinary.ADD) return new Add(left, right);
+			if (operator == AstBinary.SUB) return new Sub(left, right);
+			if (operator == AstBinary.MUL) return new Mul(left, right);
+			if (operator == AstBinary.DIV) return new Div(left, right);
+			if (operator == AstBinary.MOD) return new Mod(left, right);
+			if (operator == AstBinary.EQ) return new Eq(left, right);
+			if (operator == AstBinary.NE) return new Ne(left, right);
+			if (operator == AstBinary.LT) return new Lt(left, right);
+			if (operator == AstBinary.LE) return new Le(left, right);
+			if (operator == AstBinary.GT) return new Gt(left, right);
+			if (operator == AstBinary.GE) return new Ge(left, right);
+		}
+		if (type == AstUnary.class) {
+			AstUnary.Operator operator = ((AstUnary)node).getOperator();
+			if (operator == AstUnary.EMPTY) return new Empty(closure(child(node, 0)));
+			if (operator == AstUnary.NEG) return new Neg(closure(child(node, 0)));
+			if (operator == AstUnary.NOT) return new Not(closure(child(node, 0)));
+		}
+		return new Interpreted(node);
+	}
+}
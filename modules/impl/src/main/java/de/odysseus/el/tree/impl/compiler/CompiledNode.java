@@ -0,0 +1,216 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import javax.el.ELContext;
+import javax.el.MethodInfo;
+import javax.el.MethodNotFoundException;
+import javax.el.PropertyNotFoundException;
+import javax.el.ValueExpression;
+import javax.el.ValueReference;
+
+import de.odysseus.el.misc.LocalMessages;
+import de.odysseus.el.misc.TypeConverter;
+import de.odysseus.el.tree.Bindings;
+import de.odysseus.el.tree.ExpressionNode;
+import de.odysseus.el.tree.Node;
+import de.odysseus.el.tree.impl.ast.AstNode;
+
+/**
+ * Base class of compiled expression nodes.
+ * Subclasses are generated by the {@link BytecodeCompiler} (or created by the {@link ClosureCompiler})
+ * and implement {@link #eval(Bindings, ELContext)} for a particular syntax tree. All other operations
+ * are delegated to the original tree. The static helper methods are called from compiled code and
+ * perform exactly the same steps as the corresponding syntax tree nodes.
+ */
+public abstract class CompiledNode implements ExpressionNode {
+	/**
+	 * Nodes evaluated by the interpreter.
+	 */
+	protected final AstNode[] nodes;
+
+	/**
+	 * Literal values.
+	 */
+	protected final Object[] constants;
+
+	private final ExpressionNode root;
+
+	protected CompiledNode(ExpressionNode root, AstNode[] nodes, Object[] constants) {
+		this.root = root;
+		this.nodes = nodes;
+		this.constants = constants;
+	}
+
+	/**
+	 * @return the original (uncompiled) root node
+	 */
+	public ExpressionNode getRoot() {
+		return root;
+	}
+
+	/**
+	 * Evaluate the compiled expression.
+	 */
+	public abstract Object eval(Bindings bindings, ELContext context);
+
+	/**
+	 * evaluate and return the (optionally coerced) result.
+	 */
+	public final Object getValue(Bindings bindings, ELContext context, Class<?> type) {
+		Object value = eval(bindings, context);
+		if (type != null) {
+			value = bindings.convert(value, type);
+		}
+		return value;
+	}
+
+	public boolean isLiteralText() {
+		return root.isLiteralText();
+	}
+
+	public boolean isLeftValue() {
+		return root.isLeftValue();
+	}
+
+	public boolean isMethodInvocation() {
+		return root.isMethodInvocation();
+	}
+
+	public ValueReference getValueReference(Bindings bindings, ELContext context) {
+		return root.getValueReference(bindings, context);
+	}
+
+	public Class<?> getType(Bindings bindings, ELContext context) {
+		return root.getType(bindings, context);
+	}
+
+	public boolean isReadOnly(Bindings bindings, ELContext context) {
+		return root.isReadOnly(bindings, context);
+	}
+
+	public void setValue(Bindings bindings, ELContext context, Object value) {
+		root.setValue(bindings, context, value);
+	}
+
+	public MethodInfo getMethodInfo(Bindings bindings, ELContext context, Class<?> returnType, Class<?>[] paramTypes) {
+		return root.getMethodInfo(bindings, context, returnType, paramTypes);
+	}
+
+	public Object invoke(Bindings bindings, ELContext context, Class<?> returnType, Class<?>[] paramTypes, Object[] paramValues) {
+		return root.invoke(bindings, context, returnType, paramTypes, paramValues);
+	}
+
+	public String getStructuralId(Bindings bindings) {
+		return root.getStructuralId(bindings);
+	}
+
+	public int getCardinality() {
+		return root.getCardinality();
+	}
+
+	public Node getChild(int i) {
+		return root.getChild(i);
+	}
+
+	@Override
+	public String toString() {
+		return root.toString();
+	}
+
+	/**
+	 * Identifier evaluation (see {@link de.odysseus.el.tree.impl.ast.AstIdentifier}).
+	 */
+	protected static Object identifier(Bindings bindings, ELContext context, int index, String name) {
+		ValueExpression expression = bindings.getVariable(index);
+		if (expression != null) {
+			return expression.getValue(context);
+		}
+		context.setPropertyResolved(false);
+		Object result = context.getELResolver().getValue(context, null, name);
+		if (!context.isPropertyResolved()) {
+			throw new PropertyNotFoundException(LocalMessages.get("error.identifier.property.notfound", name));
+		}
+		return result;
+	}
+
+	/**
+	 * Property evaluation for non-<code>null</code> base (see {@link de.odysseus.el.tree.impl.ast.AstProperty}).
+	 */
+	protected static Object property(ELContext context, Object base, Object property) {
+		context.setPropertyResolved(false);
+		Object result = context.getELResolver().getValue(context, base, property);
+		if (!context.isPropertyResolved()) {
+			throw new PropertyNotFoundException(LocalMessages.get("error.property.property.notfound", property, base));
+		}
+		return result;
+	}
+
+	/**
+	 * Method name coercion for non-<code>null</code> base (see {@link de.odysseus.el.tree.impl.ast.AstMethod}).
+	 */
+	protected static String method(Bindings bindings, Object base, Object method) {
+		if (method == null) {
+			throw new PropertyNotFoundException(LocalMessages.get("error.property.method.notfound", "null", base));
+		}
+		return bindings.convert(method, String.class);
+	}
+
+	/**
+	 * Method invocation for non-<code>null</code> base (see {@link de.odysseus.el.tree.impl.ast.AstMethod}).
+	 */
+	protected static Object invoke(ELContext context, Object base, String name, Object[] params) {
+		context.setPropertyResolved(false);
+		Object result = context.getELResolver().invoke(context, base, name, null, params);
+		if (!context.isPropertyResolved()) {
+			throw new MethodNotFoundException(LocalMessages.get("error.property.method.notfound", name, base.getClass()));
+		}
+		return result;
+	}
+
+	/**
+	 * Append operand of a composite expression (see {@link de.odysseus.el.tree.impl.ast.AstComposite}).
+	 */
+	protected static void append(StringBuilder builder, Bindings bindings, Object value) {
+		builder.append(bindings.convert(value, String.class));
+	}
+
+	/**
+	 * Condition of a choice (see {@link de.odysseus.el.tree.impl.ast.AstChoice}).
+	 */
+	protected static boolean test(Bindings bindings, Object value) {
+		return bindings.convert(value, Boolean.class).booleanValue();
+	}
+
+	/**
+	 * Left operand of <code>&amp;&amp;</code> and <code>||</code> (see {@link de.odysseus.el.tree.impl.ast.AstBinary}).
+	 */
+	protected static boolean isTrue(Bindings bindings, Object value) {
+		return Boolean.TRUE.equals(bindings.convert(value, Boolean.class));
+	}
+
+	/**
+	 * Right operand of <code>&amp;&amp;</code> and <code>||</code> (see {@link de.odysseus.el.tree.impl.ast.AstBinary}).
+	 */
+	protected static Object toBoolean(Bindings bindings, Object value) {
+		return bindings.convert(value, Boolean.class);
+	}
+
+	/**
+	 * Unary <code>!</code> (see {@link de.odysseus.el.tree.impl.ast.AstUnary}).
+	 */
+	protected static Object not(TypeConverter converter, Object value) {
+		return !converter.convert(value, Boolean.class);
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import javax.el.ELContext;
+
+import de.odysseus.el.misc.BooleanOperations;
+import de.odysseus.el.misc.NumberOperations;
+import de.odysseus.el.tree.Bindings;
+import de.odysseus.el.tree.impl.ast.AstNode;
+
+/**
+ * Flat expression program.
+ * A program consists of an <code>int[]</code> instruction array and a constant pool and is
+ * executed by a simple stack machine. Instructions are encoded as an opcode followed by its
+ * operands. Jump targets are absolute instruction indices.
+ * Programs are created by a {@link ProgramBuilder}.
+ */
+public final class Program {
+	/** <code>CONST k</code>: push <code>constants[k]</code> */
+	static final int CONST = 0;
+	/** <code>IDENTIFIER index k</code>: push value of identifier with name <code>constants[k]</code> */
+	static final int IDENTIFIER = 1;
+	/** <code>DOT k</code>: replace base by its property <code>constants[k]</code> (<code>null</code> if base is <code>null</code>) */
+	static final int DOT = 2;
+	/** <code>BRACKET strict</code>: pop property, replace base by its property */
+	static final int BRACKET = 3;
+	/** <code>IF_NULL target</code>: jump if top of stack is <code>null</code> (without popping it) */
+	static final int IF_NULL = 4;
+	/** <code>METHOD_NAME</code>: replace method by method name (base is below method) */
+	static final int METHOD_NAME = 5;
+	/** <code>INVOKE n</code>: pop <code>n</code> parameters, method name and base, push result */
+	static final int INVOKE = 6;
+	/** <code>IF_NOT_TRUE target</code>: pop value, jump unless it coerces to <code>true</code> */
+	static final int IF_NOT_TRUE = 7;
+	/** <code>IF_FALSE target</code>: pop value, jump if its boolean value is <code>false</code> */
+	static final int IF_FALSE = 8;
+	/** <code>GOTO target</code>: jump */
+	static final int GOTO = 9;
+	/** <code>TO_BOOLEAN</code>: coerce top of stack to <code>Boolean</code> */
+	static final int TO_BOOLEAN = 10;
+	/** <code>BUILDER</code>: push new <code>StringBuilder</code> */
+	static final int BUILDER = 11;
+	/** <code>APPEND</code>: pop value, coerce to string and append to builder */
+	static final int APPEND = 12;
+	/** <code>TO_STRING</code>: replace builder by its string value */
+	static final int TO_STRING = 13;
+	/** <code>NODE k</code>: push the value of syntax tree node <code>constants[k]</code> (interpreted) */
+	static final int NODE = 14;
+	static final int ADD = 15;
+	static final int SUB = 16;
+	static final int MUL = 17;
+	static final int DIV = 18;
+	static final int MOD = 19;
+	static final int EQ = 20;
+	static final int NE = 21;
+	static final int LT = 22;
+	static final int LE = 23;
+	static final int GT = 24;
+	static final int GE = 25;
+	static final int EMPTY = 26;
+	static final int NEG = 27;
+	static final int NOT = 28;
+
+	private final int[] code;
+	private final Object[] constants;
+	private final int maxStack;
+
+	Program(int[] code, Object[] constants, int maxStack) {
+		this.code = code;
+		this.constants = constants;
+		this.maxStack = maxStack;
+	}
+
+	/**
+	 * @return number of <code>int</code>s in the instruction array
+	 */
+	public int getCodeLength() {
+		return code.length;
+	}
+
+	/**
+	 * @return number of constants
+	 */
+	public int getConstantCount() {
+		return constants.length;
+	}
+
+	/**
+	 * Execute the program.
+	 * @param bindings bindings
+	 * @param context context
+	 * @return value of the expression
+	 */
+	public Object eval(Bindings bindings, ELContext context) {
+		final int[] code = this.code;
+		final Object[] constants = this.constants;
+		final Object[] stack = new Object[maxStack];
+		int sp = 0;
+		int pc = 0;
+		while (pc < code.length) {
+			switch (code[pc++]) {
+				case CONST:
+					stack[sp++] = constants[code[pc++]];
+					break;
+				case IDENTIFIER:
+					stack[sp++] = CompiledNode.identifier(bindings, context, code[pc], (String)constants[code[pc + 1]]);
+					pc += 2;
+					break;
+				case DOT: {
+					Object property = constants[code[pc++]];
+					if (stack[sp - 1] != null) {
+						stack[sp - 1] = CompiledNode.property(context, stack[sp - 1], property);
+					}
+					break;
+				}
+				case BRACKET: {
+					Object property = stack[--sp];
+					boolean strict = code[pc++] != 0;
+					if (property == null && strict) {
+						stack[sp - 1] = null;
+					} else {
+						stack[sp - 1] = CompiledNode.property(context, stack[sp - 1], property);
+					}
+					break;
+				}
+				case IF_NULL:
+					pc = stack[sp - 1] == null ? code[pc] : pc + 1;
+					break;
+				case METHOD_NAME:
+					stack[sp - 1] = CompiledNode.method(bindings, stack[sp - 2], stack[sp - 1]);
+					break;
+				case INVOKE: {
+					Object[] params = new Object[code[pc++]];
+					sp -= params.length;
+					System.arraycopy(stack, sp, params, 0, params.length);
+					String name = (String)stack[--sp];
+					stack[sp - 1] = CompiledNode.invoke(context, stack[sp - 1], name, params);
+					break;
+				}
+				case IF_NOT_TRUE:
+					pc = CompiledNode.isTrue(bindings, stack[--sp]) ? pc + 1 : code[pc];
+					break;
+				case IF_FALSE:
+					pc = CompiledNode.test(bindings, stack[--sp]) ? pc + 1 : code[pc];
+					break;
+				case GOTO:
+					pc = code[pc];
+					break;
+				case TO_BOOLEAN:
+					stack[sp - 1] = CompiledNode.toBoolean(bindings, stack[sp - 1]);
+					break;
+				case BUILDER:
+					stack[sp++] = new StringBuilder();
+					break;
+				case APPEND:
+					sp--;
+					CompiledNode.append((StringBuilder)stack[sp - 1], bindings, stack[sp]);
+					break;
+				case TO_STRING:
+					stack[sp - 1] = stack[sp - 1].toString();
+					break;
+				case NODE:
+					stack[sp++] = ((AstNode)constants[code[pc++]]).eval(bindings, context);
+					break;
+				case ADD:
+					sp--;
+					stack[sp - 1] = NumberOperations.add(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case SUB:
+					sp--;
+					stack[sp - 1] = NumberOperations.sub(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case MUL:
+					sp--;
+					stack[sp - 1] = NumberOperations.mul(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case DIV:
+					sp--;
+					stack[sp - 1] = NumberOperations.div(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case MOD:
+					sp--;
+					stack[sp - 1] = NumberOperations.mod(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case EQ:
+					sp--;
+					stack[sp - 1] = BooleanOperations.eq(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case NE:
+					sp--;
+					stack[sp - 1] = BooleanOperations.ne(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case LT:
+					sp--;
+					stack[sp - 1] = BooleanOperations.lt(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case LE:
+					sp--;
+					stack[sp - 1] = BooleanOperations.le(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case GT:
+					sp--;
+					stack[sp - 1] = BooleanOperations.gt(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case GE:
+					sp--;
+					stack[sp - 1] = BooleanOperations.ge(bindings, stack[sp - 1], stack[sp]);
+					break;
+				case EMPTY:
+					stack[sp - 1] = BooleanOperations.empty(bindings, stack[sp - 1]);
+					break;
+				case NEG:
+					stack[sp - 1] = NumberOperations.neg(bindings, stack[sp - 1]);
+					break;
+				case NOT:
+					stack[sp - 1] = CompiledNode.not(bindings, stack[sp - 1]);
+					break;
+				default:
+					throw new IllegalStateException("Bad opcode at " + (pc - 1));
+			}
+		}
+		return stack[0];
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.odysseus.el.tree.impl.ast.AstBinary;
+import de.odysseus.el.tree.impl.ast.AstBoolean;
+import de.odysseus.el.tree.impl.ast.AstBracket;
+import de.odysseus.el.tree.impl.ast.AstChoice;
+import de.odysseus.el.tree.impl.ast.AstComposite;
+import de.odysseus.el.tree.impl.ast.AstDot;
+import de.odysseus.el.tree.impl.ast.AstEval;
+import de.odysseus.el.tree.impl.ast.AstIdentifier;
+import de.odysseus.el.tree.impl.ast.AstMethod;
+import de.odysseus.el.tree.impl.ast.AstNested;
+import de.odysseus.el.tree.impl.ast.AstNode;
+import de.odysseus.el.tree.impl.ast.AstNull;
+import de.odysseus.el.tree.impl.ast.AstNumber;
+import de.odysseus.el.tree.impl.ast.AstProperty;
+import de.odysseus.el.tree.impl.ast.AstString;
+import de.odysseus.el.tree.impl.ast.AstText;
+import de.odysseus.el.tree.impl.ast.AstUnary;
+
+/**
+ * Translates a syntax tree into a {@link Program}.
+ * Nodes of unknown types (e.g. function calls or nodes created by an extended parser)
+ * are kept in the constant pool and evaluated by the interpreter.
+ */
+class ProgramAssembler {
+	private int[] code = new int[16];
+	private int length;
+	private final List<Object> constants = new ArrayList<Object>();
+	private final Map<Object, Integer> indices = new HashMap<Object, Integer>();
+	private int stack;
+	private int maxStack;
+
+	/**
+	 * Assemble program for the given root node.
+	 */
+	Program assemble(AstNode root) {
+		value(root);
+		int[] result = new int[length];
+		System.arraycopy(code, 0, result, 0, length);
+		return new Program(result, constants.toArray(), maxStack);
+	}
+
+	private void emit(int value) {
+		if (length == code.length) {
+			int[] grown = new int[2 * length];
+			System.arraycopy(code, 0, grown, 0, length);
+			code = grown;
+		}
+		code[length++] = value;
+	}
+
+	private void emit(int opcode, int delta) {
+		emit(opcode);
+		stack += delta;
+		if (stack > maxStack) {
+			maxStack = stack;
+		}
+	}
+
+	/**
+	 * Emit a jump with unresolved target.
+	 * @return position of the target operand
+	 */
+	private int jump(int opcode, int delta) {
+		emit(opcode, delta);
+		emit(-1);
+		return length - 1;
+	}
+
+	private void resolve(int position) {
+		code[position] = length;
+	}
+
+	/**
+	 * Add constant to pool. Literal values are shared by equality within a program;
+	 * syntax tree nodes are always added.
+	 */
+	private int constant(Object value) {
+		if (value instanceof AstNode) {
+			constants.add(value);
+			return constants.size() - 1;
+		}
+		Integer index = indices.get(value);
+		if (index == null) {
+			indices.put(value, index = constants.size());
+			constants.add(value);
+		}
+		return index;
+	}
+
+	private AstNode child(AstNode node, int i) {
+		return (AstNode)node.getChild(i);
+	}
+
+	private boolean isProperty(AstNode node) {
+		return node.getClass() == AstDot.class || node.getClass() == AstBracket.class;
+	}
+
+	/**
+	 * Emit instructions which push the value of the given node.
+	 */
+	private void value(AstNode node) {
+		Class<?> type = node.getClass();
+		if (type == AstText.class || type == AstString.class || type == AstNumber.class || type == AstBoolean.class) {
+			emit(Program.CONST, 1);
+			emit(constant(node.eval(null, null)));
+		} else if (type == AstNull.class) {
+			emit(Program.CONST, 1);
+			emit(constant(null));
+		} else if (type == AstEval.class || type == AstNested.class) {
+			value(child(node, 0));
+		} else if (type == AstComposite.class) {
+			emit(Program.BUILDER, 1);
+			for (int i = 0; i < node.getCardinality(); i++) {
+				value(child(node, i));
+				emit(Program.APPEND, -1);
+			}
+			emit(Program.TO_STRING, 0);
+		} else if (type == AstChoice.class) {
+			value(child(node, 0));
+			int no = jump(Program.IF_FALSE, -1);
+			value(child(node, 1));
+			int end = jump(Program.GOTO, -1);
+			resolve(no);
+			value(child(node, 2));
+			resolve(end);
+		} else if (type == AstIdentifier.class) {
+			emit(Program.IDENTIFIER, 1);
+			emit(((AstIdentifier)node).getIndex());
+			emit(constant(((AstIdentifier)node).getName()));
+		} else if (type == AstDot.class) {
+			value(((AstProperty)node).getPrefix());
+			emit(Program.DOT, 0);
+			emit(constant(((AstDot)node).getPropertyName()));
+		} else if (type == AstBracket.class) {
+			value(((AstProperty)node).getPrefix());
+			int end = jump(Program.IF_NULL, 0);
+			value(child(node, 1));
+			emit(Program.BRACKET, -1);
+			emit(((AstProperty)node).isStrict() ? 1 : 0);
+			resolve(end);
+		} else if (type == AstMethod.class && isProperty(child(node, 0))) {
+			AstProperty property = (AstProperty)child(node, 0);
+			AstNode params = child(node, 1);
+			value(property.getPrefix());
+			int end = jump(Program.IF_NULL, 0);
+			if (property instanceof AstDot) {
+				emit(Program.CONST, 1);
+				emit(constant(((AstDot)property).getPropertyName()));
+			} else {
+				value(child(property, 1));
+			}
+			emit(Program.METHOD_NAME, 0);
+			for (int i = 0; i < params.getCardinality(); i++) {
+				value(child(params, i));
+			}
+			emit(Program.INVOKE, -1 - params.getCardinality());
+			emit(params.getCardinality());
+			resolve(end);
+		} else if (type == AstBinary.class && binary((AstBinary)node)) {
+			// done
+		} else if (type == AstUnary.class && unary((AstUnary)node)) {
+			// done
+		} else {
+			emit(Program.NODE, 1);
+			emit(constant(node));
+		}
+	}
+
+	private boolean binary(AstBinary node) {
+		AstBinary.Operator operator = node.getOperator();
+		if (operator == AstBinary.AND) {
+			value(child(node, 0));
+			int right = jump(Program.IF_NOT_TRUE, -1);
+			value(child(node, 1));
+			emit(Program.TO_BOOLEAN, 0);
+			int end = jump(Program.GOTO, -1);
+			resolve(right);
+			emit(Program.CONST, 1);
+			emit(constant(Boolean.FALSE));
+			resolve(end);
+			return true;
+		}
+		if (operator == AstBinary.OR) {
+			value(child(node, 0));
+			int right = jump(Program.IF_NOT_TRUE, -1);
+			emit(Program.CONST, 1);
+			emit(constant(Boolean.TRUE));
+			int end = jump(Program.GOTO, -1);
+			resolve(right);
+			value(child(node, 1));
+			emit(Program.TO_BOOLEAN, 0);
+			resolve(end);
+			return true;
+		}
+		int opcode;
+		if (operator == AstBinary.ADD) {
+			opcode = Program.ADD;
+		} else if (operator == AstBinary.SUB) {
+			opcode = Program.SUB;
+		} else if (operator == AstBinary.MUL) {
+			opcode = Program.MUL;
+		} else if (operator == AstBinary.DIV) {
+			opcode = Program.DIV;
+		} else if (operator == AstBinary.MOD) {
+			opcode = Program.MOD;
+		} else if (operator == AstBinary.EQ) {
+			opcode = Program.EQ;
+		} else if (operator == AstBinary.NE) {
+			opcode = Program.NE;
+		} else if (operator == AstBinary.LT) {
+			opcode = Program.LT;
+		} else if (operator == AstBinary.LE) {
+			opcode = Program.LE;
+		} else if (operator == AstBinary.GT) {
+			opcode = Program.GT;
+		} else if (operator == AstBinary.GE) {
+			opcode = Program.GE;
+		} else {
+			return false;
+		}
+		value(child(node, 0));
+		value(child(node, 1));
+		emit(opcode, -1);
+		return true;
+	}
+
+	private boolean unary(AstUnary node) {
+		AstUnary.Operator operator = node.getOperator();
+		int opcode;
+		if (operator == AstUnary.EMPTY) {
+			opcode = Program.EMPTY;
+		} else if (operator == AstUnary.NEG) {
+			opcode = Program.NEG;
+		} else if (operator == AstUnary.NOT) {
+			opcode = Program.NOT;
+		} else {
+			return false;
+		}
+		value(child(node, 0));
+		emit(opcode, 0);
+		return true;
+	}
+}
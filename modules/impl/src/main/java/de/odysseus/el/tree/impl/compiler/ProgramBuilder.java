@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.odysseus.el.tree.ExpressionNode;
+import de.odysseus.el.tree.FunctionNode;
+import de.odysseus.el.tree.IdentifierNode;
+import de.odysseus.el.tree.Node;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeBuilderException;
+import de.odysseus.el.tree.impl.Builder;
+import de.odysseus.el.tree.impl.ast.AstNode;
+import de.odysseus.el.tree.impl.ast.AstText;
+
+/**
+ * Tree builder, which translates parsed expressions into compact {@link Program}s.
+ * The trees built by this class don't keep the syntax tree: the root node is a {@link ProgramNode}
+ * and function and identifier nodes are replaced by lightweight records. This reduces the memory
+ * retained by cached trees. Expressions consisting of literal text only are left unchanged.
+ * <p/>
+ * This builder may be configured by setting property <code>de.odysseus.el.tree.TreeBuilder</code>
+ * to its class name.
+ */
+public class ProgramBuilder extends Builder {
+	private static final long serialVersionUID = 1L;
+
+	private static final class Identifier implements IdentifierNode {
+		private final String name;
+		private final int index;
+
+		Identifier(IdentifierNode node) {
+			this.name = node.getName();
+			this.index = node.getIndex();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public int getCardinality() {
+			return 0;
+		}
+
+		public Node getChild(int i) {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static final class Function implements FunctionNode {
+		private final String name;
+		private final int index;
+		private final int paramCount;
+		private final boolean varArgs;
+
+		Function(FunctionNode node) {
+			this.name = node.getName();
+			this.index = node.getIndex();
+			this.paramCount = node.getParamCount();
+			this.varArgs = node.isVarArgs();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public int getParamCount() {
+			return paramCount;
+		}
+
+		public boolean isVarArgs() {
+			return varArgs;
+		}
+
+		public int getCardinality() {
+			return 0;
+		}
+
+		public Node getChild(int i) {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	public ProgramBuilder() {
+		super();
+	}
+
+	public ProgramBuilder(Feature... features) {
+		super(features);
+	}
+
+	/**
+	 * Parse expression into a plain syntax tree.
+	 */
+	Tree parse(String expression) throws TreeBuilderException {
+		return super.build(expression);
+	}
+
+	/**
+	 * Parse expression and translate it into a program.
+	 */
+	@Override
+	public Tree build(String expression) throws TreeBuilderException {
+		Tree tree = super.build(expression);
+		ExpressionNode root = tree.getRoot();
+		if (!(root instanceof AstNode) || root instanceof AstText) {
+			return tree;
+		}
+		Program program = new ProgramAssembler().assemble((AstNode)root);
+		List<FunctionNode> functions = new ArrayList<FunctionNode>();
+		for (FunctionNode node : tree.getFunctionNodes()) {
+			functions.add(new Function(node));
+		}
+		List<IdentifierNode> identifiers = new ArrayList<IdentifierNode>();
+		for (IdentifierNode node : tree.getIdentifierNodes()) {
+			identifiers.add(new Identifier(node));
+		}
+		ProgramNode node = new ProgramNode(this, expression, program, root.isLeftValue(), root.isMethodInvocation());
+		if (functions.isEmpty()) {
+			functions = Collections.emptyList();
+		}
+		if (identifiers.isEmpty()) {
+			identifiers = Collections.emptyList();
+		}
+		int size = Tree.estimateSize(null, functions, identifiers, expression.length())
+				+ 4 * program.getCodeLength() + 16 * program.getConstantCount();
+		Tree result = new Tree(node, functions, identifiers, tree.isDeferred(), size, tree.getStructuralHash());
+		if (tree.isBindCacheEnabled()) {
+			result.enableBindCache();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import javax.el.ELContext;
+import javax.el.MethodInfo;
+import javax.el.ValueReference;
+
+import de.odysseus.el.tree.Bindings;
+import de.odysseus.el.tree.ExpressionNode;
+import de.odysseus.el.tree.Node;
+
+/**
+ * Root node of a tree created by a {@link ProgramBuilder}.
+ * Values are computed by executing a {@link Program}. All other operations (e.g.
+ * <code>setValue(...)</code> or <code>invoke(...)</code>) require the syntax tree, which
+ * is re-parsed from the expression string on first use and kept afterwards.
+ */
+public final class ProgramNode implements ExpressionNode {
+	private final ProgramBuilder builder;
+	private final String expression;
+	private final Program program;
+	private final boolean leftValue;
+	private final boolean methodInvocation;
+	private volatile ExpressionNode node;
+
+	ProgramNode(ProgramBuilder builder, String expression, Program program, boolean leftValue, boolean methodInvocation) {
+		this.builder = builder;
+		this.expression = expression;
+		this.program = program;
+		this.leftValue = leftValue;
+		this.methodInvocation = methodInvocation;
+	}
+
+	/**
+	 * @return the program
+	 */
+	public Program getProgram() {
+		return program;
+	}
+
+	/**
+	 * @return the syntax tree root node (parsed on demand)
+	 */
+	public ExpressionNode getNode() {
+		if (node == null) {
+			node = builder.parse(expression).getRoot();
+		}
+		return node;
+	}
+
+	public Object getValue(Bindings bindings, ELContext context, Class<?> type) {
+		Object value = program.eval(bindings, context);
+		if (type != null) {
+			value = bindings.convert(value, type);
+		}
+		return value;
+	}
+
+	public boolean isLiteralText() {
+		return false;
+	}
+
+	public boolean isLeftValue() {
+		return leftValue;
+	}
+
+	public boolean isMethodInvocation() {
+		return methodInvocation;
+	}
+
+	public ValueReference getValueReference(Bindings bindings, ELContext context) {
+		return getNode().getValueReference(bindings, context);
+	}
+
+	public Class<?> getType(Bindings bindings, ELContext context) {
+		return getNode().getType(bindings, context);
+	}
+
+	public boolean isReadOnly(Bindings bindings, ELContext context) {
+		return getNode().isReadOnly(bindings, context);
+	}
+
+	public void setValue(Bindings bindings, ELContext context, Object value) {
+		getNode().setValue(bindings, context, value);
+	}
+
+	public MethodInfo getMethodInfo(Bindings bindings, ELContext context, Class<?> returnType, Class<?>[] paramTypes) {
+		return getNode().getMethodInfo(bindings, context, returnType, paramTypes);
+	}
+
+	public Object invoke(Bindings bindings, ELContext context, Class<?> returnType, Class<?>[] paramTypes, Object[] paramValues) {
+		return getNode().invoke(bindings, context, returnType, paramTypes, paramValues);
+	}
+
+	public String getStructuralId(Bindings bindings) {
+		return getNode().getStructuralId(bindings);
+	}
+
+	public int getCardinality() {
+		return getNode().getCardinality();
+	}
+
+	public Node getChild(int i) {
+		return getNode().getChild(i);
+	}
+
+	@Override
+	public String toString() {
+		return getNode().toString();
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeCompiler;
+import de.odysseus.el.tree.impl.ast.AstText;
+
+/**
+ * Tiered tree compiler.
+ * Trees are initially interpreted. The root of each tree is wrapped into a {@link TieredNode},
+ * which counts invocations. When a tree becomes hot (i.e. its invocation count reaches the
+ * compile threshold), it is compiled by an optimizing compiler on a background executor and
+ * the tree's root is replaced by the compiled node. This way, expressions which are evaluated
+ * only a few times don't pay for compilation.
+ * <p/>
+ * Since trees are shared by all expressions created from the same expression string,
+ * promoting a tree affects all of its expressions.
+ */
+public class TieredCompiler implements TreeCompiler {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default number of invocations before a tree is compiled.
+	 */
+	public static final int DEFAULT_THRESHOLD = 1000;
+
+	/**
+	 * Maximum number of trees waiting for compilation in the default executor.
+	 */
+	private static final int DEFAULT_QUEUE_SIZE = 100;
+
+	/**
+	 * Lazily created default executor: a single daemon thread with a bounded queue.
+	 * If the queue is full, compilation requests are rejected and retried later.
+	 */
+	private static final class DefaultExecutor {
+		static final Executor INSTANCE = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(DEFAULT_QUEUE_SIZE), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "juel-compiler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private final TreeCompiler compiler;
+	private final int threshold;
+	private transient Executor executor;
+
+	/**
+	 * Create a tiered compiler using a {@link BytecodeCompiler}, the default threshold
+	 * and the default executor.
+	 */
+	public TieredCompiler() {
+		this(new BytecodeCompiler(), DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Create a tiered compiler using the default executor.
+	 * @param compiler the optimizing compiler
+	 * @param threshold number of invocations before a tree is compiled
+	 */
+	public TieredCompiler(TreeCompiler compiler, int threshold) {
+		this(compiler, threshold, null);
+	}
+
+	/**
+	 * Create a tiered compiler.
+	 * @param compiler the optimizing compiler
+	 * @param threshold number of invocations before a tree is compiled
+	 * @param executor executor used to run compilations (<code>null</code> for the default executor)
+	 */
+	public TieredCompiler(TreeCompiler compiler, int threshold, Executor executor) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("Threshold must be positive");
+		}
+		this.compiler = compiler;
+		this.threshold = threshold;
+		this.executor = executor;
+	}
+
+	/**
+	 * @return the optimizing compiler
+	 */
+	public TreeCompiler getCompiler() {
+		return compiler;
+	}
+
+	/**
+	 * @return number of invocations before a tree is compiled
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	Executor getExecutor() {
+		return executor == null ? DefaultExecutor.INSTANCE : executor;
+	}
+
+	/**
+	 * Wrap the tree's root into a {@link TieredNode}.
+	 * Trees consisting of literal text are returned unchanged.
+	 */
+	public Tree compile(Tree tree) {
+		if (tree.getRoot() instanceof AstText) {
+			return tree;
+		}
+		return new Tree(tree, new TieredNode(tree, this));
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.el.ELContext;
+import javax.el.MethodInfo;
+import javax.el.ValueReference;
+
+import de.odysseus.el.tree.Bindings;
+import de.odysseus.el.tree.ExpressionNode;
+import de.odysseus.el.tree.Node;
+import de.odysseus.el.tree.Tree;
+
+/**
+ * Root node of a tree managed by a {@link TieredCompiler}.
+ * Delegates to the interpreted root until the tree has been compiled, and to the
+ * compiled root afterwards. Invocations of <code>getValue(...)</code> and
+ * <code>invoke(...)</code> are counted until the compile threshold is reached.
+ * <p/>
+ * The counter is intentionally not synchronized: lost updates may delay promotion,
+ * but a state transition guarantees that a tree is submitted at most once at a time.
+ */
+public final class TieredNode implements ExpressionNode {
+	private static final int INTERPRETED = 0;
+	private static final int QUEUED = 1;
+	private static final int COMPILED = 2;
+
+	private final Tree tree;
+	private final TieredCompiler compiler;
+	private final AtomicInteger state = new AtomicInteger(INTERPRETED);
+	private volatile ExpressionNode target;
+	private int count;
+
+	TieredNode(Tree tree, TieredCompiler compiler) {
+		this.tree = tree;
+		this.compiler = compiler;
+		this.target = tree.getRoot();
+	}
+
+	/**
+	 * @return the node currently used to evaluate the tree
+	 */
+	public ExpressionNode getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return <code>true</code> if the tree has been compiled
+	 */
+	public boolean isCompiled() {
+		return state.get() == COMPILED;
+	}
+
+	/**
+	 * @return number of counted invocations (approximate)
+	 */
+	public int getInvocationCount() {
+		return count;
+	}
+
+	private void count() {
+		if (count < compiler.getThreshold() && ++count >= compiler.getThreshold()) {
+			promote();
+		}
+	}
+
+	private void promote() {
+		if (state.compareAndSet(INTERPRETED, QUEUED)) {
+			try {
+				compiler.getExecutor().execute(new Runnable() {
+					public void run() {
+						try {
+							target = compiler.getCompiler().compile(tree).getRoot();
+						} finally {
+							state.set(COMPILED);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				count = 0;
+				state.set(INTERPRETED);
+			}
+		}
+	}
+
+	public Object getValue(Bindings bindings, ELContext context, Class<?> type) {
+		count();
+		return target.getValue(bindings, context, type);
+	}
+
+	public Object invoke(Bindings bindings, ELContext context, Class<?> returnType, Class<?>[] paramTypes, Object[] paramValues) {
+		count();
+		return target.invoke(bindings, context, returnType, paramTypes, paramValues);
+	}
+
+	public boolean isLiteralText() {
+		return target.isLiteralText();
+	}
+
+	public boolean isLeftValue() {
+		return target.isLeftValue();
+	}
+
+	public boolean isMethodInvocation() {
+		return target.isMethodInvocation();
+	}
+
+	public ValueReference getValueReference(Bindings bindings, ELContext context) {
+		return target.getValueReference(bindings, context);
+	}
+
+	public Class<?> getType(Bindings bindings, ELContext context) {
+		return target.getType(bindings, context);
+	}
+
+	public boolean isReadOnly(Bindings bindings, ELContext context) {
+		return target.isReadOnly(bindings, context);
+	}
+
+	public void setValue(Bindings bindings, ELContext context, Object value) {
+		target.setValue(bindings, context, value);
+	}
+
+	public MethodInfo getMethodInfo(Bindings bindings, ELContext context, Class<?> returnType, Class<?>[] paramTypes) {
+		return target.getMethodInfo(bindings, context, returnType, paramTypes);
+	}
+
+	public String getStructuralId(Bindings bindings) {
+		return target.getStructuralId(bindings);
+	}
+
+	public int getCardinality() {
+		return target.getCardinality();
+	}
+
+	public Node getChild(int i) {
+		return target.getChild(i);
+	}
+
+	@Override
+	public String toString() {
+		return target.toString();
+	}
+}
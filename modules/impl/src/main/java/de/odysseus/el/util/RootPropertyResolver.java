@@ -26,6 +26,10 @@ import javax.el.ELResolver;
 import javax.el.PropertyNotFoundException;
 import javax.el.PropertyNotWritableException;
 
+import de.odysseus.el.spi.PropertyAccessor;
+import de.odysseus.el.spi.PropertyAccessorProvider;
+import de.odysseus.el.spi.PropertyAccessors;
+
 /**
  * Simple root property resolver implementation. This resolver handles root properties (i.e.
  * <code>base == null &amp;&amp; property instanceof String</code>), which are stored in a map. The
@@ -35,7 +39,7 @@ import javax.el.PropertyNotWritableException;
  * 
  * @author Christoph Beck
  */
-public class RootPropertyResolver extends ELResolver {
+public class RootPropertyResolver extends ELResolver implements PropertyAccessorProvider {
 	private final Map<String, Object> map = Collections.synchronizedMap(new HashMap<String, Object>());
 	private final boolean readOnly;
 
@@ -90,6 +94,25 @@ public class RootPropertyResolver extends ELResolver {
 		return null;
 	}
 
+	/**
+	 * Root properties are not cached, so this method answers <code>null</code> for a
+	 * <code>null</code> base and {@link PropertyAccessorProvider#UNRESOLVED} otherwise.
+	 */
+	public PropertyAccessor getPropertyAccessor(ELContext context, Object base, Object property) {
+		if (!PropertyAccessors.isGetValueDeclaredBy(this, RootPropertyResolver.class)) {
+			return null;
+		}
+		return isResolvable(base) ? null : UNRESOLVED;
+	}
+
+	/**
+	 * Answers the class of this resolver: root properties are never cached, so accessors do not
+	 * depend on the map of root properties.
+	 */
+	public Object getPropertyAccessorKey() {
+		return PropertyAccessors.isGetValueDeclaredBy(this, RootPropertyResolver.class) ? getClass() : null;
+	}
+
 	@Override
 	public boolean isReadOnly(ELContext context, Object base, Object property) {
 		return resolve(context, base, property) ? readOnly : false;
@@ -26,14 +26,17 @@ import javax.el.FunctionMapper;
 import javax.el.ValueExpression;
 import javax.el.VariableMapper;
 
+import de.odysseus.el.tree.VersionedMapper;
+
 /**
  * Simple context implementation.
  * 
  * @author Christoph Beck
  */
 public class SimpleContext extends ELContext {
-	static class Functions extends FunctionMapper {
+	static class Functions extends FunctionMapper implements VersionedMapper {
 		Map<String, Method> map = Collections.emptyMap();
+		volatile long version;
 
 		@Override
 		public Method resolveFunction(String prefix, String localName) {
@@ -45,11 +48,17 @@ public class SimpleContext extends ELContext {
 				map = new HashMap<String, Method>();
 			}
 			map.put(prefix + ":" + localName, method);
+			version++;
+		}
+
+		public long getVersion() {
+			return version;
 		}
 	}
 
-	static class Variables extends VariableMapper {
+	static class Variables extends VariableMapper implements VersionedMapper {
 		Map<String, ValueExpression> map = Collections.emptyMap();
+		volatile long version;
 
 		@Override
 		public ValueExpression resolveVariable(String variable) {
@@ -61,7 +70,13 @@ public class SimpleContext extends ELContext {
 			if (map.isEmpty()) {
 				map = new HashMap<String, ValueExpression>();
 			}
-			return map.put(variable, expression);
+			ValueExpression previous = map.put(variable, expression);
+			version++;
+			return previous;
+		}
+
+		public long getVersion() {
+			return version;
 		}
 	}
 
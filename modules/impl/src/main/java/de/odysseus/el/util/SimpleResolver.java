@@ -27,6 +27,10 @@ import javax.el.ListELResolver;
 import javax.el.MapELResolver;
 import javax.el.ResourceBundleELResolver;
 
+import de.odysseus.el.spi.PropertyAccessor;
+import de.odysseus.el.spi.PropertyAccessorProvider;
+import de.odysseus.el.spi.PropertyAccessors;
+
 /**
  * Simple resolver implementation. This resolver handles root properties (top-level identifiers).
  * Resolving "real" properties (<code>base != null</code>) is delegated to a resolver specified at
@@ -34,7 +38,7 @@ import javax.el.ResourceBundleELResolver;
  * 
  * @author Christoph Beck
  */
-public class SimpleResolver extends ELResolver {
+public class SimpleResolver extends ELResolver implements PropertyAccessorProvider {
 	private static final ELResolver DEFAULT_RESOLVER_READ_ONLY = new CompositeELResolver() {
 		{
 			add(new ArrayELResolver(true));
@@ -120,6 +124,20 @@ public class SimpleResolver extends ELResolver {
 		return delegate.getValue(context, base, property);
 	}
 
+	public PropertyAccessor getPropertyAccessor(ELContext context, Object base, Object property) {
+		if (!PropertyAccessors.isGetValueDeclaredBy(this, SimpleResolver.class)) {
+			return null;
+		}
+		return delegate.getPropertyAccessor(context, base, property);
+	}
+
+	public Object getPropertyAccessorKey() {
+		if (!PropertyAccessors.isGetValueDeclaredBy(this, SimpleResolver.class)) {
+			return null;
+		}
+		return delegate.getPropertyAccessorKey();
+	}
+
 	@Override
 	public boolean isReadOnly(ELContext context, Object base, Object property) {
 		return delegate.isReadOnly(context, base, property);
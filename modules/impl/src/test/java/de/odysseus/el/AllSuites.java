@@ -27,6 +27,7 @@ public class AllSuites {
 		suite.addTest(de.odysseus.el.tree.AllTests.suite());
 		suite.addTest(de.odysseus.el.tree.impl.AllTests.suite());
 		suite.addTest(de.odysseus.el.tree.impl.ast.AllTests.suite());
+		suite.addTest(de.odysseus.el.tree.impl.compiler.AllTests.suite());
 		return suite;
 	}
 
@@ -15,6 +15,21 @@
  */ 
 package de.odysseus.el;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.odysseus.el.tree.PartitionedTreeCache;
+import de.odysseus.el.tree.TreeCache;
+import de.odysseus.el.tree.TreeStore;
+import de.odysseus.el.tree.impl.Cache;
+import de.odysseus.el.tree.impl.InstrumentedCache;
+import de.odysseus.el.tree.impl.PartitionedCache;
+import de.odysseus.el.tree.impl.TinyLfuCache;
 import de.odysseus.el.util.SimpleContext;
 import de.odysseus.el.util.SimpleResolver;
 
@@ -45,4 +60,78 @@ public class ExpressionFactoryImplTest extends TestCase {
 		context.getELResolver().setValue(context, null, "foo", this);
 		assertEquals(bar(), factory.createMethodExpression(context, "${foo.bar}", null, new Class[0]).invoke(context, null));
 	}
+
+	public void testCreateExpressionInPartition() {
+		PartitionedCache cache = new PartitionedCache(10, 0);
+		ExpressionFactoryImpl factory = new ExpressionFactoryImpl(new TreeStore(BUILDER, cache));
+		SimpleContext context = new SimpleContext(new SimpleResolver());
+		context.putContext(PartitionedTreeCache.class, "tenant");
+		assertEquals(1l, factory.createValueExpression(context, "${1}", Object.class).getValue(context));
+		factory.createMethodExpression(context, "${foo.bar}", null, new Class[0]);
+		assertEquals(2, cache.size("tenant"));
+		assertEquals(0, cache.size(null));
+	}
+
+	public void testCacheMBean() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName pattern = new ObjectName("de.odysseus.el:type=TreeCache,*");
+		int count = server.queryNames(pattern, null).size();
+		Properties properties = new Properties();
+		properties.setProperty(ExpressionFactoryImpl.PROP_CACHE_MBEAN, "true");
+		ExpressionFactoryImpl factory = new ExpressionFactoryImpl(properties);
+		Set<ObjectName> names = server.queryNames(pattern, null);
+		assertEquals(count + 1, names.size());
+
+		SimpleContext context = new SimpleContext(new SimpleResolver());
+		factory.createValueExpression(context, "${1}", Object.class);
+		long misses = 0;
+		for (ObjectName name : names) {
+			misses += (Long) server.getAttribute(name, "MissCount");
+		}
+		assertTrue(misses > 0);
+
+		factory.close();
+		assertEquals(count, server.queryNames(pattern, null).size());
+	}
+
+	public void testCacheMBeanWithPartitions() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(ExpressionFactoryImpl.PROP_CACHE_MBEAN, "true");
+		properties.setProperty(TreeCache.class.getName(), PartitionedCache.class.getName());
+		final TreeStore[] store = new TreeStore[1];
+		ExpressionFactoryImpl factory = new ExpressionFactoryImpl(properties) {
+			@Override
+			protected TreeStore createTreeStore(int defaultCacheSize, Profile profile, Properties properties) {
+				return store[0] = super.createTreeStore(defaultCacheSize, profile, properties);
+			}
+		};
+		try {
+			SimpleContext context = new SimpleContext(new SimpleResolver());
+			context.putContext(PartitionedTreeCache.class, "tenantA");
+			factory.createValueExpression(context, "${1}", Object.class);
+			PartitionedCache cache = (PartitionedCache) ((InstrumentedCache) store[0].getCache()).getCache();
+			assertEquals(1, cache.size("tenantA"));
+			assertEquals(0, cache.size(null));
+		} finally {
+			factory.close();
+		}
+	}
+
+	public void testPrewarm() throws InterruptedException {
+		assertEquals(2, factory.prewarm(Arrays.asList("${1}", "${foo.bar}")).getCount());
+	}
+
+	public void testCreateTreeCache() {
+		final Properties properties = new Properties();
+		final TreeCache[] caches = new TreeCache[2];
+		new ExpressionFactoryImpl(new TreeStore(null, null)) {
+			{
+				caches[0] = createTreeCache(10, properties);
+				properties.setProperty(TreeCache.class.getName(), TinyLfuCache.class.getName());
+				caches[1] = createTreeCache(10, properties);
+			}
+		};
+		assertTrue(caches[0] instanceof Cache);
+		assertTrue(caches[1] instanceof TinyLfuCache);
+	}
 }
@@ -116,6 +116,16 @@ public class TreeValueExpressionTest extends TestCase {
 		assertFalse(e1.equals(e2));
 	}
 
+	public void testHashCodeWithUnboundIdentifiers() {
+		TreeValueExpression e1 = new TreeValueExpression(store, null, null, null, "#{userBean.name}", Object.class);
+		TreeValueExpression e2 = new TreeValueExpression(store, null, null, null, "#{orderBean.name}", Object.class);
+		assertFalse(e1.hashCode() == e2.hashCode());
+		assertFalse(e1.equals(e2));
+		assertFalse(new TreeValueExpression(store, null, null, null, "${foo}", Object.class).hashCode() == new TreeValueExpression(store, null, null, null, "${bar}", Object.class).hashCode());
+		assertEquals(e1, new TreeValueExpression(store, null, null, null, "#{userBean.name}", Object.class));
+		assertEquals(e1.hashCode(), new TreeValueExpression(store, null, null, null, "#{userBean.name}", Object.class).hashCode());
+	}
+
 	public void testGetExpressionString() {
 		assertEquals("foo", new TreeValueExpression(store, null, null, null, "foo", Object.class).getExpressionString());
 	}
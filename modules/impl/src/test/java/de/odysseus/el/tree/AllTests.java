@@ -26,6 +26,7 @@ public class AllTests {
 		suite.addTestSuite(BindingsTest.class);
 		suite.addTestSuite(NodePrinterTest.class);
 		suite.addTestSuite(TreeStoreTest.class);
+		suite.addTestSuite(FailureCacheTest.class);
 		suite.addTestSuite(TreeTest.class);
 		//$JUnit-END$
 		return suite;
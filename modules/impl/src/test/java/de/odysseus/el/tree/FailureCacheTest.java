@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree;
+
+import de.odysseus.el.TestCase;
+
+public class FailureCacheTest extends TestCase {
+	TreeBuilderException failure(String expression) {
+		return new TreeBuilderException(expression, 0, "x", "y", "z");
+	}
+
+	public void testGet() {
+		FailureCache cache = new FailureCache(10, 60000);
+		assertNull(cache.get("${"));
+		assertEquals(1, cache.getMissCount());
+
+		TreeBuilderException failure = failure("${");
+		cache.put("${", failure);
+		assertSame(failure, cache.get("${"));
+		assertSame(failure, cache.get("${"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.size());
+	}
+
+	public void testExpiration() throws InterruptedException {
+		FailureCache cache = new FailureCache(10, 10);
+		cache.put("${", failure("${"));
+		Thread.sleep(50);
+		assertNull(cache.get("${"));
+		assertEquals(1, cache.getExpirationCount());
+		assertEquals(0, cache.size());
+
+		cache.put("${", failure("${"));
+		assertEquals(1, cache.size());
+	}
+
+	public void testEviction() {
+		FailureCache cache = new FailureCache(2, 60000);
+		cache.put("1", failure("1"));
+		cache.put("2", failure("2"));
+		cache.put("3", failure("3"));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertNull(cache.get("1"));
+		assertNotNull(cache.get("2"));
+		assertNotNull(cache.get("3"));
+	}
+
+	public void testExpirationOnPut() throws InterruptedException {
+		FailureCache cache = new FailureCache(10, 10);
+		cache.put("1", failure("1"));
+		cache.put("2", failure("2"));
+		Thread.sleep(50);
+		cache.put("3", failure("3"));
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.getExpirationCount());
+		assertEquals(0, cache.getMissCount());
+	}
+
+	public void testReplace() {
+		FailureCache cache = new FailureCache(2, 60000);
+		cache.put("1", failure("1"));
+		TreeBuilderException failure = failure("1");
+		cache.put("1", failure);
+		assertEquals(1, cache.size());
+		cache.put("2", failure("2"));
+		assertEquals(2, cache.size());
+		assertEquals(0, cache.getEvictionCount());
+		assertSame(failure, cache.get("1"));
+
+		cache.put("3", failure("3"));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertNull(cache.get("1"));
+	}
+}
@@ -15,10 +15,17 @@
  */ 
 package de.odysseus.el.tree;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import de.odysseus.el.TestCase;
 import de.odysseus.el.tree.Tree;
 import de.odysseus.el.tree.TreeStore;
 import de.odysseus.el.tree.impl.Cache;
+import de.odysseus.el.tree.impl.PartitionedCache;
 
 public class TreeStoreTest extends TestCase {
 	public void test() {
@@ -29,4 +36,244 @@ public class TreeStoreTest extends TestCase {
 		assertNotNull(tree);
 		assertSame(tree, store.get("1"));
 	}
+
+	static class BlockingBuilder implements TreeBuilder {
+		private static final long serialVersionUID = 1L;
+		final AtomicInteger builds = new AtomicInteger();
+		final CountDownLatch building = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		public Tree build(String expression) throws TreeBuilderException {
+			builds.incrementAndGet();
+			building.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return BUILDER.build(expression);
+		}
+	}
+
+	Thread[] get(final TreeStore store, final String expression, final Object[] results) throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(results.length);
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						results[index] = store.get(expression);
+					} catch (RuntimeException e) {
+						results[index] = e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		started.await();
+		return threads;
+	}
+
+	public void testConcurrentMisses() throws InterruptedException {
+		BlockingBuilder builder = new BlockingBuilder();
+		TreeStore store = new TreeStore(builder, new Cache(10));
+		Object[] results = new Object[4];
+		Thread[] threads = get(store, "${foo}", results);
+		builder.building.await();
+		Thread.sleep(100);
+		builder.release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, builder.builds.get());
+		for (Object result : results) {
+			assertSame(results[0], result);
+		}
+		assertSame(results[0], store.get("${foo}"));
+	}
+
+	public void testConcurrentFailures() throws InterruptedException {
+		BlockingBuilder builder = new BlockingBuilder();
+		TreeStore store = new TreeStore(builder, new Cache(10));
+		Object[] results = new Object[4];
+		Thread[] threads = get(store, "${foo", results);
+		builder.building.await();
+		Thread.sleep(100);
+		builder.release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, builder.builds.get());
+		assertTrue(results[0] instanceof TreeBuilderException);
+		for (Object result : results) {
+			assertSame(results[0], result);
+		}
+		try {
+			store.get("${foo");
+			fail();
+		} catch (TreeBuilderException e) {
+			assertNotSame(results[0], e);
+		}
+		assertEquals(2, builder.builds.get());
+	}
+
+	public void testFailureCache() {
+		final AtomicInteger builds = new AtomicInteger();
+		TreeBuilder builder = new TreeBuilder() {
+			private static final long serialVersionUID = 1L;
+			public Tree build(String expression) throws TreeBuilderException {
+				builds.incrementAndGet();
+				return BUILDER.build(expression);
+			}
+		};
+		FailureCache failures = new FailureCache(10, 60000);
+		TreeStore store = new TreeStore(builder, new Cache(10), failures);
+		assertSame(failures, store.getFailureCache());
+
+		TreeBuilderException failure = null;
+		try {
+			store.get("${foo");
+			fail();
+		} catch (TreeBuilderException e) {
+			failure = e;
+		}
+		try {
+			store.get("${foo");
+			fail();
+		} catch (TreeBuilderException e) {
+			assertSame(failure, e);
+		}
+		assertEquals(1, builds.get());
+		assertEquals(1, failures.getHitCount());
+
+		// same without tree cache
+		store = new TreeStore(builder, null, new FailureCache(10, 60000));
+		for (int i = 0; i < 3; i++) {
+			try {
+				store.get("${bar");
+				fail();
+			} catch (TreeBuilderException e) {
+				// ok
+			}
+		}
+		assertEquals(2, builds.get());
+	}
+
+	public void testPartitions() {
+		PartitionedCache cache = new PartitionedCache(10, 0);
+		TreeStore store = new TreeStore(BUILDER, cache);
+		Tree tree = store.get("a", "${foo}");
+		assertSame(tree, cache.get("a", "${foo}"));
+		assertNull(cache.get("b", "${foo}"));
+		assertSame(tree, store.get("a", "${foo}"));
+		assertNotSame(tree, store.get("b", "${foo}"));
+		assertEquals(1, cache.size("b"));
+
+		// null partition and non-partitioned caches
+		store.get(null, "${bar}");
+		assertEquals(1, cache.size(null));
+		store = new TreeStore(BUILDER, new Cache(10));
+		assertSame(store.get("${foo}"), store.get("a", "${foo}"));
+	}
+
+	public void testPrewarm() throws InterruptedException {
+		Cache cache = new Cache(100);
+		TreeStore store = new TreeStore(BUILDER, cache);
+		List<String> expressions = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			expressions.add("${x + " + i + "}");
+		}
+		expressions.add("${y +}");
+		PrewarmResult result = store.prewarm(expressions);
+		assertEquals(50, result.getCount());
+		assertEquals(50, cache.size());
+		assertNotNull(cache.get("${x + 49}"));
+		assertFalse(result.isSuccess());
+		assertEquals(1, result.getFailures().size());
+		assertEquals("${y +}", result.getFailures().get("${y +}").getExpression());
+		assertTrue(result.getElapsedMillis() >= 0);
+
+		assertTrue(store.prewarm(Collections.<String>emptyList()).isSuccess());
+	}
+
+	public void testNearCache() {
+		final AtomicInteger lookups = new AtomicInteger();
+		final Cache shared = new Cache(10);
+		TreeCache cache = new TreeCache() {
+			public Tree get(String expression) {
+				lookups.incrementAndGet();
+				return shared.get(expression);
+			}
+			public void put(String expression, Tree tree) {
+				shared.put(expression, tree);
+			}
+		};
+		TreeStore store = new TreeStore(BUILDER, cache, null, 2);
+		String one = "${one}";
+		String two = "${two}";
+		Tree tree = store.get(one);
+		store.get(two);
+		assertEquals(4, lookups.get()); // lookup plus lookup in build
+
+		// building "${two}" invalidated the near cache, so look up again
+		assertSame(tree, store.get(one));
+		store.get(two);
+		assertEquals(6, lookups.get());
+
+		// now hits are served from the near cache
+		assertSame(tree, store.get(one));
+		store.get(two);
+		assertEquals(6, lookups.get());
+
+		// an equal but different string isn't found in the near cache
+		assertSame(tree, store.get(new String(one)));
+		assertEquals(7, lookups.get());
+
+		// adding a tree to the shared cache invalidates the near cache
+		store.get("${three}");
+		lookups.set(0);
+		assertSame(tree, store.get(one));
+		assertEquals(1, lookups.get());
+	}
+
+	public void testNearCacheVersioned() {
+		final AtomicInteger lookups = new AtomicInteger();
+		final AtomicInteger touches = new AtomicInteger();
+		final Cache shared = new Cache(2);
+		TreeCache cache = new VersionedTreeCache() {
+			public Tree get(String expression) {
+				lookups.incrementAndGet();
+				return shared.get(expression);
+			}
+			public void put(String expression, Tree tree) {
+				shared.put(expression, tree);
+			}
+			public long getVersion() {
+				return shared.getVersion();
+			}
+			public void touch(String expression) {
+				touches.incrementAndGet();
+			}
+		};
+		TreeStore store = new TreeStore(BUILDER, cache, null, 2);
+		String one = "${one}";
+		String two = "${two}";
+		Tree tree = store.get(one);
+		store.get(two);
+		assertEquals(4, lookups.get()); // lookup plus lookup in build
+
+		// adding trees without evicting others doesn't invalidate the near cache
+		assertSame(tree, store.get(one));
+		store.get(two);
+		assertEquals(4, lookups.get());
+		assertEquals(2, touches.get());
+
+		// evicting "${one}" invalidates the near cache
+		store.get("${three}");
+		lookups.set(0);
+		assertNotSame(tree, store.get(one));
+		assertEquals(2, lookups.get());
+	}
 }
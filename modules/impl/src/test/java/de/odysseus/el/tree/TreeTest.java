@@ -15,9 +15,15 @@
  */ 
 package de.odysseus.el.tree;
 
+import java.lang.ref.WeakReference;
+
+import javax.el.ValueExpression;
+import javax.el.VariableMapper;
+
 import de.odysseus.el.ObjectValueExpression;
 import de.odysseus.el.TestCase;
 import de.odysseus.el.misc.TypeConverter;
+import de.odysseus.el.misc.TypeConverterImpl;
 import de.odysseus.el.tree.Bindings;
 import de.odysseus.el.util.SimpleContext;
 
@@ -31,6 +37,22 @@ public class TreeTest extends TestCase {
 		return op;
 	}
 
+	static class CountingMapper extends VariableMapper implements VersionedMapper {
+		int count;
+		@Override
+		public ValueExpression resolveVariable(String variable) {
+			count++;
+			return null;
+		}
+		@Override
+		public ValueExpression setVariable(String variable, ValueExpression expression) {
+			return null;
+		}
+		public long getVersion() {
+			return 0;
+		}
+	}
+
 	private SimpleContext context;
 	
 	@Override
@@ -116,4 +138,100 @@ public class TreeTest extends TestCase {
 		assertNull(bindings.getVariable(2));
 		try { bindings.getVariable(3); fail(); } catch (Exception e) {}
 	}
+
+	public void testSizeEstimate() {
+		Tree small = parse("${a}");
+		Tree large = parse("${a.b + ns:f0() + x}");
+		Tree text = parse("foo ${a} " + new String(new char[1000]).replace('\0', 'x'));
+		assertTrue(small.getSizeEstimate() > 0);
+		assertTrue(large.getSizeEstimate() > small.getSizeEstimate());
+		assertTrue(text.getSizeEstimate() > 2000);
+		assertEquals(small.getSizeEstimate(), new Tree(small, small.getRoot()).getSizeEstimate());
+	}
+
+	public void testInternBindings() {
+		assertSame(Bindings.EMPTY, parse("${1}").bind(null, null));
+		assertSame(Bindings.EMPTY, parse("foo").bind(context.getFunctionMapper(), context.getVariableMapper()));
+		assertNotSame(Bindings.EMPTY, parse("${1}").bind(null, null, new TypeConverterImpl()));
+
+		Bindings bindings = parse("${ns:f0() + foo}").bind(context.getFunctionMapper(), context.getVariableMapper());
+		assertSame(bindings, parse("${ns:f0()+foo}").bind(context.getFunctionMapper(), context.getVariableMapper()));
+		assertSame(bindings, parse("${ns:f0() + bar}").bind(context.getFunctionMapper(), context.getVariableMapper()));
+		assertNotSame(bindings, parse("${ns:f1(1) + foo}").bind(context.getFunctionMapper(), context.getVariableMapper()));
+
+		// bindings with bound variables are not interned
+		bindings = parse("${ns:f0() + v0}").bind(context.getFunctionMapper(), context.getVariableMapper());
+		assertNotSame(bindings, parse("${ns:f0() + v0}").bind(context.getFunctionMapper(), context.getVariableMapper()));
+		Bindings other = new Bindings(null, new ValueExpression[]{ new ObjectValueExpression(TypeConverter.DEFAULT, 0, long.class) });
+		assertSame(other, Bindings.intern(other));
+		assertNotSame(other, Bindings.intern(new Bindings(null, new ValueExpression[]{ other.getVariable(0) })));
+	}
+
+	public void testBindCache() {
+		Tree tree = parse("${ns:f0() + v0}");
+		CountingMapper counting = new CountingMapper();
+		tree.bind(context.getFunctionMapper(), counting);
+		tree.bind(context.getFunctionMapper(), counting);
+		assertEquals(2, counting.count);
+
+		tree.enableBindCache();
+		tree.bind(context.getFunctionMapper(), counting);
+		tree.bind(context.getFunctionMapper(), counting);
+		assertEquals(3, counting.count);
+
+		Bindings bindings = tree.bind(context.getFunctionMapper(), context.getVariableMapper());
+		assertSame(bindings, tree.bind(context.getFunctionMapper(), context.getVariableMapper()));
+		assertNotSame(bindings, tree.bind(context.getFunctionMapper(), context.getVariableMapper(), new TypeConverterImpl()));
+
+		// changing a mapping invalidates the cache
+		bindings = tree.bind(context.getFunctionMapper(), context.getVariableMapper());
+		context.setVariable("v0", new ObjectValueExpression(TypeConverter.DEFAULT, 2, long.class));
+		Bindings rebound = tree.bind(context.getFunctionMapper(), context.getVariableMapper());
+		assertNotSame(bindings, rebound);
+		assertSame(context.getVariableMapper().resolveVariable("v0"), rebound.getVariable(0));
+
+		// unused mappers are ignored
+		tree = parse("${ns:f0()}");
+		tree.enableBindCache();
+		bindings = tree.bind(context.getFunctionMapper(), context.getVariableMapper());
+		assertSame(bindings, tree.bind(context.getFunctionMapper(), new SimpleContext().getVariableMapper()));
+
+		// copies keep the bind cache enabled
+		assertTrue(new Tree(tree, tree.getRoot()).isBindCacheEnabled());
+	}
+
+	public void testBindCacheWeak() throws InterruptedException {
+		Tree tree = parse("${v0}");
+		tree.enableBindCache();
+		SimpleContext request = new SimpleContext();
+		request.setVariable("v0", new ObjectValueExpression(TypeConverter.DEFAULT, 0, long.class));
+		WeakReference<Object> mapper = new WeakReference<Object>(request.getVariableMapper());
+		WeakReference<Object> variable = new WeakReference<Object>(tree.bind(null, request.getVariableMapper()).getVariable(0));
+		request = null;
+		for (int i = 0; i < 50 && (mapper.get() != null || variable.get() != null); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(mapper.get());
+		assertNull(variable.get());
+	}
+
+	public void testStructuralHash() {
+		Tree tree = parse("${a.b + ns:f0()}");
+		assertEquals(tree.getStructuralHash(), parse("${x.b + ns:f1()}").getStructuralHash());
+		assertEquals(tree.getStructuralHash(), new Tree(tree, tree.getRoot()).getStructuralHash());
+		assertFalse(tree.getStructuralHash() == parse("${a.c + ns:f0()}").getStructuralHash());
+		assertFalse(tree.getStructuralHash() == parse("${a.b - ns:f0()}").getStructuralHash());
+		assertFalse(tree.getStructuralHash() == parse("#{a.b + ns:f0()}").getStructuralHash());
+		assertFalse(tree.getStructuralHash() == parse("${1.0 + ns:f0()}").getStructuralHash());
+
+		// names of unbound identifiers are mixed in
+		Tree v0 = parse("${v0}");
+		Tree v1 = parse("${v1}");
+		assertEquals(v0.getStructuralHash(), v1.getStructuralHash());
+		assertFalse(v0.getStructuralHash(v0.bind(null, null)) == v1.getStructuralHash(v1.bind(null, null)));
+		Bindings b0 = v0.bind(null, context.getVariableMapper());
+		assertFalse(v0.getStructuralHash(b0) == v0.getStructuralHash(v0.bind(null, null)));
+		assertEquals(v0.getStructuralHash(b0), v1.getStructuralHash(v1.bind(null, context.getVariableMapper())));
+	}
 }
@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import de.odysseus.el.TestCase;
+
+public class AdaptiveCacheTest extends TestCase {
+	static class FixedHeapUsage extends AdaptiveCache.HeapUsage {
+		float usage;
+
+		@Override
+		float get() {
+			return usage;
+		}
+	}
+
+	public void testSingleThread() {
+		FixedHeapUsage heap = new FixedHeapUsage();
+		AdaptiveCache cache = new AdaptiveCache(2, 8, heap);
+		assertEquals(8, cache.getTarget());
+		for (int i = 1; i <= 10; i++) {
+			cache.put("" + i, parse("" + i));
+		}
+		assertEquals(8, cache.size());
+		assertNull(cache.get("2"));
+		assertNotNull(cache.get("3"));
+		assertNotNull(cache.get("10"));
+	}
+
+	public void testShrink() {
+		FixedHeapUsage heap = new FixedHeapUsage();
+		AdaptiveCache cache = new AdaptiveCache(2, 8, heap);
+		for (int i = 1; i <= 8; i++) {
+			cache.put("" + i, parse("" + i));
+		}
+		heap.usage = 0.9f;
+		cache.adjust();
+		assertEquals(4, cache.getTarget());
+		assertEquals(4, cache.size());
+		assertNull(cache.get("4"));
+		assertNotNull(cache.get("5"));
+		cache.adjust();
+		assertEquals(2, cache.getTarget());
+		cache.adjust();
+		assertEquals(2, cache.getTarget());
+		assertEquals(2, cache.size());
+	}
+
+	public void testAdjustOnGet() {
+		FixedHeapUsage heap = new FixedHeapUsage();
+		AdaptiveCache cache = new AdaptiveCache(2, 8, heap);
+		for (int i = 1; i <= 8; i++) {
+			cache.put("" + i, parse("" + i));
+		}
+		heap.usage = 0.9f;
+		for (int i = 0; i < AdaptiveCache.READ_CHECK_INTERVAL; i++) {
+			cache.get("8");
+		}
+		assertEquals(4, cache.getTarget());
+		assertEquals(4, cache.size());
+	}
+
+	public void testGrow() {
+		FixedHeapUsage heap = new FixedHeapUsage();
+		AdaptiveCache cache = new AdaptiveCache(2, 8, heap);
+		heap.usage = 0.9f;
+		cache.adjust();
+		cache.adjust();
+		assertEquals(2, cache.getTarget());
+
+		// no change between low and high usage
+		heap.usage = 0.7f;
+		cache.adjust();
+		assertEquals(2, cache.getTarget());
+
+		heap.usage = 0.1f;
+		cache.adjust();
+		assertEquals(3, cache.getTarget());
+		for (int i = 0; i < 10; i++) {
+			cache.adjust();
+		}
+		assertEquals(8, cache.getTarget());
+	}
+
+	public void testCapacity() {
+		AdaptiveCache cache = new AdaptiveCache(100);
+		assertEquals(10, cache.getMinCapacity());
+		assertEquals(100, cache.getMaxCapacity());
+		try {
+			new AdaptiveCache(10, 5);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+}
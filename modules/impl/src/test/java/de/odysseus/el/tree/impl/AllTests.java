@@ -26,6 +26,14 @@ public class AllTests {
 		suite.addTestSuite(CacheTest.class);
 		suite.addTestSuite(ScannerTest.class);
 		suite.addTestSuite(ParserTest.class);
+		suite.addTestSuite(TinyLfuCacheTest.class);
+		suite.addTestSuite(WeightedCacheTest.class);
+		suite.addTestSuite(AdaptiveCacheTest.class);
+		suite.addTestSuite(TreeArchiveTest.class);
+		suite.addTestSuite(OffHeapCacheTest.class);
+		suite.addTestSuite(PartitionedCacheTest.class);
+		suite.addTestSuite(InstrumentedCacheTest.class);
+		suite.addTestSuite(NodeInternerTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.odysseus.el.TestCase;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeBuilderException;
+import de.odysseus.el.tree.TreeCache;
+import de.odysseus.el.tree.TreeStore;
+
+public class InstrumentedCacheTest extends TestCase {
+	public void testStatistics() {
+		InstrumentedCache cache = new InstrumentedCache(new Cache(2), 2);
+		assertEquals(0.0, cache.getHitRatio());
+		assertEquals(0.0, cache.getAverageMissLatency());
+		TreeStore store = new TreeStore(BUILDER, cache);
+		store.get("1");
+		store.get("1");
+		store.get("2");
+		store.get("3");
+		assertEquals(1, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertEquals(0.25, cache.getHitRatio());
+		assertEquals(3, cache.getPutCount());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(2, cache.getSize());
+		assertEquals(2, cache.getCapacity());
+
+		long count = 0;
+		for (long bucket : cache.getMissLatencyHistogram()) {
+			count += bucket;
+		}
+		assertEquals(3, count);
+		assertEquals(cache.getMissLatencyBuckets().length + 1, cache.getMissLatencyHistogram().length);
+		assertTrue(cache.getAverageMissLatency() >= 0);
+
+		cache.resetStatistics();
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+		assertEquals(0, cache.getPutCount());
+		assertEquals(0, cache.getEvictionCount());
+		assertEquals(2, cache.getSize());
+	}
+
+	public void testFailedBuilds() {
+		InstrumentedCache cache = new InstrumentedCache(new Cache(2), 2);
+		TreeStore store = new TreeStore(BUILDER, cache);
+		for (int i = 0; i < 2; i++) {
+			try {
+				store.get("${foo+}");
+				fail();
+			} catch (TreeBuilderException e) {
+				// expected
+			}
+		}
+		assertEquals(2, cache.getMissCount());
+		store.get("1");
+		assertEquals(3, cache.getMissCount());
+		long count = 0;
+		for (long bucket : cache.getMissLatencyHistogram()) {
+			count += bucket;
+		}
+		assertEquals(1, count);
+	}
+
+	public void testPartitions() {
+		PartitionedCache partitioned = new PartitionedCache(10, 0);
+		InstrumentedCache cache = new InstrumentedCache(partitioned, 10);
+		TreeStore store = new TreeStore(BUILDER, cache);
+		store.get("tenantA", "1");
+		store.get("tenantA", "1");
+		assertEquals(1, partitioned.size("tenantA"));
+		assertEquals(0, partitioned.size(null));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		// partitions are ignored if the wrapped cache doesn't support them
+		cache = new InstrumentedCache(new Cache(10), 10);
+		store = new TreeStore(BUILDER, cache);
+		store.get("tenantA", "1");
+		assertNotNull(cache.get("1"));
+	}
+
+	public void testFactory() {
+		InstrumentedCache cache = new InstrumentedCache(new WeightedCache(2 * WeightedCache.AVERAGE_WEIGHT), 2, new InstrumentedCache.Factory() {
+			public TreeCache newCache(int capacity) {
+				return new WeightedCache((long) capacity * WeightedCache.AVERAGE_WEIGHT);
+			}
+		});
+		cache.put("1", parse("1"));
+		cache.resize(10);
+		assertTrue(cache.getCache() instanceof WeightedCache);
+		assertEquals(10L * WeightedCache.AVERAGE_WEIGHT, ((WeightedCache) cache.getCache()).maxWeight());
+		assertNotNull(cache.get("1"));
+		cache.clear();
+		assertEquals(0, cache.getSize());
+	}
+
+	public void testResize() {
+		InstrumentedCache cache = new InstrumentedCache(new Cache(2), 2);
+		cache.put("1", parse("1"));
+		cache.put("2", parse("2"));
+		cache.resize(10);
+		assertEquals(10, cache.getCapacity());
+		assertEquals(2, cache.getSize());
+		assertNotNull(cache.get("1"));
+		for (int i = 3; i <= 10; i++) {
+			cache.put("" + i, parse("" + i));
+		}
+		assertEquals(10, cache.getSize());
+		assertEquals(0, cache.getEvictionCount());
+
+		cache.resize(5);
+		assertEquals(5, cache.getSize());
+		assertEquals(0, cache.getEvictionCount());
+
+		cache.clear();
+		assertEquals(0, cache.getSize());
+		assertNull(cache.get("10"));
+		assertEquals(0, cache.getEvictionCount());
+	}
+
+	public void testNearCacheHits() {
+		InstrumentedCache cache = new InstrumentedCache(new Cache(2), 2);
+		TreeStore store = new TreeStore(BUILDER, cache, null, 2);
+		String expression = "${foo}";
+		store.get(expression);
+		long version = cache.getVersion();
+		for (int i = 0; i < 3; i++) {
+			store.get(expression);
+		}
+		assertEquals(3, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(version, cache.getVersion());
+
+		cache.clear();
+		assertTrue(cache.getVersion() != version);
+	}
+
+	public void testUnversionedCache() throws Exception {
+		final Map<String, Tree> trees = new HashMap<String, Tree>();
+		InstrumentedCache cache = new InstrumentedCache(new TreeCache() {
+			public Tree get(String expression) {
+				return trees.get(expression);
+			}
+			public void put(String expression, Tree tree) {
+				trees.put(expression, tree);
+			}
+		}, 2);
+		TreeStore store = new TreeStore(BUILDER, cache);
+		store.get("1");
+		long version = cache.getVersion();
+		cache.resetStatistics();
+		assertEquals(version, cache.getVersion());
+		store.get("2");
+		assertTrue(cache.getVersion() > version);
+
+		assertFalse(cache.isEnumerable());
+		try { cache.snapshot(); fail(); } catch (UnsupportedOperationException e) {}
+		try { TreeArchive.save(store, new File("unused")); fail(); } catch (IllegalArgumentException e) {}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import de.odysseus.el.TestCase;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeBuilderException;
+import de.odysseus.el.tree.impl.Builder.Feature;
+import de.odysseus.el.tree.impl.ast.AstNull;
+import de.odysseus.el.tree.impl.ast.AstString;
+
+public class NodeInternerTest extends TestCase {
+	public void testIntern() {
+		NodeInterner interner = new NodeInterner();
+		AstString foo = new AstString("foo");
+		assertSame(foo, interner.intern(foo, "foo"));
+		assertSame(foo, interner.intern(new AstString("foo"), "foo"));
+		assertNotSame(foo, interner.intern(new AstString("bar"), "bar"));
+		assertEquals(2, interner.nodeCount());
+	}
+
+	public void testCapacity() {
+		NodeInterner interner = new NodeInterner(2);
+		AstNull nil = interner.intern(new AstNull());
+		AstString foo = interner.intern(new AstString("foo"), "foo");
+		AstString bar = new AstString("bar");
+		assertSame(bar, interner.intern(bar, "bar"));
+		assertEquals(2, interner.nodeCount());
+
+		// full: bar isn't interned
+		assertNotSame(bar, interner.intern(new AstString("bar"), "bar"));
+		assertSame(nil, interner.intern(new AstNull()));
+		assertSame(foo, interner.intern(new AstString("foo"), "foo"));
+	}
+
+	public void testWeakValues() throws InterruptedException {
+		NodeInterner interner = new NodeInterner();
+		interner.intern(new AstString("foo"), "foo");
+		interner.putTree("foo", parse("foo"));
+		for (int i = 0; i < 50 && interner.nodeCount() + interner.treeCount() > 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(0, interner.nodeCount());
+		assertEquals(0, interner.treeCount());
+	}
+
+	public void testSetInterner() {
+		Builder builder = new Builder(Feature.INTERNING);
+		NodeInterner interner = new NodeInterner(100);
+		builder.setInterner(interner);
+		Tree tree = builder.build("${a+b}");
+		assertSame(tree, builder.build("${a + b}"));
+		assertEquals(1, interner.treeCount());
+		assertTrue(interner.nodeCount() > 0);
+	}
+
+	public void testSharedNodes() {
+		Builder builder = new Builder(Feature.INTERNING);
+		Tree tree1 = builder.build("${a.b + 1}");
+		Tree tree2 = builder.build("${a.b * 1}");
+		assertNotSame(tree1, tree2);
+		assertNotSame(tree1.getRoot().getChild(0), tree2.getRoot().getChild(0));
+		assertSame(tree1.getRoot().getChild(0).getChild(0), tree2.getRoot().getChild(0).getChild(0));
+		assertSame(tree1.getRoot().getChild(0).getChild(1), tree2.getRoot().getChild(0).getChild(1));
+
+		// identifier indices differ, so properties are not shared
+		Tree tree3 = builder.build("${x + a.b}");
+		assertNotSame(tree1.getRoot().getChild(0).getChild(0), tree3.getRoot().getChild(0).getChild(1));
+
+		// without interning, nothing is shared
+		builder = new Builder();
+		tree1 = builder.build("${a.b + 1}");
+		tree2 = builder.build("${a.b * 1}");
+		assertNotSame(tree1.getRoot().getChild(0).getChild(0), tree2.getRoot().getChild(0).getChild(0));
+	}
+
+	public void testCanonicalTree() {
+		Builder builder = new Builder(Feature.INTERNING);
+		Tree tree = builder.build("${a+b}");
+		assertSame(tree, builder.build("${ a + b }"));
+		assertSame(tree, builder.build("${a\n+\tb}"));
+		assertNotSame(tree, builder.build("#{a+b}"));
+		assertNotSame(tree, builder.build("${a-b}"));
+
+		// whitespace in text is significant
+		assertNotSame(builder.build("x ${a}"), builder.build("x  ${a}"));
+		assertEquals("x  ", builder.build("x  ${a}").getRoot().getChild(0).toString().replace("\"", ""));
+
+		// errors are still reported
+		try {
+			builder.build("${a+}");
+			fail();
+		} catch (TreeBuilderException e) {
+			// expected
+		}
+	}
+}
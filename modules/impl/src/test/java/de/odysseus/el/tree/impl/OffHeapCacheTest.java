@@ -0,0 +1,92 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.util.Collections;
+
+import de.odysseus.el.TestCase;
+import de.odysseus.el.tree.FunctionNode;
+import de.odysseus.el.tree.IdentifierNode;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.impl.ast.AstComposite;
+import de.odysseus.el.tree.impl.ast.AstNode;
+import de.odysseus.el.tree.impl.ast.AstText;
+
+public class OffHeapCacheTest extends TestCase {
+	public void testFingerprint() {
+		OffHeapCache.Fingerprint fingerprint = new OffHeapCache.Fingerprint("${foo}");
+		assertEquals(fingerprint, new OffHeapCache.Fingerprint(new String("${foo}")));
+		assertEquals(fingerprint.hashCode(), new OffHeapCache.Fingerprint("${foo}").hashCode());
+		assertFalse(fingerprint.equals(new OffHeapCache.Fingerprint("${fop}")));
+		assertFalse(new OffHeapCache.Fingerprint("ab").equals(new OffHeapCache.Fingerprint("ba")));
+	}
+
+	public void testGet() {
+		OffHeapCache cache = new OffHeapCache(BUILDER, 1, 1 << 16);
+		Tree tree = parse("${a.b + c}");
+		cache.put("${a.b + c}", tree);
+		cache.put("${d}", parse("${d}"));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getFrontSize());
+
+		// materialized from off-heap memory
+		Tree result = cache.get("${a.b + c}");
+		assertNotSame(tree, result);
+		assertEquals(tree.toString(), result.toString());
+		assertSame(result, cache.get("${a.b + c}"));
+		assertNull(cache.get("${e}"));
+	}
+
+	public void testRecycle() {
+		OffHeapCache cache = new OffHeapCache(BUILDER, 1, 512, 256);
+		for (int i = 0; i < 100; i++) {
+			cache.put("${x" + i + "}", parse("${x" + i + "}"));
+			assertNotNull(cache.get("${x" + i + "}"));
+		}
+		assertTrue(cache.size() < 20);
+		assertNull(cache.get("${x0}"));
+		assertNotNull(cache.get("${x98}"));
+		assertEquals("${x98}", cache.get("${x98}").toString());
+	}
+
+	public void testRecycleRewritten() {
+		OffHeapCache cache = new OffHeapCache(BUILDER, 1, 512, 256);
+		for (int i = 0; i < 100; i++) {
+			cache.put("${y" + i + "}", parse("${y" + i + "}"));
+			cache.put("${x}", parse("${x}"));
+		}
+		cache.put("${z}", parse("${z}")); // evict ${x} from the front cache
+		assertTrue(cache.size() < 20);
+		assertEquals("${x}", cache.get("${x}").toString());
+	}
+
+	public void testUnsupported() {
+		OffHeapCache cache = new OffHeapCache(BUILDER, 1, 1 << 16);
+		AstNode root = new AstComposite(Collections.<AstNode>singletonList(new AstText("foo"))) {};
+		Tree tree = new Tree(root, Collections.<FunctionNode>emptyList(), Collections.<IdentifierNode>emptyList(), false);
+		cache.put("foo", tree);
+		assertSame(tree, cache.get("foo"));
+		assertEquals(0, cache.size());
+		cache.put("bar", parse("bar"));
+		assertNull(cache.get("foo"));
+	}
+
+	public void testReadComparesExpression() {
+		OffHeapCache cache = new OffHeapCache(BUILDER, 1, 1 << 16);
+		cache.put("${a}", parse("${a}"));
+		long location = 0; // first record of first segment
+		assertEquals("${a}", cache.read(location, "${a}").toString());
+		assertNull(cache.read(location, "${b}"));
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import de.odysseus.el.TestCase;
+import de.odysseus.el.tree.Tree;
+
+public class PartitionedCacheTest extends TestCase {
+	public void testPartitions() {
+		PartitionedCache cache = new PartitionedCache(2, 0);
+		Tree tree = parse("1");
+		cache.put("a", "1", tree);
+		assertSame(tree, cache.get("a", "1"));
+		assertNull(cache.get("b", "1"));
+		assertNull(cache.get("1"));
+
+		// a busy partition doesn't evict trees from other partitions
+		for (int i = 2; i < 10; i++) {
+			cache.put("b", "" + i, parse("" + i));
+		}
+		assertSame(tree, cache.get("a", "1"));
+		assertEquals(1, cache.size("a"));
+		assertEquals(2, cache.size("b"));
+		assertNull(cache.get("b", "7"));
+		assertNotNull(cache.get("b", "8"));
+		assertEquals(2, cache.getPartitionCount());
+
+		// default partition
+		cache.put("2", parse("2"));
+		assertNotNull(cache.get("2"));
+		assertNotNull(cache.get(null, "2"));
+		assertEquals(1, cache.size(null));
+		assertEquals(3, cache.getPartitionCount());
+	}
+
+	public void testOverflow() {
+		PartitionedCache cache = new PartitionedCache(1, 2);
+		Tree tree = parse("1");
+		cache.put("a", "1", tree);
+		cache.put("a", "2", parse("2"));
+		assertEquals(1, cache.size("a"));
+		assertEquals(1, cache.getOverflowSize());
+
+		// evicted trees are shared by all partitions
+		assertSame(tree, cache.get("a", "1"));
+		assertSame(tree, cache.get("b", "1"));
+
+		cache.put("a", "3", parse("3"));
+		cache.put("a", "4", parse("4"));
+		assertNull(cache.get("a", "1"));
+		assertEquals(2, cache.getOverflowSize());
+	}
+}
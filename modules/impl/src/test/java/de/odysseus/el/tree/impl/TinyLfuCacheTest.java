@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import de.odysseus.el.TestCase;
+import de.odysseus.el.tree.Tree;
+
+public class TinyLfuCacheTest extends TestCase {
+	public void testSingleThread() {
+		TinyLfuCache cache = null;
+
+		// check if caching works, cache size 1
+		cache = new TinyLfuCache(1);
+		cache.put("1", parse("1"));
+		assertNotNull(cache.get("1"));
+		assertEquals(1, cache.size());
+
+		// check if eviction works, cache size 1
+		cache = new TinyLfuCache(1);
+		cache.put("1", parse("1"));
+		cache.put("2", parse("2"));
+		assertNull(cache.get("1"));
+		assertNotNull(cache.get("2"));
+		assertEquals(1, cache.size());
+
+		// check if size is bounded, cache size 100
+		cache = new TinyLfuCache(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.put("" + i, parse("" + i));
+			assertTrue(cache.size() <= 100);
+		}
+		assertEquals(100, cache.size());
+	}
+
+	public void testFrequentEntriesSurvive() {
+		TinyLfuCache cache = new TinyLfuCache(100);
+		for (int i = 0; i < 50; i++) {
+			cache.put("hot" + i, parse("" + i));
+		}
+		for (int j = 0; j < 10; j++) {
+			for (int i = 0; i < 50; i++) {
+				assertNotNull(cache.get("hot" + i));
+			}
+		}
+		Tree tree = parse("0");
+		for (int i = 0; i < 1000; i++) {
+			cache.put("cold" + i, tree);
+		}
+		int hits = 0;
+		for (int i = 0; i < 50; i++) {
+			if (cache.get("hot" + i) != null) {
+				hits++;
+			}
+		}
+		assertTrue("hits: " + hits, hits >= 45);
+		assertTrue(cache.size() <= 100);
+	}
+
+	public void testMultiThread() throws Exception {
+		final int numberOfThreads = 10;
+		final int numberOfLookups = 10000;
+		final TinyLfuCache cache = new TinyLfuCache(1000, numberOfThreads);
+		final Builder builder = new Builder();
+		ExecutorService service = Executors.newFixedThreadPool(numberOfThreads);
+		Collection<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for (int i = 0; i < numberOfThreads; i++) {
+			final Random random = new Random(i);
+			tasks.add(new Callable<Long>() {
+				public Long call() throws Exception {
+					long misses = 0;
+					for (int j = 0; j < numberOfLookups; j++) {
+						String expression = String.valueOf(random.nextInt(2000));
+						Tree tree = cache.get(expression);
+						if (tree == null) {
+							cache.put(expression, builder.build(expression));
+							misses++;
+						} else {
+							assertEquals(builder.build(expression).getRoot().toString(), tree.getRoot().toString());
+						}
+					}
+					return misses;
+				}
+			});
+		}
+		for (Future<Long> future : service.invokeAll(tasks, 10L, TimeUnit.SECONDS)) {
+			if (!future.isDone() || future.isCancelled()) {
+				fail();
+			}
+			future.get();
+		}
+		service.shutdown();
+		cache.put("flush", parse("0"));
+		assertTrue(cache.size() <= 1000);
+	}
+}
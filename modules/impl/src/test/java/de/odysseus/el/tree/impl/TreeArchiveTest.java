@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.odysseus.el.TestCase;
+import de.odysseus.el.tree.FunctionNode;
+import de.odysseus.el.tree.IdentifierNode;
+import de.odysseus.el.tree.Node;
+import de.odysseus.el.tree.NodePrinter;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeCompiler;
+import de.odysseus.el.tree.TreeStore;
+import de.odysseus.el.tree.impl.ast.AstComposite;
+import de.odysseus.el.tree.impl.ast.AstNode;
+import de.odysseus.el.tree.impl.ast.AstText;
+import de.odysseus.el.util.SimpleContext;
+
+public class TreeArchiveTest extends TestCase {
+	static final String[] EXPRESSIONS = {
+		"foo",
+		"${1 + 2.5 * 3 / 4 - 5 % 6}",
+		"#{a.b[c] and not empty d or -e}",
+		"foo${x == y ? 'bar' : null}baz${true != false}",
+		"${ns:f(1, g(2)) lt 3 && h() >= 4}",
+		"${a.b(c, 'd').e()}",
+		"${(a + b) le (c gt d)}"
+	};
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("juel", ".trees");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	static String dump(Node node) {
+		StringWriter writer = new StringWriter();
+		NodePrinter.dump(new PrintWriter(writer), node);
+		return writer.toString();
+	}
+
+	public void testReadWrite() throws Exception {
+		Builder builder = new Builder(Builder.Feature.METHOD_INVOCATIONS, Builder.Feature.VARARGS);
+		Map<String, Tree> trees = new HashMap<String, Tree>();
+		for (String expression : EXPRESSIONS) {
+			trees.put(expression, builder.build(expression));
+		}
+		TreeArchive archive = new TreeArchive(builder);
+		archive.write(file, trees);
+		Map<String, Tree> result = archive.read(file);
+		assertEquals(trees.size(), result.size());
+		for (String expression : EXPRESSIONS) {
+			Tree expected = trees.get(expression);
+			Tree actual = result.get(expression);
+			assertEquals(dump(expected.getRoot()), dump(actual.getRoot()));
+			assertEquals(expected.toString(), actual.toString());
+			assertEquals(expected.isDeferred(), actual.isDeferred());
+			assertEquals(expected.getSizeEstimate(), actual.getSizeEstimate());
+			assertEquals(expected.getRoot().isLeftValue(), actual.getRoot().isLeftValue());
+			assertEquals(expected.getRoot().isMethodInvocation(), actual.getRoot().isMethodInvocation());
+		}
+
+		Tree tree = result.get("${1 + 2.5 * 3 / 4 - 5 % 6}");
+		SimpleContext context = new SimpleContext();
+		assertEquals(-2.125, tree.getRoot().getValue(tree.bind(null, null), context, Double.class));
+	}
+
+	public void testVersion() throws Exception {
+		Map<String, Tree> trees = new HashMap<String, Tree>();
+		trees.put("${a}", BUILDER.build("${a}"));
+		new TreeArchive(BUILDER).write(file, trees);
+		assertNotNull(new TreeArchive(new Builder(Builder.Feature.METHOD_INVOCATIONS)).read(file));
+		assertNull(new TreeArchive(new Builder()).read(file));
+		assertFalse(new TreeArchive(BUILDER).getVersion().equals(new TreeArchive(new Builder()).getVersion()));
+	}
+
+	public void testCompilingBuilder() throws Exception {
+		final AtomicInteger compiled = new AtomicInteger();
+		TreeCompiler compiler = new TreeCompiler() {
+			private static final long serialVersionUID = 1L;
+			public Tree compile(Tree tree) {
+				compiled.incrementAndGet();
+				return tree;
+			}
+		};
+		Builder parser = new Builder(Builder.Feature.METHOD_INVOCATIONS, Builder.Feature.VARARGS);
+		CompilingBuilder builder = new CompilingBuilder(parser, compiler);
+		String version = new TreeArchive(builder).getVersion();
+		assertTrue(version.contains(Builder.Feature.VARARGS.toString()));
+		assertFalse(version.equals(new TreeArchive(parser).getVersion()));
+		assertFalse(version.equals(new TreeArchive(new CompilingBuilder(new Builder(), compiler)).getVersion()));
+
+		Map<String, Tree> trees = new HashMap<String, Tree>();
+		for (String expression : EXPRESSIONS) {
+			trees.put(expression, builder.build(expression));
+		}
+		TreeArchive archive = new TreeArchive(builder);
+		archive.write(file, trees);
+		compiled.set(0);
+		Map<String, Tree> result = archive.read(file);
+		assertEquals(EXPRESSIONS.length, compiled.get());
+		assertEquals(trees.get("${a.b(c, 'd').e()}").toString(), result.get("${a.b(c, 'd').e()}").toString());
+		assertNull(new TreeArchive(parser).read(file));
+	}
+
+	public void testUnsupportedNode() throws Exception {
+		Map<String, Tree> trees = new HashMap<String, Tree>();
+		List<AstNode> nodes = Collections.<AstNode>singletonList(new AstText("foo"));
+		AstNode root = new AstComposite(nodes) {}; // not a standard node type
+		trees.put("foo", new Tree(root, Collections.<FunctionNode>emptyList(), Collections.<IdentifierNode>emptyList(), false));
+		new TreeArchive(BUILDER).write(file, trees);
+		Tree tree = new TreeArchive(BUILDER).read(file).get("foo");
+		assertSame(AstText.class, tree.getRoot().getClass());
+	}
+
+	public void testSaveLoad() throws Exception {
+		TreeStore store = new TreeStore(BUILDER, new Cache(10));
+		for (String expression : EXPRESSIONS) {
+			store.get(expression);
+		}
+		assertEquals(EXPRESSIONS.length, TreeArchive.save(store, file));
+
+		Cache cache = new Cache(10);
+		assertEquals(EXPRESSIONS.length, TreeArchive.load(new TreeStore(BUILDER, cache), file));
+		assertEquals(EXPRESSIONS.length, cache.size());
+		assertNotNull(cache.get(EXPRESSIONS[0]));
+
+		assertEquals(0, TreeArchive.load(new TreeStore(new Builder(), new Cache(10)), file));
+		assertEquals(0, TreeArchive.load(new TreeStore(BUILDER, null), file));
+		assertEquals(0, TreeArchive.load(new TreeStore(BUILDER, new Cache(10)), new File(file.getPath() + ".missing")));
+	}
+
+	public void testLoadInvalid() throws Exception {
+		TreeStore store = new TreeStore(BUILDER, new Cache(10));
+		for (String expression : EXPRESSIONS) {
+			store.get(expression);
+		}
+		TreeArchive.save(store, file);
+		String[] siblings = file.getAbsoluteFile().getParentFile().list();
+		for (String sibling : siblings) {
+			assertFalse(sibling.startsWith(file.getName()) && !sibling.equals(file.getName()));
+		}
+
+		// truncated
+		RandomAccessFile random = new RandomAccessFile(file, "rw");
+		try {
+			random.setLength(file.length() / 2);
+		} finally {
+			random.close();
+		}
+		try { new TreeArchive(BUILDER).read(file); fail(); } catch (IOException e) {}
+		assertEquals(0, TreeArchive.load(new TreeStore(BUILDER, new Cache(10)), file));
+
+		// not an archive
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("foo".getBytes());
+		} finally {
+			out.close();
+		}
+		assertEquals(0, TreeArchive.load(new TreeStore(BUILDER, new Cache(10)), file));
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl;
+
+import de.odysseus.el.TestCase;
+import de.odysseus.el.tree.Tree;
+
+public class WeightedCacheTest extends TestCase {
+	public void testPut() {
+		Tree tree = parse("1");
+		long weight = WeightedCache.weigh("1", tree);
+
+		// check if caching works
+		WeightedCache cache = new WeightedCache(weight);
+		cache.put("1", tree);
+		assertSame(tree, cache.get("1"));
+		assertEquals(1, cache.size());
+		assertEquals(weight, cache.weight());
+
+		// putting the same expression again doesn't add weight
+		cache.put("1", parse("1"));
+		assertSame(tree, cache.get("1"));
+		assertEquals(weight, cache.weight());
+	}
+
+	public void testEvict() {
+		long weight = WeightedCache.weigh("1", parse("1"));
+		WeightedCache cache = new WeightedCache(3 * weight);
+		for (int i = 1; i < 10; i++) {
+			cache.put("" + i, parse("" + i));
+			assertTrue(cache.weight() <= cache.maxWeight());
+		}
+		assertEquals(3, cache.size());
+		assertNull(cache.get("6"));
+		assertNotNull(cache.get("7"));
+		assertNotNull(cache.get("9"));
+
+		// a heavy tree evicts several light ones
+		String expression = "${a+b+c+d+e+f+g}";
+		Tree tree = parse(expression);
+		cache = new WeightedCache(WeightedCache.weigh(expression, tree) + weight);
+		cache.put("1", parse("1"));
+		cache.put("2", parse("2"));
+		cache.put(expression, tree);
+		assertNull(cache.get("1"));
+		assertNotNull(cache.get("2"));
+		assertSame(tree, cache.get(expression));
+		assertEquals(WeightedCache.weigh(expression, tree) + weight, cache.weight());
+	}
+
+	public void testTooHeavy() {
+		WeightedCache cache = new WeightedCache(10L);
+		cache.put("1", parse("1"));
+		assertNull(cache.get("1"));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.weight());
+	}
+
+	public void testCapacity() {
+		assertEquals(100L * WeightedCache.AVERAGE_WEIGHT, new WeightedCache(100).maxWeight());
+	}
+}
@@ -16,8 +16,11 @@
 package de.odysseus.el.tree.impl.ast;
 
 import javax.el.ELException;
+import javax.el.ValueExpression;
 
+import de.odysseus.el.ObjectValueExpression;
 import de.odysseus.el.TestCase;
+import de.odysseus.el.misc.TypeConverter;
 import de.odysseus.el.tree.Bindings;
 
 public class AstBinaryTest extends TestCase {
@@ -129,4 +132,39 @@ public class AstBinaryTest extends TestCase {
 		assertTrue((Boolean)parseNode("${false or true}").getValue(bindings, null, Boolean.class));
 		assertFalse((Boolean)parseNode("${false or false}").getValue(bindings, null, Boolean.class));
 	}
+
+	private Object apply(AstBinary node, Bindings bindings) {
+		try {
+			return node.eval(bindings, null);
+		} catch (ELException e) {
+			return ELException.class;
+		}
+	}
+
+	public void testSpecialization() {
+		Object[][] operands = {
+			{ 1l, 2l }, { 3l, 3l }, { 1.5d, 2d }, { Double.NaN, Double.NaN }, { 0d, -0d },
+			{ "a", "b" }, { "b", "b" }, { 1l, "2" }, { null, 1l }, { 2l, 1l }, { 1.5d, 1l }
+		};
+		String[] operators = { "+", "-", "*", "/", "%", "==", "!=", "<", "<=", ">", ">=" };
+		for (String operator : operators) {
+			for (int start = 0; start < operands.length; start++) {
+				AstBinary node = parseNode("${x " + operator + " y}");
+				for (int i = start; i < operands.length; i++) {
+					Bindings bindings = new Bindings(null, new ValueExpression[]{
+						new ObjectValueExpression(TypeConverter.DEFAULT, operands[i][0], Object.class),
+						new ObjectValueExpression(TypeConverter.DEFAULT, operands[i][1], Object.class)
+					});
+					AstBinary generic = parseNode("${x " + operator + " y}");
+					Object expected;
+					try {
+						expected = ((AstBinary.SimpleOperator)generic.getOperator()).apply(bindings, operands[i][0], operands[i][1]);
+					} catch (ELException e) {
+						expected = ELException.class;
+					}
+					assertEquals(operator + " " + i, expected, apply(node, bindings));
+				}
+			}
+		}
+	}
 }
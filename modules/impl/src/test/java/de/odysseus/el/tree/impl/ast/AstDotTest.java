@@ -16,14 +16,17 @@
 package de.odysseus.el.tree.impl.ast;
 
 import java.util.Arrays;
+import java.util.Collections;
 
 import javax.el.BeanELResolver;
+import javax.el.ELContext;
 import javax.el.ELException;
 import javax.el.MethodInfo;
 import javax.el.PropertyNotFoundException;
 import javax.el.ValueExpression;
 
 import de.odysseus.el.TestCase;
+import de.odysseus.el.spi.PropertyAccessor;
 import de.odysseus.el.test.TestClass;
 import de.odysseus.el.tree.Bindings;
 import de.odysseus.el.util.SimpleContext;
@@ -34,6 +37,12 @@ public class AstDotTest extends TestCase {
 		return (AstDot)parse(expression).getRoot().getChild(0);
 	}
 
+	public static class FooBean {
+		public long getFoo() {
+			return 42l;
+		}
+	}
+
 	SimpleContext context;
 	Bindings bindings;
 	
@@ -76,6 +85,72 @@ public class AstDotTest extends TestCase {
 		assertEquals(1l, parseNode("${base.foo}").eval(bindings, context));
 	}
 
+	public void testEvalInlineCache() {
+		SimpleContext context = new SimpleContext(new SimpleResolver());
+		context.getELResolver().setValue(context, null, "base", this);
+		AstDot node = parseNode("${base.foo}");
+		for (int i = 0; i < 3; i++) {
+			foo = i;
+			assertEquals(Long.valueOf(i), node.eval(bindings, context));
+		}
+
+		// polymorphic base
+		context.getELResolver().setValue(context, null, "base", Collections.singletonMap("foo", "map"));
+		assertEquals("map", node.eval(bindings, context));
+		context.getELResolver().setValue(context, null, "base", this);
+		assertEquals(2l, node.eval(bindings, context));
+
+		// megamorphic base
+		Object[] bases = new Object[AstProperty.INLINE_CACHE_SIZE + 2];
+		for (int i = 0; i < bases.length; i++) {
+			bases[i] = Collections.singletonMap("foo", i);
+		}
+		bases[0] = this;
+		bases[1] = new FooBean();
+		bases[2] = Collections.singletonList(0);
+		for (int j = 0; j < 2; j++) {
+			for (int i = 0; i < bases.length; i++) {
+				context.getELResolver().setValue(context, null, "base", bases[i]);
+				if (i == 2) {
+					try { node.eval(bindings, context); fail(); } catch (IllegalArgumentException e) {}
+				} else {
+					assertEquals(i == 0 ? Long.valueOf(2) : i == 1 ? Long.valueOf(42) : (Object) i, node.eval(bindings, context));
+				}
+			}
+		}
+	}
+
+	public void testEvalInlineCacheResolvers() {
+		final int[] lookups = new int[1];
+		AstDot node = parseNode("${base.foo}");
+		for (int i = 0; i < 2 * AstProperty.INLINE_CACHE_SIZE; i++) {
+			SimpleContext context = new SimpleContext(new SimpleResolver() {
+				@Override
+				public PropertyAccessor getPropertyAccessor(ELContext context, Object base, Object property) {
+					lookups[0]++;
+					return super.getPropertyAccessor(context, base, property);
+				}
+			});
+			context.getELResolver().setValue(context, null, "base", this);
+			foo = i;
+			assertEquals(Long.valueOf(i), node.eval(bindings, context));
+			assertEquals(Long.valueOf(i), node.eval(bindings, context));
+			assertEquals(1, lookups[0]); // resolvers of other contexts share the entry
+		}
+
+		// entries of another resolver are not used
+		SimpleContext context = new SimpleContext(new SimpleResolver(new BeanELResolver() {
+			@Override
+			public Object getValue(ELContext context, Object base, Object property) {
+				context.setPropertyResolved(true);
+				return "other";
+			}
+		}));
+		context.getELResolver().setValue(context, null, "base", this);
+		assertEquals("other", node.eval(bindings, context));
+		assertEquals("other", node.eval(bindings, context));
+	}
+
 	public void testAppendStructure() {
 		StringBuilder s = new StringBuilder();
 		parseNode("${foo.bar}").appendStructure(s, new Bindings(null, null, null));
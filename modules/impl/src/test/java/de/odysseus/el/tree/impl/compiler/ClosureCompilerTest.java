@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.el.ELException;
+import javax.el.ValueExpression;
+
+import de.odysseus.el.ExpressionFactoryImpl;
+import de.odysseus.el.ObjectValueExpression;
+import de.odysseus.el.TestCase;
+import de.odysseus.el.misc.TypeConverter;
+import de.odysseus.el.tree.Bindings;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.util.SimpleContext;
+import de.odysseus.el.util.SimpleResolver;
+
+public class ClosureCompilerTest extends TestCase {
+	public static int twice(int value) {
+		return 2 * value;
+	}
+
+	private int[] array = { 1, 2, 3 };
+
+	public int[] getArray() {
+		return array;
+	}
+
+	public Object getNullObject() {
+		return null;
+	}
+
+	public long add(long x, long y) {
+		return x + y;
+	}
+
+	private ClosureCompiler compiler = new ClosureCompiler();
+	private SimpleContext context;
+
+	@Override
+	protected void setUp() throws Exception {
+		context = new SimpleContext(new SimpleResolver());
+		context.getELResolver().setValue(context, null, "base", this);
+		context.getELResolver().setValue(context, null, "list", Arrays.asList("a", "b"));
+		context.setVariable("var", new ObjectValueExpression(TypeConverter.DEFAULT, 3l, long.class));
+		context.setFunction("ns", "twice", getClass().getMethod("twice", int.class));
+	}
+
+	private Object eval(Tree tree) {
+		Bindings bindings = tree.bind(context.getFunctionMapper(), context.getVariableMapper());
+		return tree.getRoot().getValue(bindings, context, null);
+	}
+
+	private void assertCompiled(String expression) {
+		Tree tree = parse(expression);
+		Tree compiled = compiler.compile(tree);
+		assertTrue(compiled.getRoot() instanceof CompiledNode);
+		assertEquals(eval(tree), eval(compiled));
+	}
+
+	private void assertFailure(String expression) {
+		Tree compiled = compiler.compile(parse(expression));
+		assertTrue(compiled.getRoot() instanceof CompiledNode);
+		try { eval(compiled); fail(); } catch (ELException e) {}
+	}
+
+	public void testLiterals() {
+		assertCompiled("${1}");
+		assertCompiled("${1.5}");
+		assertCompiled("${'foo'}");
+		assertCompiled("${true}");
+		assertCompiled("${false}");
+		assertCompiled("${null}");
+		assertCompiled("foo${1}bar${2}");
+		assertCompiled("#{(1)}");
+	}
+
+	public void testOperators() {
+		assertCompiled("${1 + 2 * 3 - 4 / 5 % 6}");
+		assertCompiled("${-var}");
+		assertCompiled("${var == 3 && var != 4}");
+		assertCompiled("${var < 3 || var <= 3}");
+		assertCompiled("${var > 3 || var >= 3}");
+		assertCompiled("${false && base.bad}");
+		assertCompiled("${true || base.bad}");
+		assertCompiled("${!true}");
+		assertCompiled("${empty list}");
+		assertCompiled("${empty null}");
+		assertCompiled("${var > 2 ? 'yes' : 'no'}");
+		assertCompiled("${var < 2 ? 'yes' : 'no'}");
+	}
+
+	public void testProperties() {
+		assertCompiled("${var}");
+		assertCompiled("${base.array[1]}");
+		assertCompiled("${list[0]}");
+		assertCompiled("${list[var - 2]}");
+		assertCompiled("${base.nullObject.foo}");
+		assertCompiled("${base.array[null]}");
+		assertFailure("${undefined}");
+		assertFailure("${base.bad}");
+	}
+
+	public void testMethods() {
+		assertCompiled("${base.add(1, var)}");
+		assertCompiled("${base['add'](var, 1)}");
+		assertCompiled("${base.nullObject.toString()}");
+		assertCompiled("${list.size()}");
+		assertFailure("${base.bad()}");
+		assertFailure("${base[null]()}");
+	}
+
+	public void testInterpretedNodes() {
+		assertCompiled("${ns:twice(var) + 1}");
+	}
+
+	public void testLiteralText() {
+		Tree tree = parse("foo");
+		assertSame(tree, compiler.compile(tree));
+	}
+
+	public void testDelegation() {
+		Tree compiled = compiler.compile(parse("${base.array}"));
+		Bindings bindings = compiled.bind(null, context.getVariableMapper());
+		assertTrue(compiled.getRoot().isLeftValue());
+		assertTrue(compiled.getRoot().isReadOnly(bindings, context));
+		assertEquals(int[].class, compiled.getRoot().getType(bindings, context));
+		assertEquals("${base.array}", compiled.getRoot().getStructuralId(bindings));
+	}
+
+	public void testFactory() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("de.odysseus.el.tree.TreeCompiler", ClosureCompiler.class.getName());
+		ExpressionFactoryImpl factory = new ExpressionFactoryImpl(properties);
+		ValueExpression expression = factory.createValueExpression(context, "${base.add(var, 1)}", long.class);
+		assertEquals(4l, expression.getValue(context));
+		assertEquals(expression, deserialize(serialize(expression)));
+		assertEquals(4l, ((ValueExpression)deserialize(serialize(expression))).getValue(context));
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import javax.el.ELContext;
+
+import de.odysseus.el.tree.Bindings;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeBuilder;
+import de.odysseus.el.tree.impl.Builder;
+import de.odysseus.el.tree.impl.CompilingBuilder;
+import de.odysseus.el.util.SimpleContext;
+import de.odysseus.el.util.SimpleResolver;
+
+/**
+ * Micro benchmark comparing the evaluation backends.
+ * Not part of the test suites; run with <code>java ... EvaluationBenchmark [iterations]</code>.
+ */
+public class EvaluationBenchmark {
+	public static class Bean {
+		public long getFoo() {
+			return 42;
+		}
+		public String getBar() {
+			return "bar";
+		}
+	}
+
+	private static final String[] EXPRESSIONS = {
+		"${1 + 2 * 3 - 4}",
+		"${bean.foo > 40 && bean.bar == 'bar'}",
+		"${bean.foo % 2 == 0 ? 'even' : 'odd'}",
+		"#{bean.bar}:#{bean.foo + 1}",
+	};
+
+	private static long run(Tree tree, ELContext context, int iterations) {
+		Bindings bindings = tree.bind(null, null);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			tree.getRoot().getValue(bindings, context, null);
+		}
+		return System.nanoTime() - start;
+	}
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		SimpleContext context = new SimpleContext(new SimpleResolver());
+		context.getELResolver().setValue(context, null, "bean", new Bean());
+
+		String[] names = { "interpreter", "program", "closure", "bytecode" };
+		TreeBuilder[] builders = {
+			new Builder(),
+			new ProgramBuilder(),
+			new CompilingBuilder(new Builder(), new ClosureCompiler()),
+			new CompilingBuilder(new Builder(), new BytecodeCompiler())
+		};
+		for (String expression : EXPRESSIONS) {
+			System.out.println(expression);
+			for (int i = 0; i < builders.length; i++) {
+				Tree tree = builders[i].build(expression);
+				run(tree, context, iterations); // warm up
+				long time = run(tree, context, iterations);
+				System.out.printf("  %-12s %8.1f ns/op%n", names[i], (double)time / iterations);
+			}
+		}
+	}
+}
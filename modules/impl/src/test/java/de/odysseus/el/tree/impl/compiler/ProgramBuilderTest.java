@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.el.ELException;
+import javax.el.MethodExpression;
+import javax.el.ValueExpression;
+
+import de.odysseus.el.ExpressionFactoryImpl;
+import de.odysseus.el.ObjectValueExpression;
+import de.odysseus.el.TestCase;
+import de.odysseus.el.misc.TypeConverter;
+import de.odysseus.el.tree.Bindings;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.impl.Builder;
+import de.odysseus.el.util.SimpleContext;
+import de.odysseus.el.util.SimpleResolver;
+
+public class ProgramBuilderTest extends TestCase {
+	public static int twice(int value) {
+		return 2 * value;
+	}
+
+	private int[] array = { 1, 2, 3 };
+	private long foo = 1;
+
+	public int[] getArray() {
+		return array;
+	}
+
+	public long getFoo() {
+		return foo;
+	}
+
+	public void setFoo(long foo) {
+		this.foo = foo;
+	}
+
+	public Object getNullObject() {
+		return null;
+	}
+
+	public long add(long x, long y) {
+		return x + y;
+	}
+
+	private ProgramBuilder builder = new ProgramBuilder(Builder.Feature.METHOD_INVOCATIONS);
+	private SimpleContext context;
+
+	@Override
+	protected void setUp() throws Exception {
+		context = new SimpleContext(new SimpleResolver());
+		context.getELResolver().setValue(context, null, "base", this);
+		context.getELResolver().setValue(context, null, "list", Arrays.asList("a", "b"));
+		context.setVariable("var", new ObjectValueExpression(TypeConverter.DEFAULT, 3l, long.class));
+		context.setFunction("ns", "twice", getClass().getMethod("twice", int.class));
+	}
+
+	private Object eval(Tree tree) {
+		Bindings bindings = tree.bind(context.getFunctionMapper(), context.getVariableMapper());
+		try {
+			return tree.getRoot().getValue(bindings, context, null);
+		} catch (ELException e) {
+			return e.getClass();
+		}
+	}
+
+	private void assertProgram(String expression) {
+		Tree tree = builder.build(expression);
+		assertTrue(tree.getRoot() instanceof ProgramNode);
+		assertEquals(eval(parse(expression)), eval(tree));
+		assertEquals(parse(expression).getRoot().getStructuralId(null), tree.getRoot().getStructuralId(null));
+	}
+
+	public void testLiterals() {
+		assertProgram("${1}");
+		assertProgram("${1.5}");
+		assertProgram("${'foo'}");
+		assertProgram("${true}");
+		assertProgram("${null}");
+		assertProgram("foo${1}bar${'foo'}");
+		assertProgram("#{(1)}");
+	}
+
+	public void testOperators() {
+		assertProgram("${1 + 2 * 3 - 4 / 5 % 6}");
+		assertProgram("${-var}");
+		assertProgram("${var == 3 && var != 4}");
+		assertProgram("${var < 3 || var <= 3}");
+		assertProgram("${var > 3 || var >= 3}");
+		assertProgram("${false && base.bad}");
+		assertProgram("${true || base.bad}");
+		assertProgram("${!true}");
+		assertProgram("${empty list}");
+		assertProgram("${var > 2 ? 'yes' : 'no'}");
+		assertProgram("${var < 2 ? 'yes' : 'no'}");
+		assertProgram("${(var > 2 ? 1 : 2) + (var < 2 ? 3 : 4)}");
+	}
+
+	public void testProperties() {
+		assertProgram("${var}");
+		assertProgram("${base.array[1]}");
+		assertProgram("${list[var - 2]}");
+		assertProgram("${base.nullObject.foo}");
+		assertProgram("${base.nullObject[foo.bar]}");
+		assertProgram("${base.array[null]}");
+		assertProgram("${undefined}");
+		assertProgram("${base.bad}");
+	}
+
+	public void testMethods() {
+		assertProgram("${base.add(1, var)}");
+		assertProgram("${base['add'](var, base.add(1, 2))}");
+		assertProgram("${base.nullObject.toString()}");
+		assertProgram("${list.size()}");
+		assertProgram("${base.bad()}");
+		assertProgram("${base[null]()}");
+	}
+
+	public void testFunctions() {
+		assertProgram("${ns:twice(var) + 1}");
+	}
+
+	public void testLiteralText() {
+		assertFalse(builder.build("foo").getRoot() instanceof ProgramNode);
+	}
+
+	public void testTree() {
+		Tree tree = builder.build("${ns:twice(var) + base.foo}");
+		assertEquals(1, tree.getFunctionNodes().iterator().next().getParamCount());
+		assertEquals("var", tree.getIdentifierNodes().iterator().next().getName());
+		assertFalse(tree.getRoot().isLeftValue());
+		assertTrue(builder.build("${base.foo}").getRoot().isLeftValue());
+		assertTrue(builder.build("${base.add(1, 2)}").getRoot().isMethodInvocation());
+		assertEquals(parse("${ns:twice(var) + base.foo}").getStructuralHash(), tree.getStructuralHash());
+	}
+
+	public void testFactory() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("de.odysseus.el.tree.TreeBuilder", ProgramBuilder.class.getName());
+		ExpressionFactoryImpl factory = new ExpressionFactoryImpl(properties);
+
+		ValueExpression value = factory.createValueExpression(context, "${base.foo}", long.class);
+		assertEquals(1l, value.getValue(context));
+		value.setValue(context, 2l);
+		assertEquals(2l, value.getValue(context));
+		assertEquals(long.class, value.getType(context));
+		assertEquals(value, deserialize(serialize(value)));
+
+		MethodExpression method = factory.createMethodExpression(context, "${base.add}", long.class, new Class[]{ long.class, long.class });
+		assertEquals(3l, method.invoke(context, new Object[]{ 1l, 2l }));
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */ 
+package de.odysseus.el.tree.impl.compiler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.el.ValueExpression;
+
+import de.odysseus.el.ExpressionFactoryImpl;
+import de.odysseus.el.TestCase;
+import de.odysseus.el.tree.Tree;
+import de.odysseus.el.tree.TreeStore;
+import de.odysseus.el.tree.impl.Builder;
+import de.odysseus.el.tree.impl.Cache;
+import de.odysseus.el.tree.impl.CompilingBuilder;
+import de.odysseus.el.util.SimpleContext;
+import de.odysseus.el.util.SimpleResolver;
+
+public class TieredCompilerTest extends TestCase {
+	static class SynchronousExecutor implements Executor {
+		int count;
+		public void execute(Runnable command) {
+			count++;
+			command.run();
+		}
+	}
+
+	private SimpleContext context;
+
+	@Override
+	protected void setUp() throws Exception {
+		context = new SimpleContext(new SimpleResolver());
+		context.getELResolver().setValue(context, null, "foo", 1l);
+	}
+
+	public void testPromotion() {
+		SynchronousExecutor executor = new SynchronousExecutor();
+		Tree tree = new TieredCompiler(new BytecodeCompiler(), 3, executor).compile(parse("${foo + 1}"));
+		TieredNode node = (TieredNode)tree.getRoot();
+		assertFalse(node.isCompiled());
+		for (int i = 1; i <= 5; i++) {
+			assertEquals(2l, node.getValue(tree.bind(null, null), context, null));
+			assertEquals(i >= 3, node.isCompiled());
+			assertEquals(i >= 3, node.getTarget() instanceof CompiledNode);
+		}
+		assertEquals(1, executor.count);
+		assertEquals(3, node.getInvocationCount());
+	}
+
+	public void testRejected() {
+		Executor executor = new Executor() {
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		};
+		Tree tree = new TieredCompiler(new BytecodeCompiler(), 2, executor).compile(parse("${foo}"));
+		TieredNode node = (TieredNode)tree.getRoot();
+		for (int i = 0; i < 5; i++) {
+			assertEquals(1l, node.getValue(tree.bind(null, null), context, null));
+		}
+		assertFalse(node.isCompiled());
+		assertEquals(1, node.getInvocationCount());
+	}
+
+	public void testLiteralText() {
+		Tree tree = parse("foo");
+		assertSame(tree, new TieredCompiler().compile(tree));
+	}
+
+	public void testSharedTree() {
+		SynchronousExecutor executor = new SynchronousExecutor();
+		CompilingBuilder builder = new CompilingBuilder(new Builder(), new TieredCompiler(new BytecodeCompiler(), 4, executor));
+		ExpressionFactoryImpl factory = new ExpressionFactoryImpl(new TreeStore(builder, new Cache(10)));
+		ValueExpression e1 = factory.createValueExpression(context, "${foo * 2}", long.class);
+		ValueExpression e2 = factory.createValueExpression(context, "${foo * 2}", long.class);
+		for (int i = 0; i < 2; i++) {
+			assertEquals(2l, e1.getValue(context));
+			assertEquals(2l, e2.getValue(context));
+		}
+		assertEquals(1, executor.count);
+	}
+}